@@ -0,0 +1,62 @@
+package com.usermanagement.benchmark;
+
+import com.usermanagement.model.User;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deterministic user data shared by the benchmarks
+ * User n always has the same field values, so benchmarks can pick existing
+ * users and search values without keeping the dataset in memory.
+ */
+final class BenchmarkData {
+    
+    static final String[] NATIONALITIES = {
+            "American", "Argentinian", "Australian", "Brazilian", "British",
+            "Canadian", "Chinese", "Dutch", "French", "German",
+            "Indian", "Irish", "Italian", "Japanese", "Mexican",
+            "Nigerian", "Polish", "Spanish", "Swedish", "Turkish"
+    };
+    
+    private BenchmarkData() {
+    }
+    
+    /**
+     * Build the n-th user of the dataset
+     * @param n The user number, also used as its ID
+     * @return The user
+     */
+    static User user(long n) {
+        return new User(n, name(n), surname(n), email(n), nationality(n));
+    }
+    
+    /**
+     * Build the first users of the dataset
+     * @param count The number of users
+     * @return Users 1 to count
+     */
+    static List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (long n = 1; n <= count; n++) {
+            users.add(user(n));
+        }
+        return users;
+    }
+    
+    static String name(long n) {
+        return "Name" + n % 1000;
+    }
+    
+    static String surname(long n) {
+        return "Surname" + n % 5000;
+    }
+    
+    static String email(long n) {
+        return "user" + n + "@example.com";
+    }
+    
+    static String nationality(long n) {
+        return NATIONALITIES[(int) (n % NATIONALITIES.length)];
+    }
+}
@@ -0,0 +1,171 @@
+package com.usermanagement.benchmark;
+
+import com.usermanagement.model.User;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Report of the bytes each user takes with nationality stored as text and dictionary-encoded
+ * Heap: the users of the dataset are built once with a String of their own per nationality, as
+ * rows read from a text column would be, and once sharing the canonical nationality names, and
+ * the live heap is measured after each. Storage: the dataset is inserted into an H2 table with
+ * a varchar nationality and into one with a smallint code and a lookup table, each with the
+ * indexes of the users table and in a database file of its own, and the compacted files are compared.
+ * Run with: mvn -Pbenchmark test-compile exec:exec@footprint-report -Dfootprint.users=200000
+ */
+public final class FootprintReport {
+    
+    private static final int DEFAULT_USERS = 200_000;
+    private static final int INSERT_BATCH_SIZE = 1000;
+    
+    private FootprintReport() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_USERS;
+        System.out.printf(Locale.ROOT, "Footprint of %d users, %d distinct nationalities%n",
+                users, BenchmarkData.NATIONALITIES.length);
+        System.out.printf(Locale.ROOT, "%-8s %20s %20s %10s%n", "", "text (bytes/user)", "encoded (bytes/user)", "saved");
+        
+        double heapText = heapPerUser(users, false);
+        double heapEncoded = heapPerUser(users, true);
+        print("heap", heapText, heapEncoded);
+        
+        Path directory = Files.createTempDirectory("footprint");
+        try {
+            double storageText = storagePerUser(directory, users, false);
+            double storageEncoded = storagePerUser(directory, users, true);
+            print("storage", storageText, storageEncoded);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+    
+    /**
+     * Measure the live heap the users of the dataset take
+     * @param users The number of users
+     * @param shared true to let the users share the canonical nationality names, false to give
+     *               each user a copy of its own
+     * @return The bytes of heap per user, including the user objects and their fields
+     */
+    private static double heapPerUser(int users, boolean shared) throws ReflectiveOperationException {
+        Field nationality = User.class.getDeclaredField("nationality");
+        nationality.setAccessible(true);
+        
+        long before = usedHeap();
+        User[] retained = new User[users];
+        for (int n = 1; n <= users; n++) {
+            User user = BenchmarkData.user(n);
+            if (!shared) {
+                // A row read from a text column decodes a String of its own
+                nationality.set(user, new String(BenchmarkData.nationality(n).toCharArray()));
+            }
+            retained[n - 1] = user;
+        }
+        long after = usedHeap();
+        if (retained[users - 1] == null) {
+            throw new IllegalStateException("Users were not retained");
+        }
+        return (double) (after - before) / users;
+    }
+    
+    /**
+     * Measure the size of a database holding the dataset
+     * @param directory Directory to create the database in
+     * @param users The number of users
+     * @param encoded true to store nationality as a code of a lookup table, false as text
+     * @return The bytes of storage per user, including the table's indexes and, when encoded,
+     *         the lookup table
+     */
+    private static double storagePerUser(Path directory, int users, boolean encoded) throws SQLException, IOException {
+        String table = encoded ? "users_encoded" : "users_text";
+        Path file = directory.resolve(table);
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:file:" + file.toAbsolutePath(), "sa", "")) {
+            insertUsers(connection, table, users, encoded);
+            try (Statement statement = connection.createStatement()) {
+                // Closes the database with every page written out and the free space removed
+                statement.execute("shutdown compact");
+            }
+        }
+        return (double) Files.size(directory.resolve(table + ".mv.db")) / users;
+    }
+    
+    private static void insertUsers(Connection connection, String table, int users, boolean encoded) throws SQLException {
+        String column = encoded ? "nationality_id" : "nationality";
+        try (Statement statement = connection.createStatement()) {
+            if (encoded) {
+                statement.execute("create table nationalities (id smallint primary key, name varchar(255) not null unique)");
+                for (int code = 0; code < BenchmarkData.NATIONALITIES.length; code++) {
+                    statement.execute("insert into nationalities values (" + code + ", '"
+                            + BenchmarkData.NATIONALITIES[code] + "')");
+                }
+            }
+            statement.execute("create table " + table + " (id bigint primary key, version bigint, "
+                    + "name varchar(255) not null, surname varchar(255) not null, email varchar(255) not null, "
+                    + "email_normalized varchar(255) not null unique, "
+                    + column + (encoded ? " smallint" : " varchar(255)") + " not null)");
+            statement.execute("create index idx_" + table + "_name_id on " + table + " (name, id)");
+            statement.execute("create index idx_" + table + "_surname_id on " + table + " (surname, id)");
+            statement.execute("create index idx_" + table + "_nationality_id on " + table + " (" + column + ", id)");
+            statement.execute("create index idx_" + table + "_nationality_surname_id on " + table
+                    + " (" + column + ", surname, id)");
+        }
+        
+        try (PreparedStatement insert = connection.prepareStatement("insert into " + table
+                + " (id, version, name, surname, email, email_normalized, " + column + ") values (?, 0, ?, ?, ?, ?, ?)")) {
+            for (int n = 1; n <= users; n++) {
+                insert.setLong(1, n);
+                insert.setString(2, BenchmarkData.name(n));
+                insert.setString(3, BenchmarkData.surname(n));
+                insert.setString(4, BenchmarkData.email(n));
+                insert.setString(5, BenchmarkData.email(n));
+                if (encoded) {
+                    insert.setShort(6, (short) (n % BenchmarkData.NATIONALITIES.length));
+                } else {
+                    insert.setString(6, BenchmarkData.nationality(n));
+                }
+                insert.addBatch();
+                if (n % INSERT_BATCH_SIZE == 0 || n == users) {
+                    insert.executeBatch();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Get the heap in use once garbage is collected
+     * @return The used heap in bytes
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Collect until the used heap stops shrinking, as a single request may not finish the work
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            long current = runtime.totalMemory() - runtime.freeMemory();
+            if (current >= used) {
+                break;
+            }
+            used = current;
+        }
+        return used;
+    }
+    
+    private static void print(String kind, double text, double encoded) {
+        System.out.printf(Locale.ROOT, "%-8s %20.1f %20.1f %9.1f%%%n",
+                kind, text, encoded, 100 * (text - encoded) / text);
+    }
+}
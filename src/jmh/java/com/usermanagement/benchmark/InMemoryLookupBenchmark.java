@@ -0,0 +1,70 @@
+package com.usermanagement.benchmark;
+
+import com.usermanagement.model.User;
+import com.usermanagement.service.UserCache;
+import com.usermanagement.service.UserChangeEvent;
+import com.usermanagement.service.UserFacets;
+import com.usermanagement.service.UserSuggestIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups served from memory without touching the database: the user cache,
+ * the suggest prefix index and the nationality facet counters
+ * The index and counters are filled through the same change events the service publishes
+ * and never rebuilt, so they are created without a user service.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class InMemoryLookupBenchmark {
+    
+    @Param({"10000", "1000000"})
+    public int users;
+    
+    private UserCache userCache;
+    private UserSuggestIndex suggestIndex;
+    private UserFacets facets;
+    
+    @Setup
+    public void setUp() {
+        userCache = new UserCache(users, Duration.ofHours(1));
+        suggestIndex = new UserSuggestIndex(null);
+        facets = new UserFacets(null);
+        for (long n = 1; n <= users; n++) {
+            User user = BenchmarkData.user(n);
+            userCache.getById(n, id -> Optional.of(user));
+            UserChangeEvent event = UserChangeEvent.created(user);
+            suggestIndex.onUserChange(event);
+            facets.onUserChange(event);
+        }
+    }
+    
+    @Benchmark
+    public Optional<User> cacheHitById() {
+        long n = ThreadLocalRandom.current().nextLong(1, users + 1L);
+        return userCache.getById(n, id -> {
+            throw new IllegalStateException("User " + id + " should be cached");
+        });
+    }
+    
+    @Benchmark
+    public List<String> suggestEmail() {
+        long n = ThreadLocalRandom.current().nextLong(1, users + 1L);
+        return suggestIndex.suggest(UserSuggestIndex.Field.EMAIL, "user" + n % 1000, null);
+    }
+    
+    @Benchmark
+    public Map<String, Long> nationalityFacets() {
+        return facets.getNationalityCounts();
+    }
+}
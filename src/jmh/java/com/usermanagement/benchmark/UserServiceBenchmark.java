@@ -0,0 +1,133 @@
+package com.usermanagement.benchmark;
+
+import com.usermanagement.UserManagementApplication;
+import com.usermanagement.model.CursorPage;
+import com.usermanagement.model.User;
+import com.usermanagement.repository.NationalityCodes;
+import com.usermanagement.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service benchmarks through the full Spring context, for each user store: the embedded H2
+ * database behind JPA, and the in-memory service of the "memory" profile
+ * The dataset is loaded before measuring, at each of the configured sizes: with plain JDBC
+ * batches into H2, and with service batches into memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class UserServiceBenchmark {
+    
+    private static final int LOAD_BATCH_SIZE = 10000;
+    
+    @Param({"10000", "1000000"})
+    public int users;
+    
+    @Param({"jpa", "memory"})
+    public String store;
+    
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+    private final AtomicLong nextUser = new AtomicLong();
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        context = new SpringApplicationBuilder(UserManagementApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.usermanagement=WARN",
+                        "--spring.profiles.active=" + ("memory".equals(store) ? "memory" : "default"));
+        userService = context.getBean(UserService.class);
+        if ("memory".equals(store)) {
+            load(userService);
+        } else {
+            load(context.getBean(JdbcTemplate.class), context.getBean(NationalityCodes.class));
+        }
+        nextUser.set(users + 1L);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+    
+    @Benchmark
+    public User createUser() {
+        long n = nextUser.getAndIncrement();
+        User user = BenchmarkData.user(n);
+        user.setId(null);
+        return userService.createUser(user);
+    }
+    
+    @Benchmark
+    public Optional<User> getUserById() {
+        return userService.getUserById(randomUser());
+    }
+    
+    @Benchmark
+    public CursorPage<User> getAllUsers() {
+        return userService.getAllUsers(randomUser(), null);
+    }
+    
+    @Benchmark
+    public CursorPage<User> searchUsersByNationality() {
+        return userService.searchUsersByNationality(BenchmarkData.nationality(randomUser()), null, null);
+    }
+    
+    private long randomUser() {
+        return ThreadLocalRandom.current().nextLong(1, users + 1L);
+    }
+    
+    /**
+     * Create the dataset with service batches, which hand out IDs 1 to users in order
+     * @param userService The in-memory service
+     */
+    private void load(UserService userService) {
+        for (long first = 1; first <= users; first += LOAD_BATCH_SIZE) {
+            List<User> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+            for (long n = first; n < first + LOAD_BATCH_SIZE && n <= users; n++) {
+                User user = BenchmarkData.user(n);
+                user.setId(null);
+                batch.add(user);
+            }
+            userService.saveUsers(batch);
+        }
+    }
+    
+    /**
+     * Insert the dataset with JDBC batches and move the ID sequence past it
+     * @param jdbcTemplate Template on the benchmark database
+     * @param nationalityCodes The dictionary nationalities are stored as codes of
+     */
+    private void load(JdbcTemplate jdbcTemplate, NationalityCodes nationalityCodes) {
+        List<Object[]> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+        for (long n = 1; n <= users; n++) {
+            batch.add(new Object[]{
+                    n, BenchmarkData.name(n), BenchmarkData.surname(n), BenchmarkData.email(n),
+                    BenchmarkData.email(n), nationalityCodes.register(BenchmarkData.nationality(n))});
+            if (batch.size() == LOAD_BATCH_SIZE || n == users) {
+                jdbcTemplate.batchUpdate("insert into users (id, name, surname, email, email_normalized, nationality_id, version) "
+                        + "values (?, ?, ?, ?, ?, ?, 0)", batch);
+                batch.clear();
+            }
+        }
+        jdbcTemplate.execute("alter sequence user_seq restart with " + (users + User.ID_ALLOCATION_SIZE + 1));
+    }
+}
@@ -0,0 +1,291 @@
+package com.usermanagement.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.usermanagement.UserManagementApplication;
+import com.usermanagement.model.User;
+import com.usermanagement.service.UserService;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load test of the REST API
+ * Starts the whole application on a random local port with its embedded database, seeds it
+ * through the batch endpoint, then sends a weighted mix of reads and writes from several
+ * threads. Latencies are recorded per operation in HDR histograms; when a target rate is set,
+ * each request is timed from its scheduled start so that server stalls are not hidden by the
+ * client waiting (coordinated omission). Each run writes a JSON summary and one percentile
+ * distribution per operation to the report directory.
+ */
+public final class LoadTest {
+    
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final String[] NATIONALITIES = {
+            "American", "Brazilian", "British", "Canadian", "Chinese",
+            "French", "German", "Indian", "Japanese", "Spanish"
+    };
+    
+    private final LoadTestConfig config;
+    private final RestTemplate restTemplate = new RestTemplate();
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final AtomicLong nextUser = new AtomicLong();
+    private final Operation[] weightedOperations;
+    private String baseUrl;
+    private long[] seededIds;
+    private volatile boolean running;
+    
+    private LoadTest(LoadTestConfig config) {
+        this.config = config;
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(HIGHEST_LATENCY_MICROS, 3));
+            errors.put(operation, new LongAdder());
+        }
+        List<Operation> weighted = new ArrayList<>();
+        config.mix.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weighted.add(operation);
+            }
+        });
+        if (weighted.isEmpty()) {
+            throw new IllegalArgumentException("The request mix is empty");
+        }
+        weightedOperations = weighted.toArray(new Operation[0]);
+    }
+    
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.parse(args);
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        System.setProperty("http.maxConnections", String.valueOf(config.threads));
+        
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(UserManagementApplication.class)
+                .run("--server.port=0",
+                        "--user.reactive.enabled=false",
+                        "--spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.profiles.active=" + ("virtual".equals(config.serverThreads) ? "virtual" : "default"),
+                        "--user.admission.enabled=" + config.admission,
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.usermanagement=WARN");
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            LoadTest loadTest = new LoadTest(config);
+            loadTest.baseUrl = "http://localhost:" + port + "/api/users";
+            loadTest.run();
+        } finally {
+            context.close();
+        }
+    }
+    
+    private void run() throws Exception {
+        seed();
+        System.out.printf("Seeded %d users, running %d threads against %s server threads for %ds after a %ds warmup%n",
+                seededIds.length, config.threads, config.serverThreads, config.duration.getSeconds(),
+                config.warmup.getSeconds());
+        
+        running = true;
+        ExecutorService workers = Executors.newFixedThreadPool(config.threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < config.threads; i++) {
+            futures.add(workers.submit(this::work));
+        }
+        
+        Thread.sleep(config.warmup.toMillis());
+        for (Operation operation : Operation.values()) {
+            recorders.get(operation).reset();
+            errors.get(operation).reset();
+        }
+        long start = System.nanoTime();
+        Thread.sleep(config.duration.toMillis());
+        Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, recorders.get(operation).getIntervalHistogram());
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        
+        running = false;
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        workers.shutdown();
+        
+        report(histograms, elapsedSeconds);
+    }
+    
+    /**
+     * Seed the database through the batch endpoint
+     */
+    private void seed() {
+        List<Long> ids = new ArrayList<>(config.seedUsers);
+        while (ids.size() < config.seedUsers) {
+            int size = Math.min(UserService.MAX_BATCH_SIZE, config.seedUsers - ids.size());
+            List<User> batch = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                batch.add(newUser());
+            }
+            JsonNode result = restTemplate.postForObject(baseUrl + "/batch", batch, JsonNode.class);
+            for (JsonNode item : result.get("results")) {
+                ids.add(item.get("id").asLong());
+            }
+        }
+        seededIds = ids.stream().mapToLong(Long::longValue).toArray();
+    }
+    
+    /**
+     * Send requests until the run ends, pacing them when a target rate is set
+     */
+    private void work() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long intervalNanos = config.rate > 0 ? (long) (config.threads * 1e9 / config.rate) : 0;
+        long scheduled = System.nanoTime();
+        while (running) {
+            if (intervalNanos > 0) {
+                long wait = scheduled - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            } else {
+                scheduled = System.nanoTime();
+            }
+            Operation operation = weightedOperations[random.nextInt(weightedOperations.length)];
+            try {
+                send(operation, random);
+                long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduled);
+                recorders.get(operation).recordValue(Math.min(latencyMicros, HIGHEST_LATENCY_MICROS));
+            } catch (RestClientException e) {
+                errors.get(operation).increment();
+            }
+            scheduled += intervalNanos;
+        }
+    }
+    
+    private void send(Operation operation, ThreadLocalRandom random) {
+        switch (operation) {
+            case GET:
+                restTemplate.getForObject(baseUrl + "/{id}", JsonNode.class, randomSeededId(random));
+                break;
+            case SEARCH:
+                restTemplate.getForObject(baseUrl + "/search/nationality?nationality={nationality}", JsonNode.class,
+                        NATIONALITIES[random.nextInt(NATIONALITIES.length)]);
+                break;
+            case CREATE:
+                restTemplate.postForObject(baseUrl, newUser(), JsonNode.class);
+                break;
+            case UPDATE:
+                int index = random.nextInt(seededIds.length);
+                User user = user(index);
+                user.setName("Updated" + random.nextInt(1000));
+                restTemplate.put(baseUrl + "/{id}", user, seededIds[index]);
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation: " + operation);
+        }
+    }
+    
+    private long randomSeededId(ThreadLocalRandom random) {
+        return seededIds[random.nextInt(seededIds.length)];
+    }
+    
+    private User newUser() {
+        return user(nextUser.getAndIncrement());
+    }
+    
+    /**
+     * Build the n-th user; the seeded user at index n was created from the same values
+     * @param n The user number
+     * @return The user, without ID
+     */
+    private static User user(long n) {
+        return new User(null, "Name" + n % 1000, "Surname" + n % 5000, "user" + n + "@example.com",
+                NATIONALITIES[(int) (n % NATIONALITIES.length)]);
+    }
+    
+    /**
+     * Print a summary table and save the run report
+     * @param histograms The latencies recorded per operation during the measured period
+     * @param elapsedSeconds The length of the measured period
+     */
+    private void report(Map<Operation, Histogram> histograms, double elapsedSeconds) throws IOException {
+        File reportDir = new File(config.reportDir);
+        if (!reportDir.isDirectory() && !reportDir.mkdirs()) {
+            throw new IOException("Cannot create report directory " + reportDir);
+        }
+        String run = "loadtest-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("threads", config.threads);
+        summary.put("serverThreads", config.serverThreads);
+        summary.put("admission", config.admission);
+        summary.put("durationSeconds", elapsedSeconds);
+        summary.put("seedUsers", seededIds.length);
+        summary.put("targetRate", config.rate);
+        Map<String, Object> operations = new LinkedHashMap<>();
+        long total = 0;
+        
+        System.out.printf("%-36s %10s %8s %10s %10s %10s %10s%n",
+                "Request", "ops/s", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Map.Entry<Operation, Histogram> entry : histograms.entrySet()) {
+            Operation operation = entry.getKey();
+            Histogram histogram = entry.getValue();
+            if (!config.mix.containsKey(operation)) {
+                continue;
+            }
+            total += histogram.getTotalCount();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("request", operation.getRequest());
+            stats.put("count", histogram.getTotalCount());
+            stats.put("errors", errors.get(operation).sum());
+            stats.put("throughput", histogram.getTotalCount() / elapsedSeconds);
+            stats.put("p50Millis", millis(histogram.getValueAtPercentile(50)));
+            stats.put("p99Millis", millis(histogram.getValueAtPercentile(99)));
+            stats.put("p999Millis", millis(histogram.getValueAtPercentile(99.9)));
+            stats.put("maxMillis", millis(histogram.getMaxValue()));
+            operations.put(operation.name().toLowerCase(), stats);
+            
+            System.out.printf("%-36s %10.1f %8d %10.2f %10.2f %10.2f %10.2f%n", operation.getRequest(),
+                    stats.get("throughput"), stats.get("errors"), stats.get("p50Millis"),
+                    stats.get("p99Millis"), stats.get("p999Millis"), stats.get("maxMillis"));
+            
+            File distribution = new File(reportDir, run + "-" + operation.name().toLowerCase() + ".hgrm");
+            try (PrintStream out = new PrintStream(new FileOutputStream(distribution), false, "UTF-8")) {
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+        summary.put("throughput", total / elapsedSeconds);
+        summary.put("operations", operations);
+        
+        File summaryFile = new File(reportDir, run + ".json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(summaryFile, summary);
+        System.out.printf("Total %.1f ops/s, report saved to %s%n", total / elapsedSeconds, summaryFile);
+    }
+    
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,104 @@
+package com.usermanagement.loadtest;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Options of a load test run, parsed from --name=value arguments
+ */
+final class LoadTestConfig {
+    
+    int threads = 8;
+    Duration warmup = Duration.ofSeconds(10);
+    Duration duration = Duration.ofSeconds(60);
+    int seedUsers = 10000;
+    /**
+     * Target request rate over all threads, or 0 to send requests as fast as possible
+     */
+    double rate;
+    String reportDir = "target/loadtest";
+    /**
+     * Threads the application handles requests on: "platform" for Tomcat's worker pool,
+     * "virtual" for one virtual thread per request
+     */
+    String serverThreads = "platform";
+    /**
+     * Whether the application sheds requests over its concurrency limits; shed requests count as errors
+     */
+    boolean admission = true;
+    Map<Operation, Integer> mix = parseMix("get=60,search=20,create=10,update=10");
+    
+    /**
+     * Parse the command line options, keeping the defaults for absent ones
+     * @param args Options of the form --name=value
+     * @return The configuration
+     * @throws IllegalArgumentException if an option is unknown or malformed
+     */
+    static LoadTestConfig parse(String[] args) {
+        LoadTestConfig config = new LoadTestConfig();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value: " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "threads":
+                    config.threads = Integer.parseInt(value);
+                    break;
+                case "warmup":
+                    config.warmup = Duration.ofSeconds(Long.parseLong(value));
+                    break;
+                case "duration":
+                    config.duration = Duration.ofSeconds(Long.parseLong(value));
+                    break;
+                case "users":
+                    config.seedUsers = Integer.parseInt(value);
+                    break;
+                case "rate":
+                    config.rate = Double.parseDouble(value);
+                    break;
+                case "report-dir":
+                    config.reportDir = value;
+                    break;
+                case "mix":
+                    config.mix = parseMix(value);
+                    break;
+                case "server-threads":
+                    if (!"platform".equals(value) && !"virtual".equals(value)) {
+                        throw new IllegalArgumentException("Expected platform or virtual: " + value);
+                    }
+                    config.serverThreads = value;
+                    break;
+                case "admission":
+                    if (!"true".equals(value) && !"false".equals(value)) {
+                        throw new IllegalArgumentException("Expected true or false: " + value);
+                    }
+                    config.admission = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + name);
+            }
+        }
+        return config;
+    }
+    
+    /**
+     * Parse a request mix such as "get=60,search=20,create=10,update=10"
+     * @param value Comma separated operation weights
+     * @return Weight of each operation, absent operations are not sent
+     */
+    private static Map<Operation, Integer> parseMix(String value) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String part : value.split(",")) {
+            String[] weight = part.split("=", 2);
+            if (weight.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight: " + part);
+            }
+            mix.put(Operation.fromValue(weight[0].trim()), Integer.parseInt(weight[1].trim()));
+        }
+        return mix;
+    }
+}
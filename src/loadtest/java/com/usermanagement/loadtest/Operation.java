@@ -0,0 +1,30 @@
+package com.usermanagement.loadtest;
+
+/**
+ * Requests the load test sends
+ */
+enum Operation {
+    GET("GET /api/users/{id}"),
+    SEARCH("GET /api/users/search/nationality"),
+    CREATE("POST /api/users"),
+    UPDATE("PUT /api/users/{id}");
+    
+    private final String request;
+    
+    Operation(String request) {
+        this.request = request;
+    }
+    
+    String getRequest() {
+        return request;
+    }
+    
+    static Operation fromValue(String value) {
+        for (Operation operation : values()) {
+            if (operation.name().equalsIgnoreCase(value)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation: " + value);
+    }
+}
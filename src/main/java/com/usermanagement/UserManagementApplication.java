@@ -2,11 +2,14 @@ package com.usermanagement;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
 
 /**
  * Main Spring Boot Application class for User Management System
+ * R2DBC is only used by the reactive read API, whose connection factory is not a bean: an
+ * auto-configured one would make Spring Boot skip the JDBC DataSource the JPA path needs.
  */
-@SpringBootApplication
+@SpringBootApplication(exclude = R2dbcAutoConfiguration.class)
 public class UserManagementApplication {
 
     public static void main(String[] args) {
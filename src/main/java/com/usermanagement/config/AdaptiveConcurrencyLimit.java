@@ -0,0 +1,147 @@
+package com.usermanagement.config;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit adapting to the latency of the requests it admits
+ * The limit follows the gradient between the long-term and the recent latency: while recent
+ * requests are no slower than the long-term average times the tolerance, the limit grows by its
+ * square root whenever at least half of it is in use; once they are slower, it shrinks in
+ * proportion, down to half per sample. Rising latency is the sign of queueing on threads,
+ * connections or locks, so the limit settles near the concurrency the system serves without
+ * queueing, whatever that is, instead of a fixed guess.
+ * A limit may be given a higher priority limit, whose latency inflation, or that of limits of
+ * even higher priority, shrinks it as well: the lower priority requests then give way before
+ * the higher priority ones are affected.
+ */
+public class AdaptiveConcurrencyLimit {
+    
+    /**
+     * Weight of a sample in the long-term latency, about the last 200 requests
+     */
+    private static final double LONG_WEIGHT = 0.005;
+    
+    /**
+     * Weight of a sample in the recent latency, about the last 10 requests
+     */
+    private static final double SHORT_WEIGHT = 0.1;
+    
+    /**
+     * Share of the computed limit applied per sample, damping oscillations
+     */
+    private static final double SMOOTHING = 0.2;
+    
+    /**
+     * Age after which the latency gradient of a limit no longer constrains lower priority limits
+     */
+    private static final long GRADIENT_EXPIRY_NANOS = 1_000_000_000L;
+    
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final AdaptiveConcurrencyLimit higherPriority;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    
+    private volatile double limit;
+    private volatile double gradient = 1.0;
+    private volatile long gradientNanos;
+    private double longLatency;
+    private double shortLatency;
+    
+    /**
+     * Constructs a new limit, starting at a quarter of the maximum
+     * @param minLimit Lowest the limit goes, at least 1
+     * @param maxLimit Highest the limit goes
+     * @param tolerance Factor by which the recent latency may exceed the long-term one before the limit shrinks
+     * @param higherPriority Limit whose latency inflation also shrinks this one, or null
+     */
+    public AdaptiveConcurrencyLimit(int minLimit, int maxLimit, double tolerance, AdaptiveConcurrencyLimit higherPriority) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limit range: " + minLimit + ".." + maxLimit);
+        }
+        if (tolerance < 1) {
+            throw new IllegalArgumentException("Latency tolerance must be at least 1: " + tolerance);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.higherPriority = higherPriority;
+        this.limit = Math.max(minLimit, maxLimit / 4);
+    }
+    
+    /**
+     * Admit a request if fewer requests than the limit are in flight
+     * An admitted request must be released once done
+     * @return true if the request is admitted
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= getLimit()) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+    
+    /**
+     * Release an admitted request, adapting the limit to its latency
+     * @param latencyNanos Time the request took
+     */
+    public void release(long latencyNanos) {
+        int current = inFlight.getAndDecrement();
+        update(latencyNanos, current);
+    }
+    
+    /**
+     * Release an admitted request without adapting the limit, when its latency is not meaningful
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+    
+    public int getLimit() {
+        return (int) limit;
+    }
+    
+    public int getInFlight() {
+        return inFlight.get();
+    }
+    
+    private synchronized void update(long latencyNanos, int inFlightAtRelease) {
+        if (longLatency == 0) {
+            longLatency = latencyNanos;
+            shortLatency = latencyNanos;
+        } else {
+            longLatency += (latencyNanos - longLatency) * LONG_WEIGHT;
+            shortLatency += (latencyNanos - shortLatency) * SHORT_WEIGHT;
+        }
+        // After a lasting change of the workload the long-term latency catches up faster
+        if (longLatency > 2 * shortLatency) {
+            longLatency *= 0.95;
+        }
+        double own = Math.max(0.5, Math.min(1.0, tolerance * longLatency / Math.max(1, shortLatency)));
+        gradient = own;
+        gradientNanos = System.nanoTime();
+        
+        double pressure = higherPriority == null ? own : Math.min(own, higherPriority.currentGradient());
+        double current = limit;
+        if (pressure >= 1.0 && inFlightAtRelease < current / 2) {
+            // Not using the limit, so the latency says nothing about a higher one
+            return;
+        }
+        double target = pressure >= 1.0 ? current + Math.sqrt(current) : current * pressure;
+        double next = current + (target - current) * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+    
+    /**
+     * Get the latest latency gradient of this limit and of the limits of higher priority
+     * @return The lowest gradient; 1 when recent requests are within the tolerance or none completed lately
+     */
+    private double currentGradient() {
+        double own = System.nanoTime() - gradientNanos > GRADIENT_EXPIRY_NANOS ? 1.0 : gradient;
+        return higherPriority == null ? own : Math.min(own, higherPriority.currentGradient());
+    }
+}
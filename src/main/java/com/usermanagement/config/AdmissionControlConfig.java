@@ -0,0 +1,57 @@
+package com.usermanagement.config;
+
+import com.usermanagement.config.AdmissionControlFilter.EndpointClass;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Admission control of the user API, enabled unless user.admission.enabled is false
+ * Each endpoint class has an adaptive concurrency limit between user.admission.&lt;class&gt;.min-limit
+ * and max-limit; requests over the limit are shed with 503 Service Unavailable (see
+ * {@link AdmissionControlFilter}).
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "user.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionControlConfig {
+    
+    /**
+     * Shed the requests of each endpoint class beyond its concurrency limit
+     * @param meterRegistry The registry to publish the admission metrics to
+     * @param tolerance Factor by which recent latency may exceed the long-term latency before limits shrink
+     * @param retryAfter Delay after which a shed client is asked to retry
+     * @param lookupMin Lowest limit of point lookups
+     * @param lookupMax Highest limit of point lookups
+     * @param writeMin Lowest limit of writes
+     * @param writeMax Highest limit of writes
+     * @param listingMin Lowest limit of listings and searches
+     * @param listingMax Highest limit of listings and searches
+     * @return The filter
+     */
+    @Bean
+    public AdmissionControlFilter admissionControlFilter(
+            MeterRegistry meterRegistry,
+            @Value("${user.admission.latency-tolerance:2.0}") double tolerance,
+            @Value("${user.admission.retry-after:1s}") Duration retryAfter,
+            @Value("${user.admission.lookup.min-limit:20}") int lookupMin,
+            @Value("${user.admission.lookup.max-limit:200}") int lookupMax,
+            @Value("${user.admission.write.min-limit:5}") int writeMin,
+            @Value("${user.admission.write.max-limit:100}") int writeMax,
+            @Value("${user.admission.listing.min-limit:2}") int listingMin,
+            @Value("${user.admission.listing.max-limit:50}") int listingMax) {
+        AdaptiveConcurrencyLimit lookup = new AdaptiveConcurrencyLimit(lookupMin, lookupMax, tolerance, null);
+        AdaptiveConcurrencyLimit write = new AdaptiveConcurrencyLimit(writeMin, writeMax, tolerance, lookup);
+        AdaptiveConcurrencyLimit listing = new AdaptiveConcurrencyLimit(listingMin, listingMax, tolerance, write);
+        Map<EndpointClass, AdaptiveConcurrencyLimit> limits = new EnumMap<>(EndpointClass.class);
+        limits.put(EndpointClass.LOOKUP, lookup);
+        limits.put(EndpointClass.WRITE, write);
+        limits.put(EndpointClass.LISTING, listing);
+        return new AdmissionControlFilter(limits, retryAfter, meterRegistry);
+    }
+}
@@ -0,0 +1,197 @@
+package com.usermanagement.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Admission control of the user API, shedding requests beyond an adaptive concurrency limit
+ * Requests are classified as point lookups, writes or listings, each class with a limit of its
+ * own adapting to its latency (see {@link AdaptiveConcurrencyLimit}). Lookups take priority:
+ * their latency inflation shrinks the limits of writes and listings as well, so expensive
+ * scans are shed first, and writes take priority over listings. A request over its limit is
+ * answered at once with 503 Service Unavailable and a Retry-After header, instead of queueing
+ * for threads and connections behind the requests already in flight.
+ * Admitted and shed requests are counted in the http.server.admission metric, tagged with the
+ * class and the outcome; the current limits and requests in flight are published as gauges.
+ * The change feed, the export and import uploads hold their request open for a long time and
+ * are not limited.
+ */
+public class AdmissionControlFilter extends OncePerRequestFilter implements Ordered {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControlFilter.class);
+    
+    private static final String API_PATH = "/api/users";
+    
+    /**
+     * Class of a request, from the highest priority to the lowest
+     */
+    public enum EndpointClass {
+        
+        /**
+         * Reads of a single user or of small in-memory results: by ID, by email, suggestions,
+         * facets and cache statistics
+         */
+        LOOKUP,
+        
+        /**
+         * Creates, updates, deletes and snapshots
+         */
+        WRITE,
+        
+        /**
+         * Reads of pages of users: the full list, searches and queries
+         */
+        LISTING;
+        
+        String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+    
+    private final Map<EndpointClass, AdaptiveConcurrencyLimit> limits;
+    private final Map<EndpointClass, Counter> admitted = new EnumMap<>(EndpointClass.class);
+    private final Map<EndpointClass, Counter> shed = new EnumMap<>(EndpointClass.class);
+    private final String retryAfter;
+    
+    /**
+     * Constructs a new filter
+     * @param limits The limit of every endpoint class
+     * @param retryAfter Delay after which a shed client is asked to retry
+     * @param meterRegistry The registry to publish the admission metrics to
+     */
+    public AdmissionControlFilter(Map<EndpointClass, AdaptiveConcurrencyLimit> limits, Duration retryAfter,
+                                  MeterRegistry meterRegistry) {
+        this.limits = new EnumMap<>(limits);
+        this.retryAfter = Long.toString(Math.max(1, (retryAfter.toMillis() + 999) / 1000));
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            AdaptiveConcurrencyLimit limit = limits.get(endpointClass);
+            if (limit == null) {
+                throw new IllegalArgumentException("No concurrency limit for " + endpointClass);
+            }
+            admitted.put(endpointClass, counter(meterRegistry, endpointClass, "admitted"));
+            shed.put(endpointClass, counter(meterRegistry, endpointClass, "shed"));
+            Gauge.builder("http.server.admission.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                    .description("Current concurrency limit of an endpoint class")
+                    .tag("class", endpointClass.tag())
+                    .register(meterRegistry);
+            Gauge.builder("http.server.admission.in.flight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                    .description("Admitted requests of an endpoint class in flight")
+                    .tag("class", endpointClass.tag())
+                    .register(meterRegistry);
+        }
+    }
+    
+    /**
+     * Get the limit of an endpoint class
+     * @param endpointClass The endpoint class
+     * @return The limit
+     */
+    public AdaptiveConcurrencyLimit getLimit(EndpointClass endpointClass) {
+        return limits.get(endpointClass);
+    }
+    
+    /**
+     * Run before the other filters, so shed requests cost as little as possible, but after the
+     * request metrics filter, so they are still timed
+     * @return The filter order
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 10;
+    }
+    
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return classify(request.getMethod(), pathOf(request)) == null;
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        EndpointClass endpointClass = classify(request.getMethod(), pathOf(request));
+        AdaptiveConcurrencyLimit limit = limits.get(endpointClass);
+        if (!limit.tryAcquire()) {
+            shed.get(endpointClass).increment();
+            logger.debug("Shed {} {}: {} requests over the limit of {}", request.getMethod(), request.getRequestURI(),
+                    endpointClass.tag(), limit.getLimit());
+            reject(response);
+            return;
+        }
+        admitted.get(endpointClass).increment();
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                limit.release();
+            } else {
+                limit.release(System.nanoTime() - start);
+            }
+        }
+    }
+    
+    /**
+     * Get the class of a request
+     * @param method The HTTP method
+     * @param path The request path, without the context path
+     * @return The endpoint class, or null if the request is not limited
+     */
+    static EndpointClass classify(String method, String path) {
+        if (!path.startsWith(API_PATH) || (path.length() > API_PATH.length() && path.charAt(API_PATH.length()) != '/')) {
+            return null;
+        }
+        String endpoint = path.substring(API_PATH.length());
+        if (endpoint.endsWith("/")) {
+            endpoint = endpoint.substring(0, endpoint.length() - 1);
+        }
+        if (endpoint.equals("/changes") || endpoint.equals("/export") || endpoint.equals("/imports")) {
+            return null;
+        }
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return "OPTIONS".equals(method) ? null : EndpointClass.WRITE;
+        }
+        if (endpoint.isEmpty() || endpoint.equals("/query") || endpoint.startsWith("/search/") && !endpoint.equals("/search/email")) {
+            return EndpointClass.LISTING;
+        }
+        return EndpointClass.LOOKUP;
+    }
+    
+    private static String pathOf(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+    
+    private void reject(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, retryAfter);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write("{\"error\":\"Too many concurrent requests, retry later\"}");
+    }
+    
+    private static Counter counter(MeterRegistry meterRegistry, EndpointClass endpointClass, String outcome) {
+        return Counter.builder("http.server.admission")
+                .description("Requests admitted or shed by admission control")
+                .tag("class", endpointClass.tag())
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,154 @@
+package com.usermanagement.config;
+
+import com.usermanagement.model.User;
+import com.usermanagement.service.UserChangeEvent;
+import com.usermanagement.service.UsersImportedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replication of the primary database to the replica, for running replica routing locally
+ * against two embedded H2 databases; a real deployment relies on the database's own replication.
+ * At startup, before the web server, the primary's schema and data are copied to the replica
+ * with H2's SCRIPT command. Afterwards, every committed user change is applied to the replica
+ * after the configured lag, on a single thread and in commit order, by copying the user's
+ * current row from the primary, or deleting it from the replica if it is gone. A lag makes the
+ * replica visibly stale, which is what the read-your-writes protection is there for.
+ */
+public class LocalReplication implements SmartLifecycle {
+    
+    private static final Logger logger = LoggerFactory.getLogger(LocalReplication.class);
+    
+    private static final String SELECT_USER =
+            "select u.id, u.version, u.name, u.surname, u.email, u.email_normalized, u.nationality_id, n.name nationality "
+                    + "from users u join nationalities n on n.id = u.nationality_id where u.id = ?";
+    private static final String MERGE_NATIONALITY =
+            "merge into nationalities (id, name) key (id) values (?, ?)";
+    private static final String MERGE_USER =
+            "merge into users (id, version, name, surname, email, email_normalized, nationality_id) key (id) values (?, ?, ?, ?, ?, ?, ?)";
+    
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+    private final Duration lag;
+    private volatile ScheduledExecutorService executor;
+    
+    /**
+     * Constructs a new replication
+     * @param primary The primary database
+     * @param replica The replica, empty until the replication starts
+     * @param lag How long after its commit a change is applied to the replica
+     */
+    public LocalReplication(DataSource primary, DataSource replica, Duration lag) {
+        this.primary = new JdbcTemplate(primary);
+        this.replica = new JdbcTemplate(replica);
+        this.lag = lag;
+    }
+    
+    /**
+     * Copy the primary to the replica, then start applying changes
+     */
+    @Override
+    public void start() {
+        long start = System.nanoTime();
+        List<String> script = primary.queryForList("script nopasswords nosettings", String.class);
+        int statements = 0;
+        for (String statement : script) {
+            if (!statement.startsWith("--")) {
+                replica.execute(statement);
+                statements++;
+            }
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "local-replication");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Copied the primary to the replica with {} statements in {} ms; replicating with a lag of {} ms",
+                statements, (System.nanoTime() - start) / 1_000_000, lag.toMillis());
+    }
+    
+    /**
+     * Schedule a committed user change for the replica
+     * @param event The change
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChange(UserChangeEvent event) {
+        ScheduledExecutorService current = executor;
+        if (current != null) {
+            Long id = event.getUserId();
+            current.schedule(() -> apply(id), lag.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Schedule a committed chunk of imported users for the replica
+     * @param event The import
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUsersImported(UsersImportedEvent event) {
+        ScheduledExecutorService current = executor;
+        if (current != null) {
+            List<User> users = event.getUsers();
+            current.schedule(() -> users.forEach(user -> apply(user.getId())), lag.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Copy the current row of a user from the primary to the replica
+     * @param id The ID of the user
+     */
+    void apply(Long id) {
+        try {
+            List<Map<String, Object>> rows = primary.queryForList(SELECT_USER, id);
+            if (rows.isEmpty()) {
+                replica.update("delete from users where id = ?", id);
+                return;
+            }
+            Map<String, Object> row = rows.get(0);
+            replica.update(MERGE_NATIONALITY, row.get("nationality_id"), row.get("nationality"));
+            replica.update(MERGE_USER, row.get("id"), row.get("version"), row.get("name"), row.get("surname"),
+                    row.get("email"), row.get("email_normalized"), row.get("nationality_id"));
+        } catch (DataAccessException e) {
+            logger.warn("Cannot replicate user {}", id, e);
+        }
+    }
+    
+    /**
+     * Stop applying changes; those not applied yet are dropped
+     */
+    @Override
+    public void stop() {
+        ScheduledExecutorService current = executor;
+        executor = null;
+        if (current != null) {
+            current.shutdownNow();
+        }
+    }
+    
+    @Override
+    public boolean isRunning() {
+        return executor != null;
+    }
+    
+    /**
+     * Start after the user snapshot is restored, so the restored users are copied, and before
+     * the web servers, which use the default phase
+     * @return The lifecycle phase
+     */
+    @Override
+    public int getPhase() {
+        return 1;
+    }
+}
@@ -0,0 +1,90 @@
+package com.usermanagement.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.usermanagement.controller.UserReadHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.servlet.context.ServletWebServerInitializedEvent;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.context.ApplicationListener;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+
+/**
+ * Reactor Netty server for the reactive read API, running next to the servlet container
+ * The application stays a servlet application; this server is started once the servlet web
+ * server is up, on its own port, and serves only the routes of {@link UserReadHandler}. Its
+ * event loop threads handle any number of concurrent readers without a thread per request.
+ * Responses are written with the application's ObjectMapper, as by the servlet endpoints.
+ */
+@Component
+@ConditionalOnProperty(name = "user.reactive.enabled", havingValue = "true")
+public class ReactiveReadServer implements ApplicationListener<ServletWebServerInitializedEvent>, DisposableBean {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveReadServer.class);
+    
+    private final UserReadHandler userReadHandler;
+    private final ObjectMapper objectMapper;
+    private final int port;
+    private WebServer webServer;
+    
+    /**
+     * Constructs a new server
+     * @param userReadHandler The handler of the read endpoints
+     * @param objectMapper The mapper to write JSON with
+     * @param port The port to listen on, 0 for any free port
+     */
+    public ReactiveReadServer(UserReadHandler userReadHandler, ObjectMapper objectMapper,
+                              @Value("${user.reactive.port:8081}") int port) {
+        this.userReadHandler = userReadHandler;
+        this.objectMapper = objectMapper;
+        this.port = port;
+    }
+    
+    /**
+     * Start the server once the servlet web server of the application is started
+     * @param event The servlet web server initialization
+     */
+    @Override
+    public synchronized void onApplicationEvent(ServletWebServerInitializedEvent event) {
+        if (webServer != null || event.getApplicationContext().getServerNamespace() != null) {
+            return;
+        }
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+                })
+                .build();
+        webServer = new NettyReactiveWebServerFactory(port)
+                .getWebServer(RouterFunctions.toHttpHandler(userReadHandler.routes(), strategies));
+        webServer.start();
+        logger.info("Reactive read API started on port {}", webServer.getPort());
+    }
+    
+    /**
+     * Get the port the server listens on
+     * @return The port, or -1 if the server is not started
+     */
+    public synchronized int getPort() {
+        return webServer == null ? -1 : webServer.getPort();
+    }
+    
+    /**
+     * Stop the server
+     */
+    @Override
+    public synchronized void destroy() {
+        if (webServer != null) {
+            webServer.stop();
+            webServer = null;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.usermanagement.config;
+
+import com.usermanagement.repository.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Routing of read-only transactions to a replica database, enabled with user.replica.enabled=true
+ * The primary pool is configured by the spring.datasource properties as usual, the replica pool
+ * by user.replica.url and user.replica.hikari. The application's data source sends read-only
+ * transactions, that is listings, searches, counts, the export and cache misses of lookups, to
+ * the replica, and everything else to the primary (see {@link ReplicaRoutingDataSource}).
+ * Since the replica lags behind, reads stay on the primary for the read-your-writes window
+ * after a write: for the client that wrote, through a cookie (see {@link ReplicaRoutingFilter}),
+ * and for lookups of the written user by anyone (see
+ * {@link com.usermanagement.service.RecentUserWrites}).
+ * Two embedded H2 databases can stand in for a replicated pair with the "replica" profile
+ * (application-replica.properties), which copies changes to the replica itself.
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("!memory")
+@ConditionalOnProperty(name = "user.replica.enabled", havingValue = "true")
+public class ReplicaConfig {
+    
+    /**
+     * Pool of connections to the primary, taking every write
+     * @param properties The spring.datasource properties
+     * @return The pool
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+    
+    /**
+     * Pool of connections to the replica, taking read-only transactions
+     * @param properties The spring.datasource properties, whose credentials and driver the replica shares by default
+     * @param url JDBC URL of the replica
+     * @param username Database user of the replica
+     * @param password Database password of the replica
+     * @return The pool
+     */
+    @Bean
+    @ConfigurationProperties("user.replica.hikari")
+    public HikariDataSource replicaDataSource(DataSourceProperties properties,
+                                              @Value("${user.replica.url}") String url,
+                                              @Value("${user.replica.username:${spring.datasource.username:}}") String username,
+                                              @Value("${user.replica.password:${spring.datasource.password:}}") String password) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(properties.determineDriverClassName())
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        dataSource.setPoolName("replica");
+        return dataSource;
+    }
+    
+    /**
+     * The application's data source, routing each transaction to the primary or the replica
+     * Connections are obtained on the first statement, once the transaction is known to be
+     * read-only or not, rather than when the transaction begins
+     * @param primary The primary pool
+     * @param replica The replica pool
+     * @return The data source
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica) {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replica);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+    
+    /**
+     * Release Hibernate's connection at the end of every transaction
+     * By default a session holds its connection until it is closed, and the session of a web
+     * request outlives its transactions, so a write following a read-only transaction in the same
+     * request would reuse the replica connection.
+     * @return The customizer
+     */
+    @Bean
+    public HibernatePropertiesCustomizer replicaConnectionHandlingCustomizer() {
+        return properties -> properties.put("hibernate.connection.handling_mode",
+                "DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION");
+    }
+    
+    /**
+     * Keep a client's reads on the primary for the read-your-writes window after its writes
+     * @param window How long after a write the client's reads go to the primary
+     * @return The filter
+     */
+    @Bean
+    public ReplicaRoutingFilter replicaRoutingFilter(@Value("${user.replica.read-your-writes-window:5s}") Duration window) {
+        return new ReplicaRoutingFilter(window);
+    }
+    
+    /**
+     * Copy the primary to the replica and apply every change to it after a lag, for running
+     * against two embedded databases without replication of their own
+     * @param primary The primary pool
+     * @param replica The replica pool
+     * @param lag How long after its commit a change reaches the replica
+     * @return The replication
+     */
+    @Bean
+    @ConditionalOnProperty(name = "user.replica.local-replication.enabled", havingValue = "true")
+    public LocalReplication localReplication(@Qualifier("primaryDataSource") DataSource primary,
+                                             @Qualifier("replicaDataSource") DataSource replica,
+                                             @Value("${user.replica.local-replication.lag:0ms}") Duration lag) {
+        return new LocalReplication(primary, replica, lag);
+    }
+}
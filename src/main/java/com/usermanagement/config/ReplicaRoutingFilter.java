@@ -0,0 +1,85 @@
+package com.usermanagement.config;
+
+import com.usermanagement.repository.ReplicaRouting;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Keeps a client's reads on the primary for the read-your-writes window after its own writes
+ * Every request that may write (any method but GET, HEAD and OPTIONS) sets a cookie holding the
+ * end of the window; until then, the client's requests are pinned to the primary with
+ * {@link ReplicaRouting}, so a listing or search right after a write sees it even though the
+ * replica may lag behind. Other clients read from the replica throughout.
+ */
+public class ReplicaRoutingFilter extends OncePerRequestFilter {
+    
+    /**
+     * Cookie holding the time, in milliseconds since the epoch, until which reads go to the primary
+     */
+    public static final String COOKIE = "read-primary-until";
+    
+    private final Duration window;
+    
+    /**
+     * Constructs a new filter
+     * @param window How long after a write the client's reads go to the primary
+     */
+    public ReplicaRoutingFilter(Duration window) {
+        this.window = window;
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean pinned;
+        if (isWrite(request.getMethod())) {
+            // Set before the chain, since the response may be committed by the time it returns
+            Cookie cookie = new Cookie(COOKIE, Long.toString(System.currentTimeMillis() + window.toMillis()));
+            cookie.setMaxAge((int) Math.max(1, (window.toMillis() + 999) / 1000));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            response.addCookie(cookie);
+            pinned = true;
+        } else {
+            pinned = readPrimaryUntil(request) > System.currentTimeMillis();
+        }
+        if (!pinned) {
+            chain.doFilter(request, response);
+            return;
+        }
+        ReplicaRouting.Pin pin = ReplicaRouting.pinToPrimary();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            pin.close();
+        }
+    }
+    
+    private static boolean isWrite(String method) {
+        return !("GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method));
+    }
+    
+    private static long readPrimaryUntil(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return 0;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,106 @@
+package com.usermanagement.config;
+
+import com.usermanagement.service.UserService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.RootClassFilter;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.util.ClassUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+
+/**
+ * Counting of the SQL statements issued per HTTP request and per service call
+ * The application's data source is wrapped to count the statements executed through it (see
+ * {@link SqlStatementCounter}); counts are published as the sql.statements.request and
+ * sql.statements.call summaries and logged. Enabled unless user.sql.statement-counting.enabled
+ * is false; the budget of a request is set with user.sql.request-statement-budget.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "user.sql.statement-counting.enabled", havingValue = "true", matchIfMissing = true)
+public class SqlStatementConfig {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SqlStatementConfig.class);
+    
+    /**
+     * Wrap every data source bean to count its statements
+     * Data sources delegating to other beans, such as the routing data source of the replica
+     * configuration, are left alone: their statements are counted by the pools they delegate to.
+     * @return The post-processor
+     */
+    @Bean
+    public static BeanPostProcessor sqlStatementCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource && !(bean instanceof DelegatingDataSource)
+                        ? SqlStatementCounter.counting((DataSource) bean) : bean;
+            }
+        };
+    }
+    
+    /**
+     * Count the statements of every UserService call
+     * Ordered before the transaction advice, so statements issued when committing are counted too
+     * @param meterRegistry The registry to publish the statement counts to, resolved on first use
+     *                      since advisors are created before the registry
+     * @return The advisor
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor userServiceSqlStatementAdvisor(ObjectProvider<MeterRegistry> meterRegistry) {
+        StaticMethodMatcherPointcut pointcut = new StaticMethodMatcherPointcut() {
+            @Override
+            public boolean matches(Method method, Class<?> targetClass) {
+                return ClassUtils.hasMethod(UserService.class, method.getName(), method.getParameterTypes());
+            }
+        };
+        pointcut.setClassFilter(new RootClassFilter(UserService.class));
+        MethodInterceptor interceptor = invocation -> {
+            try (SqlStatementCounter.Scope scope = SqlStatementCounter.open()) {
+                try {
+                    return invocation.proceed();
+                } finally {
+                    String method = invocation.getMethod().getName();
+                    DistributionSummary.builder("sql.statements.call")
+                            .description("SQL statements issued per UserService call")
+                            .tag("method", method)
+                            .register(meterRegistry.getObject())
+                            .record(scope.getCount());
+                    logger.trace("UserService.{} issued {} SQL statements", method, scope.getCount());
+                }
+            }
+        };
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(pointcut, interceptor);
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return advisor;
+    }
+    
+    /**
+     * Count the statements of every HTTP request
+     * @param meterRegistry The registry to publish the statement counts to
+     * @param budget Most statements a request is expected to issue; requests over it are logged as warnings
+     * @return The filter
+     */
+    @Bean
+    public SqlStatementFilter sqlStatementFilter(MeterRegistry meterRegistry,
+                                                 @Value("${user.sql.request-statement-budget:10}") long budget) {
+        return new SqlStatementFilter(meterRegistry, budget);
+    }
+}
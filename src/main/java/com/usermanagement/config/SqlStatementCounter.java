@@ -0,0 +1,161 @@
+package com.usermanagement.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Counts the JDBC statements executed by the current thread, within nested scopes
+ * A scope is opened around a unit of work, such as an HTTP request or a service call, and
+ * counts every statement the thread executes until it is closed; a statement counts towards
+ * every scope open on the thread, so a service call's statements also count towards its
+ * request. Statements are counted by the data source returned by {@link #counting(DataSource)}:
+ * each execute call is one round trip to the database, a JDBC batch included. Statements run
+ * on other threads, such as the asynchronous part of the user export, count towards no scope.
+ * Scopes are also the assertion API of the tests:
+ * <pre>
+ * try (SqlStatementCounter.Scope scope = SqlStatementCounter.open()) {
+ *     mockMvc.perform(get("/api/users/{id}", id));
+ *     assertEquals(1, scope.getCount());
+ * }
+ * </pre>
+ */
+public final class SqlStatementCounter {
+    
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+    
+    private SqlStatementCounter() {
+    }
+    
+    /**
+     * Start counting the statements of the current thread
+     * Scopes must be closed in the reverse order they were opened, which try-with-resources ensures
+     * @return The scope, to close once the unit of work is done
+     */
+    public static Scope open() {
+        Scope scope = new Scope(CURRENT.get());
+        CURRENT.set(scope);
+        return scope;
+    }
+    
+    /**
+     * Wrap a data source so that the statements executed through its connections are counted
+     * @param dataSource The data source
+     * @return The counting data source, which unwraps to the given one
+     */
+    public static DataSource counting(DataSource dataSource) {
+        return new CountingDataSource(dataSource);
+    }
+    
+    private static void record() {
+        for (Scope scope = CURRENT.get(); scope != null; scope = scope.parent) {
+            scope.count++;
+        }
+    }
+    
+    /**
+     * Statements counted from the opening of a scope to its closing
+     */
+    public static final class Scope implements AutoCloseable {
+        
+        private final Scope parent;
+        private long count;
+        
+        private Scope(Scope parent) {
+            this.parent = parent;
+        }
+        
+        /**
+         * Get the number of statements executed so far in this scope
+         * @return The statement count
+         */
+        public long getCount() {
+            return count;
+        }
+        
+        /**
+         * Stop counting, making the enclosing scope, if any, the current one again
+         */
+        @Override
+        public void close() {
+            if (parent == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(parent);
+            }
+        }
+    }
+    
+    /**
+     * Data source handing out connections whose statements are counted
+     */
+    private static final class CountingDataSource extends DelegatingDataSource {
+        
+        CountingDataSource(DataSource dataSource) {
+            super(dataSource);
+        }
+        
+        @Override
+        public Connection getConnection() throws SQLException {
+            return proxy(Connection.class, super.getConnection());
+        }
+        
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return proxy(Connection.class, super.getConnection(username, password));
+        }
+    }
+    
+    /**
+     * Proxy a JDBC connection or statement
+     * Every execute call of a statement is counted, including those that fail, and every
+     * statement a connection creates is proxied in turn.
+     * @param type The JDBC interface to proxy
+     * @param target The connection or statement
+     * @param <T> The JDBC interface
+     * @return The proxy
+     */
+    private static <T> T proxy(Class<T> type, Object target) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (target instanceof Statement && name.startsWith("execute")) {
+                record();
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+            return target instanceof Connection ? wrapStatement(result) : result;
+        };
+        return type.cast(Proxy.newProxyInstance(SqlStatementCounter.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+    
+    private static Object wrapStatement(Object result) {
+        if (result instanceof CallableStatement) {
+            return proxy(CallableStatement.class, result);
+        }
+        if (result instanceof PreparedStatement) {
+            return proxy(PreparedStatement.class, result);
+        }
+        if (result instanceof Statement) {
+            return proxy(Statement.class, result);
+        }
+        return result;
+    }
+}
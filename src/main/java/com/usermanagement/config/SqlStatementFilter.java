@@ -0,0 +1,67 @@
+package com.usermanagement.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Counts the SQL statements of every HTTP request
+ * The count is recorded in the sql.statements.request summary, tagged like the request timers
+ * with the method and URI template, and logged at debug level; a request issuing more
+ * statements than the budget is logged as a warning, which points at N+1 queries and
+ * redundant round trips.
+ */
+public class SqlStatementFilter extends OncePerRequestFilter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SqlStatementFilter.class);
+    
+    private final MeterRegistry meterRegistry;
+    private final long budget;
+    
+    /**
+     * Constructs a new filter
+     * @param meterRegistry The registry to publish the statement counts to
+     * @param budget Most statements a request is expected to issue
+     */
+    public SqlStatementFilter(MeterRegistry meterRegistry, long budget) {
+        this.meterRegistry = meterRegistry;
+        this.budget = budget;
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try (SqlStatementCounter.Scope scope = SqlStatementCounter.open()) {
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                record(request, scope.getCount());
+            }
+        }
+    }
+    
+    private void record(HttpServletRequest request, long count) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        DistributionSummary.builder("sql.statements.request")
+                .description("SQL statements issued per HTTP request")
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(count);
+        if (count > budget) {
+            logger.warn("{} {} issued {} SQL statements, over the budget of {}", request.getMethod(), uri, count, budget);
+        } else {
+            logger.debug("{} {} issued {} SQL statements", request.getMethod(), uri, count);
+        }
+    }
+}
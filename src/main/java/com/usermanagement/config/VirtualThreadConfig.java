@@ -0,0 +1,76 @@
+package com.usermanagement.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Opt-in execution of requests on virtual threads, enabled with user.virtual-threads.enabled=true
+ * Tomcat hands every request to a new virtual thread instead of its fixed worker pool, so a
+ * request blocked on JDBC no longer holds one of a few hundred platform threads; the service
+ * and repository calls run on that same thread. Asynchronous requests such as the user export
+ * run on virtual threads as well. Concurrency against the database is then bounded by the
+ * connection pool alone, which is sized in application-virtual.properties.
+ * Requires Java 21 or later; startup fails on older runtimes rather than silently falling
+ * back to platform threads.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "user.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+    
+    /**
+     * Executor starting one virtual thread per task, shut down with the application
+     * @return The executor
+     * @throws IllegalStateException if the running JVM does not support virtual threads
+     */
+    @Bean
+    public ExecutorService virtualThreadExecutor() {
+        return VirtualThreads.newThreadPerTaskExecutor("request-");
+    }
+    
+    /**
+     * Run Tomcat's request processing on virtual threads
+     * @param virtualThreadExecutor The executor to process requests with
+     * @return The customizer of the Tomcat connector's protocol handler
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer(
+            ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+    
+    /**
+     * Run asynchronous request processing and @Async tasks on virtual threads
+     * Replaces the bounded pool Spring Boot would otherwise configure
+     * @param virtualThreadExecutor The executor to run tasks with
+     * @return The task executor
+     */
+    @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    public AsyncTaskExecutor applicationTaskExecutor(ExecutorService virtualThreadExecutor) {
+        return new TaskExecutorAdapter(virtualThreadExecutor);
+    }
+    
+    /**
+     * Report virtual threads pinned to their carrier, e.g. while blocked inside synchronized code
+     * @param meterRegistry The registry to publish the pinning timer to
+     * @param threshold Shortest pinning reported
+     * @return The monitor
+     */
+    @Bean
+    @ConditionalOnProperty(name = "user.virtual-threads.pinning-monitor.enabled", havingValue = "true", matchIfMissing = true)
+    public VirtualThreadPinningMonitor virtualThreadPinningMonitor(
+            MeterRegistry meterRegistry,
+            @Value("${user.virtual-threads.pinning-monitor.threshold:20ms}") Duration threshold) {
+        return new VirtualThreadPinningMonitor(meterRegistry, threshold);
+    }
+}
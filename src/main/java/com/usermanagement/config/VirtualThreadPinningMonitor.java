@@ -0,0 +1,80 @@
+package com.usermanagement.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Reports virtual threads pinned to their carrier thread
+ * A virtual thread that blocks inside a synchronized block or a native call keeps its
+ * carrier thread blocked too, so a few of them can stall every request. Pinning is observed
+ * through the JDK Flight Recorder event jdk.VirtualThreadPinned, streamed in process: each
+ * occurrence longer than the threshold is timed as jvm.threads.virtual.pinned and logged
+ * with its stack trace. The JFR API is used reflectively, like the virtual thread API.
+ */
+public class VirtualThreadPinningMonitor implements InitializingBean, DisposableBean {
+    
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+    
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    
+    private final Duration threshold;
+    private final Timer pinned;
+    private AutoCloseable stream;
+    
+    /**
+     * Constructs a new monitor
+     * @param meterRegistry The registry to publish the pinning timer to
+     * @param threshold Shortest pinning reported
+     */
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry, Duration threshold) {
+        this.threshold = threshold;
+        this.pinned = Timer.builder("jvm.threads.virtual.pinned")
+                .description("Time virtual threads spent pinned to their carrier thread")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Start streaming pinning events
+     */
+    @Override
+    public void afterPropertiesSet() throws ReflectiveOperationException {
+        Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+        Class<?> eventClass = Class.forName("jdk.jfr.consumer.RecordedEvent");
+        Object recordingStream = streamClass.getConstructor().newInstance();
+        Object settings = streamClass.getMethod("enable", String.class).invoke(recordingStream, PINNED_EVENT);
+        Class<?> settingsClass = Class.forName("jdk.jfr.EventSettings");
+        settingsClass.getMethod("withThreshold", Duration.class).invoke(settings, threshold);
+        settingsClass.getMethod("withStackTrace").invoke(settings);
+        
+        Consumer<Object> onPinned = event -> {
+            try {
+                Duration duration = (Duration) eventClass.getMethod("getDuration").invoke(event);
+                pinned.record(duration);
+                logger.warn("Virtual thread pinned for {} ms: {}", duration.toMillis(), event);
+            } catch (ReflectiveOperationException e) {
+                logger.warn("Cannot read virtual thread pinning event", e);
+            }
+        };
+        streamClass.getMethod("onEvent", String.class, Consumer.class).invoke(recordingStream, PINNED_EVENT, onPinned);
+        streamClass.getMethod("startAsync").invoke(recordingStream);
+        stream = (AutoCloseable) recordingStream;
+        logger.info("Reporting virtual threads pinned for more than {} ms", threshold.toMillis());
+    }
+    
+    /**
+     * Stop streaming pinning events
+     */
+    @Override
+    public void destroy() throws Exception {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.usermanagement.controller;
+
+import com.usermanagement.model.User;
+import com.usermanagement.service.UserChangeEvent;
+import com.usermanagement.service.UsersImportedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-Sent Events feed of committed user changes
+ * Every {@link UserChangeEvent} is sent to all subscribers as an event named created, updated
+ * or deleted, carrying the user after the change (before it, for deletions). A chunk of users
+ * committed by a bulk import is a single imported event instead, carrying the ID of the import
+ * and the number of users created, after which clients reload what they show. Event IDs are
+ * sequential within a per-process epoch, and the most recent events are kept, so a client
+ * reconnecting with Last-Event-ID receives the events it missed. A client that missed more
+ * than is kept, or whose ID is from before a restart, receives a reset event and must reload.
+ * Each subscriber has its own backlog of events, sent in commit order by a thread of a bounded
+ * dispatcher pool while it has any, never from the committing thread; a blocked write thus only
+ * holds up its own client, and its thread until the container's write timeout fails the write.
+ * A subscriber whose backlog outgrows the maximum is dropped, its emitter completed by the thread
+ * sending to it once the send returns, and resumes with Last-Event-ID once it reconnects.
+ */
+@Component
+public class UserChangeFeed implements DisposableBean {
+    
+    private static final Logger logger = LoggerFactory.getLogger(UserChangeFeed.class);
+    
+    static final String RESET_EVENT = "reset";
+    static final String IMPORTED_EVENT = "imported";
+    
+    private static final Change RESET = new Change(null, RESET_EVENT, "");
+    
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    private final int historySize;
+    private final int maxBacklog;
+    private final long timeoutMillis;
+    private final Deque<Change> history = new ArrayDeque<>();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ExecutorService dispatcher;
+    private long sequence;
+    
+    /**
+     * Constructs a new feed
+     * @param historySize Number of most recent events kept for reconnecting clients
+     * @param maxBacklog Number of events a subscriber may have waiting to be sent before it is dropped
+     * @param dispatcherThreads Most threads sending events at once, and so most subscribers
+     *                          whose blocked writes are waited for before others are served
+     * @param timeout Time after which a subscription is closed; clients reconnect and resume
+     */
+    public UserChangeFeed(@Value("${user.change-feed.history-size:10000}") int historySize,
+                          @Value("${user.change-feed.max-backlog:1000}") int maxBacklog,
+                          @Value("${user.change-feed.dispatcher-threads:32}") int dispatcherThreads,
+                          @Value("${user.change-feed.timeout:5m}") Duration timeout) {
+        if (dispatcherThreads <= 0) {
+            throw new IllegalArgumentException("user.change-feed.dispatcher-threads must be positive");
+        }
+        this.historySize = historySize;
+        this.maxBacklog = maxBacklog;
+        this.timeoutMillis = timeout.toMillis();
+        AtomicInteger threads = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(dispatcherThreads, dispatcherThreads,
+                1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "user-change-feed-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        this.dispatcher = pool;
+    }
+    
+    /**
+     * Subscribe to the feed
+     * @param lastEventId The ID of the last event the client received, or null to receive only new events
+     * @return The emitter the events are sent to
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscriber.close());
+        emitter.onTimeout(() -> subscriber.close());
+        emitter.onError(e -> subscriber.close());
+        
+        synchronized (this) {
+            List<Change> missed = lastEventId == null ? Collections.emptyList() : missedSince(lastEventId);
+            // Queued under the lock, so no later event can be sent to the emitter before these
+            if (missed == null || missed.size() > maxBacklog) {
+                subscriber.enqueue(RESET);
+            } else {
+                missed.forEach(subscriber::enqueue);
+            }
+            subscribers.add(subscriber);
+        }
+        return emitter;
+    }
+    
+    /**
+     * Get the number of open subscriptions
+     * @return The number of subscribers
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+    
+    /**
+     * Send a committed user change to all subscribers
+     * @param event The change
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onUserChange(UserChangeEvent event) {
+        User user = event.getCurrent() != null ? event.getCurrent() : event.getPrevious();
+        publish(event.getType().name().toLowerCase(), user);
+    }
+    
+    /**
+     * Send a committed chunk of imported users to all subscribers, as a single event
+     * @param event The import
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onUsersImported(UsersImportedEvent event) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("importId", event.getImportId());
+        data.put("count", event.getUsers().size());
+        publish(IMPORTED_EVENT, data);
+    }
+    
+    private void publish(String name, Object data) {
+        Change change = new Change(epoch + "-" + (++sequence), name, data);
+        history.addLast(change);
+        if (history.size() > historySize) {
+            history.removeFirst();
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.enqueue(change);
+        }
+    }
+    
+    /**
+     * Close all subscriptions
+     */
+    @Override
+    public void destroy() {
+        dispatcher.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+            try {
+                subscriber.emitter.complete();
+            } catch (IllegalStateException e) {
+                // Already completed by the container
+            }
+        }
+        subscribers.clear();
+    }
+    
+    /**
+     * Find the events after the one a client last received
+     * @param lastEventId The ID of the last event received
+     * @return The events sent since, oldest first, or null if they are no longer all kept
+     */
+    private List<Change> missedSince(String lastEventId) {
+        long last = parseSequence(lastEventId);
+        long oldestKept = sequence - history.size() + 1;
+        if (last < 0 || last > sequence || last < oldestKept - 1) {
+            return null;
+        }
+        int count = (int) (sequence - last);
+        Iterator<Change> changes = history.iterator();
+        for (int i = history.size() - count; i > 0; i--) {
+            changes.next();
+        }
+        List<Change> missed = new ArrayList<>(count);
+        changes.forEachRemaining(missed::add);
+        return missed;
+    }
+    
+    /**
+     * Extract the sequence number from an event ID of this process
+     * @param eventId The event ID
+     * @return The sequence number, or -1 if the ID is malformed or from another epoch
+     */
+    private long parseSequence(String eventId) {
+        String prefix = epoch + "-";
+        if (!eventId.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * A subscription and the events waiting to be sent to it
+     * Events are queued by the committing threads, under the feed's lock, and sent by a
+     * dispatcher thread that runs while the backlog is not empty, so at most one thread writes
+     * to the emitter at a time, completing it too when the subscriber is dropped. The queue of
+     * the dispatcher pool holds at most one task per subscriber.
+     */
+    private final class Subscriber implements Runnable {
+        
+        private final SseEmitter emitter;
+        private final Deque<Change> backlog = new ArrayDeque<>();
+        private boolean draining;
+        private boolean closed;
+        private boolean dropped;
+        
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+        
+        /**
+         * Queue an event, dropping the subscriber if its backlog is full
+         * @param change The event
+         */
+        void enqueue(Change change) {
+            boolean dispatch;
+            boolean full;
+            synchronized (this) {
+                if (closed) {
+                    // Closed by the container before it was subscribed
+                    subscribers.remove(this);
+                    return;
+                }
+                full = backlog.size() >= maxBacklog;
+                if (full) {
+                    closed = true;
+                    dropped = true;
+                    backlog.clear();
+                } else {
+                    backlog.addLast(change);
+                }
+                // A running dispatcher completes a dropped emitter itself once its send returns:
+                // the emitter stays locked while a write is blocked
+                dispatch = !draining;
+                draining = true;
+            }
+            if (full) {
+                subscribers.remove(this);
+                logger.debug("Dropped change feed subscriber over {} events behind", maxBacklog);
+            }
+            if (dispatch) {
+                execute(this);
+            }
+        }
+        
+        /**
+         * Send the backlog until it is empty, or complete the emitter if the subscriber was dropped
+         */
+        @Override
+        public void run() {
+            while (true) {
+                Change change;
+                boolean complete;
+                synchronized (this) {
+                    change = closed ? null : backlog.pollFirst();
+                    complete = dropped;
+                    if (change == null) {
+                        draining = false;
+                    }
+                }
+                if (change == null) {
+                    if (complete) {
+                        complete();
+                    }
+                    return;
+                }
+                try {
+                    emitter.send(change.toEvent());
+                } catch (IOException | IllegalStateException e) {
+                    // The client went away; the container completes the emitter
+                    close();
+                    logger.debug("Dropped change feed subscriber: {}", e.getMessage());
+                }
+            }
+        }
+        
+        /**
+         * Stop sending events to the subscriber
+         */
+        void close() {
+            synchronized (this) {
+                closed = true;
+                backlog.clear();
+            }
+            subscribers.remove(this);
+        }
+        
+        private void complete() {
+            try {
+                emitter.complete();
+            } catch (IllegalStateException e) {
+                // Already completed by the container
+            }
+        }
+        
+        private void execute(Runnable task) {
+            try {
+                dispatcher.execute(task);
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                close();
+            }
+        }
+    }
+    
+    /**
+     * An event kept for reconnecting clients
+     */
+    private static final class Change {
+        
+        private final String id;
+        private final String name;
+        private final Object data;
+        
+        Change(String id, String name, Object data) {
+            this.id = id;
+            this.name = name;
+            this.data = data;
+        }
+        
+        SseEmitter.SseEventBuilder toEvent() {
+            if (id == null) {
+                return SseEmitter.event().name(name).data(data);
+            }
+            return SseEmitter.event().id(id).name(name).data(data, MediaType.APPLICATION_JSON);
+        }
+    }
+}
@@ -1,30 +1,107 @@
 package com.usermanagement.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.usermanagement.model.BatchResult;
+import com.usermanagement.model.CursorPage;
 import com.usermanagement.model.User;
+import com.usermanagement.model.UserBulkDelete;
+import com.usermanagement.model.UserImport;
+import com.usermanagement.model.UserPatch;
+import com.usermanagement.model.UserQuery;
+import com.usermanagement.repository.ReplicaRouting;
+import com.usermanagement.service.RecentUserWrites;
+import com.usermanagement.service.UserCache;
+import com.usermanagement.service.UserChangeTracker;
+import com.usermanagement.service.UserFacets;
+import com.usermanagement.service.UserImports;
 import com.usermanagement.service.UserService;
+import com.usermanagement.service.UserSnapshots;
+import com.usermanagement.service.UserSuggestIndex;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.persistence.EntityNotFoundException;
 import javax.validation.Valid;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * REST Controller for User management operations
+ * Listing endpoints are keyset paginated: they accept optional "after" and "limit"
+ * parameters and return the cursor of the next page in the X-Next-Cursor and Link headers
  */
 @RestController
 @RequestMapping("/api/users")
 public class UserController {
     
+    /**
+     * Response header carrying the cursor of the next page of a listing
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    
+    /**
+     * Media type of newline delimited JSON exports
+     */
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    
+    /**
+     * Media type of CSV exports
+     */
+    public static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+    
     private final UserService userService;
+    private final UserCache userCache;
+    private final UserSuggestIndex suggestIndex;
+    private final UserFacets userFacets;
+    private final UserChangeTracker changeTracker;
+    private final UserChangeFeed changeFeed;
+    private final ObjectProvider<UserSnapshots> userSnapshots;
+    private final ObjectProvider<UserImports> userImports;
+    private final ObjectProvider<RecentUserWrites> recentWrites;
+    private final ObjectWriter exportWriter;
     
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, UserCache userCache, UserSuggestIndex suggestIndex,
+                          UserFacets userFacets, UserChangeTracker changeTracker, UserChangeFeed changeFeed,
+                          ObjectProvider<UserSnapshots> userSnapshots, ObjectProvider<UserImports> userImports,
+                          ObjectProvider<RecentUserWrites> recentWrites, ObjectMapper objectMapper) {
         this.userService = userService;
+        this.userCache = userCache;
+        this.suggestIndex = suggestIndex;
+        this.userFacets = userFacets;
+        this.changeTracker = changeTracker;
+        this.changeFeed = changeFeed;
+        this.userSnapshots = userSnapshots;
+        this.userImports = userImports;
+        this.recentWrites = recentWrites;
+        this.exportWriter = objectMapper.writerFor(User.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
     }
     
     /**
@@ -45,24 +122,105 @@ public class UserController {
     }
     
     /**
-     * Get all users
-     * @return ResponseEntity with list of all users
+     * Create or update many users in one request
+     * Users without an ID are created, users with an ID are updated.
+     * Deletions go through {@link #deleteUsers}
+     * @param users The users to save
+     * @return ResponseEntity with the outcome of every user, in request order
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> saveUsers(@RequestBody List<User> users) {
+        try {
+            BatchResult result = userService.saveUsers(users);
+            return new ResponseEntity<>(result, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+        }
+    }
+    
+    /**
+     * Get a page of all users
+     * @param after The cursor of the page to fetch, omitted for the first page
+     * @param limit The maximum number of users to return
+     * @param ifNoneMatch ETags of a previously fetched page; answered with 304 Not Modified,
+     *        without querying, if no user changed since
+     * @return ResponseEntity with list of users
      */
     @GetMapping
-    public ResponseEntity<List<User>> getAllUsers() {
-        List<User> users = userService.getAllUsers();
-        return new ResponseEntity<>(users, HttpStatus.OK);
+    public ResponseEntity<?> getAllUsers(@RequestParam(required = false) Long after,
+                                         @RequestParam(required = false) Integer limit,
+                                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return pageResponse(ifNoneMatch, () -> userService.getAllUsers(after, limit));
+    }
+    
+    /**
+     * Subscribe to the feed of user changes as Server-Sent Events
+     * Each committed create, update and delete is sent as a created, updated or deleted event
+     * carrying the user, so clients can apply changes without reloading the listing
+     * @param lastEventId The ID of the last event received, sent by reconnecting clients to
+     *        receive the events they missed; a reset event asks them to reload instead
+     * @return The event stream
+     */
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeToChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return changeFeed.subscribe(lastEventId);
+    }
+    
+    /**
+     * Export all users as a stream, one record per line
+     * Rows are written as they are read from the database, so memory use does not
+     * depend on the size of the table
+     * @param format The export format, "ndjson" (default) or "csv"
+     * @return ResponseEntity streaming the users
+     * @throws IllegalArgumentException if the format is not supported
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(defaultValue = "ndjson") String format) {
+        StreamingResponseBody body;
+        MediaType mediaType;
+        switch (format.toLowerCase()) {
+            case "ndjson":
+                body = this::writeNdjson;
+                mediaType = APPLICATION_NDJSON;
+                break;
+            case "csv":
+                body = this::writeCsv;
+                mediaType = TEXT_CSV;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported export format: " + format);
+        }
+        
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users." + format.toLowerCase() + "\"")
+                .body(body);
     }
     
     /**
      * Get user by ID
+     * The response carries the user's version as a strong ETag
      * @param id The ID to search for
+     * @param ifNoneMatch ETags of a previously fetched copy; answered with 304 Not Modified
+     *        from the user's version alone if it still matches
      * @return ResponseEntity with the user if found
      */
     @GetMapping("/{id}")
-    public ResponseEntity<?> getUserById(@PathVariable Long id) {
+    public ResponseEntity<?> getUserById(@PathVariable Long id,
+                                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            Optional<String> etag = userService.getUserVersion(id).map(UserController::etagOf);
+            if (etag.isPresent() && matchesAny(ifNoneMatch, etag.get())) {
+                return notModified(etag.get());
+            }
+        }
         return userService.getUserById(id)
-                .map(user -> new ResponseEntity<>(user, HttpStatus.OK))
+                .<ResponseEntity<?>>map(user -> ResponseEntity.ok()
+                        .cacheControl(CacheControl.noCache())
+                        .eTag(etagOf(user.getVersion()))
+                        .body(user))
                 .orElseGet(() -> {
                     Map<String, String> errorResponse = new HashMap<>();
                     errorResponse.put("error", "User not found with id: " + id);
@@ -70,17 +228,171 @@ public class UserController {
                 });
     }
     
+    /**
+     * Get the user cache counters
+     * @return ResponseEntity with the cache hit, miss and eviction counts and its size
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Long>> getCacheStats() {
+        return new ResponseEntity<>(userCache.getStats(), HttpStatus.OK);
+    }
+    
+    /**
+     * Save a snapshot of all users to the snapshot file, restored at startup when enabled
+     * Snapshots are only available with the database-backed user service
+     * @return ResponseEntity with the number of users saved and the snapshot file
+     */
+    @PostMapping("/snapshot")
+    public ResponseEntity<?> saveSnapshot() {
+        UserSnapshots snapshots = userSnapshots.getIfAvailable();
+        if (snapshots == null) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Snapshots are not available with the in-memory user service");
+            return new ResponseEntity<>(errorResponse, HttpStatus.NOT_IMPLEMENTED);
+        }
+        try {
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("users", snapshots.save());
+            response.put("path", snapshots.getPath().toString());
+            return new ResponseEntity<>(response, HttpStatus.OK);
+        } catch (IOException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Cannot save snapshot: " + e.getMessage());
+            return new ResponseEntity<>(errorResponse, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+    
+    /**
+     * Import the users of a CSV or NDJSON file in the background
+     * The request body is the file, stored before the import is queued; the import's progress
+     * is polled at the returned Location. Records whose email is already taken, by an earlier
+     * record or an existing user, and invalid records are skipped and counted.
+     * Imports are only available with the database-backed user service
+     * @param format The format of the file, "csv" or "ndjson" (default), as written by the export
+     * @param content The file
+     * @return ResponseEntity with the queued import
+     */
+    @PostMapping("/imports")
+    public ResponseEntity<?> importUsers(@RequestParam(defaultValue = "ndjson") String format, InputStream content) {
+        UserImports imports = userImports.getIfAvailable();
+        if (imports == null) {
+            return importsUnavailable();
+        }
+        UserImport.Format importFormat;
+        switch (format.toLowerCase()) {
+            case "ndjson":
+                importFormat = UserImport.Format.NDJSON;
+                break;
+            case "csv":
+                importFormat = UserImport.Format.CSV;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported import format: " + format);
+        }
+        try {
+            UserImport job = imports.start(content, importFormat);
+            return ResponseEntity.accepted()
+                    .location(ServletUriComponentsBuilder.fromCurrentRequestUri().path("/{id}").buildAndExpand(job.getId()).toUri())
+                    .body(job);
+        } catch (IOException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Cannot store import file: " + e.getMessage());
+            return new ResponseEntity<>(errorResponse, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+    
+    /**
+     * Get the status and progress of an import
+     * @param id The ID of the import
+     * @return ResponseEntity with the import, as of its last committed chunk
+     */
+    @GetMapping("/imports/{id}")
+    public ResponseEntity<?> getImport(@PathVariable Long id) {
+        UserImports imports = userImports.getIfAvailable();
+        if (imports == null) {
+            return importsUnavailable();
+        }
+        return imports.get(id)
+                .<ResponseEntity<?>>map(job -> new ResponseEntity<>(job, HttpStatus.OK))
+                .orElseGet(() -> {
+                    Map<String, String> errorResponse = new HashMap<>();
+                    errorResponse.put("error", "Import not found with id: " + id);
+                    return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
+                });
+    }
+    
+    /**
+     * Resume a failed import after its last committed chunk
+     * @param id The ID of the import
+     * @return ResponseEntity with the queued import, or 409 Conflict if the import has not failed
+     */
+    @PostMapping("/imports/{id}/resume")
+    public ResponseEntity<?> resumeImport(@PathVariable Long id) {
+        UserImports imports = userImports.getIfAvailable();
+        if (imports == null) {
+            return importsUnavailable();
+        }
+        try {
+            return new ResponseEntity<>(imports.resume(id), HttpStatus.ACCEPTED);
+        } catch (EntityNotFoundException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
+        } catch (IllegalStateException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return new ResponseEntity<>(errorResponse, HttpStatus.CONFLICT);
+        }
+    }
+    
     /**
      * Update an existing user
      * @param id The ID of the user to update
      * @param userDetails The updated user details
-     * @return ResponseEntity with the updated user
+     * @param ifMatch The ETag of the user as last read; the update is refused with
+     *        412 Precondition Failed if the user changed since. Omit to update unconditionally.
+     * @return ResponseEntity with the updated user and its new ETag
      */
     @PutMapping("/{id}")
-    public ResponseEntity<?> updateUser(@PathVariable Long id, @Valid @RequestBody User userDetails) {
+    public ResponseEntity<?> updateUser(@PathVariable Long id, @Valid @RequestBody User userDetails,
+                                        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         try {
-            User updatedUser = userService.updateUser(id, userDetails);
-            return new ResponseEntity<>(updatedUser, HttpStatus.OK);
+            User updatedUser = userService.updateUser(id, userDetails, expectedVersion(ifMatch));
+            return ResponseEntity.ok().eTag(etagOf(updatedUser.getVersion())).body(updatedUser);
+        } catch (OptimisticLockingFailureException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return new ResponseEntity<>(errorResponse, ifMatch != null ? HttpStatus.PRECONDITION_FAILED : HttpStatus.CONFLICT);
+        } catch (EntityNotFoundException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+        }
+    }
+    
+    /**
+     * Change only some fields of an existing user
+     * Fields absent from the body keep their value; on H2 the change is applied with a single statement
+     * @param id The ID of the user to update
+     * @param patch The fields to change
+     * @param ifMatch The ETag of the user as last read; the update is refused with
+     *        412 Precondition Failed if the user changed since. Omit to update unconditionally.
+     * @return ResponseEntity with the updated user and its new ETag
+     */
+    @PatchMapping("/{id}")
+    public ResponseEntity<?> patchUser(@PathVariable Long id, @Valid @RequestBody UserPatch patch,
+                                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        try {
+            User updatedUser = userService.patchUser(id, patch, expectedVersion(ifMatch));
+            return ResponseEntity.ok().eTag(etagOf(updatedUser.getVersion())).body(updatedUser);
+        } catch (OptimisticLockingFailureException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return new ResponseEntity<>(errorResponse, HttpStatus.PRECONDITION_FAILED);
         } catch (EntityNotFoundException e) {
             Map<String, String> errorResponse = new HashMap<>();
             errorResponse.put("error", e.getMessage());
@@ -95,15 +407,22 @@ public class UserController {
     /**
      * Delete a user
      * @param id The ID of the user to delete
+     * @param ifMatch The ETag of the user as last read; the deletion is refused with
+     *        412 Precondition Failed if the user changed since. Omit to delete unconditionally.
      * @return ResponseEntity with success message
      */
     @DeleteMapping("/{id}")
-    public ResponseEntity<?> deleteUser(@PathVariable Long id) {
+    public ResponseEntity<?> deleteUser(@PathVariable Long id,
+                                        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         try {
-            userService.deleteUser(id);
+            userService.deleteUser(id, expectedVersion(ifMatch));
             Map<String, String> response = new HashMap<>();
             response.put("message", "User deleted successfully");
             return new ResponseEntity<>(response, HttpStatus.OK);
+        } catch (OptimisticLockingFailureException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return new ResponseEntity<>(errorResponse, ifMatch != null ? HttpStatus.PRECONDITION_FAILED : HttpStatus.CONFLICT);
         } catch (EntityNotFoundException e) {
             Map<String, String> errorResponse = new HashMap<>();
             errorResponse.put("error", e.getMessage());
@@ -111,6 +430,51 @@ public class UserController {
         }
     }
     
+    /**
+     * Delete all users matching the given IDs and/or field values
+     * Runs as set-based deletes rather than one user at a time
+     * @param request The users to delete; at least one condition is required
+     * @return ResponseEntity with the number of users deleted
+     */
+    @PostMapping("/bulk-delete")
+    public ResponseEntity<?> deleteUsers(@RequestBody UserBulkDelete request) {
+        try {
+            Map<String, Long> response = new HashMap<>();
+            response.put("deleted", userService.deleteUsers(request));
+            return new ResponseEntity<>(response, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+        }
+    }
+    
+    /**
+     * Suggest completions for a search field
+     * Served from an in-memory prefix index, without a database query
+     * @param field The field to complete: name, surname, email or nationality
+     * @param prefix The prefix typed so far, matched ignoring case
+     * @param limit The maximum number of completions
+     * @return ResponseEntity with the matching values in alphabetical order
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<List<String>> suggest(@RequestParam String field,
+                                                @RequestParam String prefix,
+                                                @RequestParam(required = false) Integer limit) {
+        List<String> suggestions = suggestIndex.suggest(UserSuggestIndex.Field.fromValue(field), prefix, limit);
+        return new ResponseEntity<>(suggestions, HttpStatus.OK);
+    }
+    
+    /**
+     * Get the number of users per nationality
+     * Served from in-memory counters, without querying the database
+     * @return ResponseEntity with a map of nationality to number of users, largest count first
+     */
+    @GetMapping("/facets/nationality")
+    public ResponseEntity<Map<String, Long>> getNationalityFacets() {
+        return new ResponseEntity<>(userFacets.getNationalityCounts(), HttpStatus.OK);
+    }
+    
     /**
      * Search users by email
      * @param email The email to search for
@@ -119,7 +483,7 @@ public class UserController {
     @GetMapping("/search/email")
     public ResponseEntity<?> searchUserByEmail(@RequestParam String email) {
         return userService.getUserByEmail(email)
-                .map(user -> new ResponseEntity<>(user, HttpStatus.OK))
+                .<ResponseEntity<?>>map(user -> new ResponseEntity<>(user, HttpStatus.OK))
                 .orElseGet(() -> {
                     Map<String, String> errorResponse = new HashMap<>();
                     errorResponse.put("error", "User not found with email: " + email);
@@ -130,33 +494,324 @@ public class UserController {
     /**
      * Search users by name
      * @param name The name to search for
+     * @param after The cursor of the page to fetch, omitted for the first page
+     * @param limit The maximum number of users to return
+     * @param ifNoneMatch ETags of a previously fetched page; answered with 304 Not Modified,
+     *        without querying, if no user changed since
      * @return ResponseEntity with list of users
      */
     @GetMapping("/search/name")
-    public ResponseEntity<List<User>> searchUsersByName(@RequestParam String name) {
-        List<User> users = userService.searchUsersByName(name);
-        return new ResponseEntity<>(users, HttpStatus.OK);
+    public ResponseEntity<?> searchUsersByName(@RequestParam String name,
+                                               @RequestParam(required = false) Long after,
+                                               @RequestParam(required = false) Integer limit,
+                                               @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return pageResponse(ifNoneMatch, () -> userService.searchUsersByName(name, after, limit));
     }
     
     /**
      * Search users by surname
      * @param surname The surname to search for
+     * @param after The cursor of the page to fetch, omitted for the first page
+     * @param limit The maximum number of users to return
+     * @param ifNoneMatch ETags of a previously fetched page; answered with 304 Not Modified,
+     *        without querying, if no user changed since
      * @return ResponseEntity with list of users
      */
     @GetMapping("/search/surname")
-    public ResponseEntity<List<User>> searchUsersBySurname(@RequestParam String surname) {
-        List<User> users = userService.searchUsersBySurname(surname);
-        return new ResponseEntity<>(users, HttpStatus.OK);
+    public ResponseEntity<?> searchUsersBySurname(@RequestParam String surname,
+                                                  @RequestParam(required = false) Long after,
+                                                  @RequestParam(required = false) Integer limit,
+                                                  @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return pageResponse(ifNoneMatch, () -> userService.searchUsersBySurname(surname, after, limit));
     }
     
     /**
      * Search users by nationality
      * @param nationality The nationality to search for
+     * @param after The cursor of the page to fetch, omitted for the first page
+     * @param limit The maximum number of users to return
+     * @param ifNoneMatch ETags of a previously fetched page; answered with 304 Not Modified,
+     *        without querying, if no user changed since
      * @return ResponseEntity with list of users
      */
     @GetMapping("/search/nationality")
-    public ResponseEntity<List<User>> searchUsersByNationality(@RequestParam String nationality) {
-        List<User> users = userService.searchUsersByNationality(nationality);
-        return new ResponseEntity<>(users, HttpStatus.OK);
+    public ResponseEntity<?> searchUsersByNationality(@RequestParam String nationality,
+                                                      @RequestParam(required = false) Long after,
+                                                      @RequestParam(required = false) Integer limit,
+                                                      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return pageResponse(ifNoneMatch, () -> userService.searchUsersByNationality(nationality, after, limit));
+    }
+    
+    /**
+     * Query users by any combination of criteria in a single request
+     * @param name The name to match, omitted to match any
+     * @param surname The surname to match, omitted to match any
+     * @param email The email to match ignoring case, omitted to match any
+     * @param nationality The nationality to match, omitted to match any
+     * @param sort The sort field optionally followed by ",asc" or ",desc", ID ascending by default
+     * @param after The cursor of the page to fetch, omitted for the first page
+     * @param limit The maximum number of users to return
+     * @param ifNoneMatch ETags of a previously fetched page; answered with 304 Not Modified,
+     *        without querying, if no user changed since
+     * @return ResponseEntity with the matching users
+     */
+    @GetMapping("/query")
+    public ResponseEntity<?> queryUsers(@RequestParam(required = false) String name,
+                                        @RequestParam(required = false) String surname,
+                                        @RequestParam(required = false) String email,
+                                        @RequestParam(required = false) String nationality,
+                                        @RequestParam(required = false) String sort,
+                                        @RequestParam(required = false) String after,
+                                        @RequestParam(required = false) Integer limit,
+                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return pageResponse(ifNoneMatch, () -> {
+            UserQuery query = new UserQuery();
+            query.setName(name);
+            query.setSurname(surname);
+            query.setEmail(email);
+            query.setNationality(nationality);
+            query.setAfter(after);
+            query.setLimit(limit);
+            if (sort != null) {
+                String[] parts = sort.split(",", 2);
+                query.setSortField(UserQuery.SortField.fromValue(parts[0].trim()));
+                if (parts.length > 1) {
+                    query.setDescending(parseDirection(parts[1].trim()));
+                }
+            }
+            return userService.queryUsers(query);
+        });
+    }
+    
+    /**
+     * Render invalid request arguments detected outside of a handler's own error handling
+     * @param e The exception describing the invalid argument
+     * @return ResponseEntity with the error message
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleIllegalArgument(IllegalArgumentException e) {
+        Map<String, String> errorResponse = new HashMap<>();
+        errorResponse.put("error", e.getMessage());
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+    
+    /**
+     * Render a write that lost a race with a concurrent change
+     * @param e The exception describing the conflict
+     * @return ResponseEntity with the error message
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<Map<String, String>> handleOptimisticLockingFailure(OptimisticLockingFailureException e) {
+        Map<String, String> errorResponse = new HashMap<>();
+        errorResponse.put("error", e.getMessage());
+        return new ResponseEntity<>(errorResponse, HttpStatus.CONFLICT);
+    }
+    
+    /**
+     * Parse a sort direction request parameter
+     * @param direction "asc" or "desc", in any case
+     * @return true for descending order, false for ascending
+     * @throws IllegalArgumentException if the direction is unknown
+     */
+    private static boolean parseDirection(String direction) {
+        if ("desc".equalsIgnoreCase(direction)) {
+            return true;
+        }
+        if ("asc".equalsIgnoreCase(direction)) {
+            return false;
+        }
+        throw new IllegalArgumentException("Unsupported sort direction: " + direction);
+    }
+    
+    /**
+     * Run a paginated listing and render its page
+     * The page is tagged with the state of the users as a whole, taken before the listing
+     * runs, so an unchanged listing is answered with 304 Not Modified without querying. The
+     * tag follows the primary, so with replica routing a page read from the replica while any
+     * user was written within the read-your-writes window goes untagged: the replica may lag
+     * behind the tag, and clients would otherwise keep a stale page under it. Pages of clients
+     * pinned to the primary, and any page once the window has passed, are tagged.
+     * @param ifNoneMatch ETags of a previously fetched page, may be null
+     * @param listing The service call producing the page
+     * @return ResponseEntity with the users of the page, its ETag and the next cursor headers,
+     *         or a bad request if the paging parameters are invalid
+     */
+    private ResponseEntity<?> pageResponse(String ifNoneMatch, Supplier<CursorPage<User>> listing) {
+        String etag = "\"" + changeTracker.getTag() + "\"";
+        if (ifNoneMatch != null && matchesAny(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        
+        RecentUserWrites recent = recentWrites.getIfAvailable();
+        boolean tagged = recent == null || ReplicaRouting.isPinnedToPrimary() || !recent.containsAny();
+        CursorPage<User> page;
+        try {
+            page = listing.get();
+        } catch (IllegalArgumentException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+        }
+        
+        HttpHeaders headers = new HttpHeaders();
+        if (tagged) {
+            headers.setETag(etag);
+        }
+        headers.setCacheControl(CacheControl.noCache());
+        if (page.hasNext()) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", page.getNextCursor())
+                    .toUriString();
+            headers.set(NEXT_CURSOR_HEADER, page.getNextCursor());
+            headers.set(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return new ResponseEntity<List<User>>(page.getItems(), headers, HttpStatus.OK);
+    }
+    
+    /**
+     * Build the ETag of a user version
+     * @param version The version
+     * @return The quoted, strong ETag
+     */
+    private static String etagOf(Long version) {
+        return "\"" + version + "\"";
+    }
+    
+    /**
+     * Read the user version a client expects from an If-Match header
+     * @param ifMatch The header value, may be null
+     * @return The expected version, or null if the header is absent or "*"
+     * @throws IllegalArgumentException if the header is not a single user ETag
+     */
+    private static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String etag = ifMatch.trim();
+        if (etag.length() < 2 || !etag.startsWith("\"") || !etag.endsWith("\"")) {
+            throw new IllegalArgumentException("If-Match must be a single strong ETag: " + ifMatch);
+        }
+        try {
+            return Long.valueOf(etag.substring(1, etag.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("If-Match must be a single strong ETag: " + ifMatch, e);
+        }
+    }
+    
+    /**
+     * Check an If-None-Match header against an ETag, using weak comparison
+     * @param ifNoneMatch The header value: "*" or a comma separated list of ETags
+     * @param etag The current ETag
+     * @return true if the header matches the ETag
+     */
+    private static boolean matchesAny(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Answer an import request made with the in-memory user service
+     * @return ResponseEntity with 501 Not Implemented
+     */
+    private static ResponseEntity<?> importsUnavailable() {
+        Map<String, String> errorResponse = new HashMap<>();
+        errorResponse.put("error", "Imports are not available with the in-memory user service");
+        return new ResponseEntity<>(errorResponse, HttpStatus.NOT_IMPLEMENTED);
+    }
+    
+    /**
+     * Build a 304 Not Modified response
+     * @param etag The current ETag
+     * @return ResponseEntity without body
+     */
+    private static ResponseEntity<?> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .cacheControl(CacheControl.noCache())
+                .eTag(etag)
+                .build();
+    }
+    
+    /**
+     * Write all users as newline delimited JSON
+     * @param out The response stream
+     * @throws IOException if writing to the response fails
+     */
+    private void writeNdjson(OutputStream out) throws IOException {
+        try (JsonGenerator generator = exportWriter.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            long[] written = new long[1];
+            userService.exportUsers(user -> {
+                try {
+                    exportWriter.writeValue(generator, user);
+                    written[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (written[0] > 0) {
+                generator.writeRaw('\n');
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+    
+    /**
+     * Write all users as CSV with a header row
+     * @param out The response stream
+     * @throws IOException if writing to the response fails
+     */
+    private void writeCsv(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write("id,name,surname,email,nationality\n");
+        try {
+            userService.exportUsers(user -> {
+                try {
+                    writer.write(String.valueOf(user.getId()));
+                    writer.write(',');
+                    writeCsvField(writer, user.getName());
+                    writer.write(',');
+                    writeCsvField(writer, user.getSurname());
+                    writer.write(',');
+                    writeCsvField(writer, user.getEmail());
+                    writer.write(',');
+                    writeCsvField(writer, user.getNationality());
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+    
+    /**
+     * Write a CSV field, quoting it when it contains a separator, quote or line break
+     * @param writer The writer to write to
+     * @param value The field value, may be null
+     * @throws IOException if writing fails
+     */
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+                && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
     }
 }
\ No newline at end of file
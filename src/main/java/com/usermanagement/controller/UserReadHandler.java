@@ -0,0 +1,133 @@
+package com.usermanagement.controller;
+
+import com.usermanagement.model.User;
+import com.usermanagement.repository.ReactiveUserRepository;
+import com.usermanagement.service.UserService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+
+/**
+ * Non-blocking REST endpoints for reading users, served next to {@link UserController}
+ * Mirrors the read endpoints of UserController under the same paths, on the reactive read
+ * server's port. Listings are streamed as newline-delimited JSON, one user per line in ID
+ * order, at the pace the client reads them; no thread is held while a client is slow.
+ * Listings are bounded like those of {@link UserService}: DEFAULT_PAGE_LIMIT users without a
+ * limit, at most MAX_PAGE_LIMIT with one. A full page is continued by requesting the users
+ * after the last ID it streamed.
+ */
+@Component
+@ConditionalOnProperty(name = "user.reactive.enabled", havingValue = "true")
+public class UserReadHandler {
+    
+    private final ReactiveUserRepository reactiveUserRepository;
+    
+    public UserReadHandler(ReactiveUserRepository reactiveUserRepository) {
+        this.reactiveUserRepository = reactiveUserRepository;
+    }
+    
+    /**
+     * Routes of the reactive read API
+     * @return The router function mapping the read endpoints to their handlers
+     */
+    public RouterFunction<ServerResponse> routes() {
+        return RouterFunctions.route()
+                .path("/api/users", builder -> builder
+                        .GET("/search/name", request -> search(request, "name"))
+                        .GET("/search/surname", request -> search(request, "surname"))
+                        .GET("/search/nationality", request -> search(request, "nationality"))
+                        .GET("/{id}", this::getUserById)
+                        .route(GET(""), this::getAllUsers))
+                // Deferred so that invalid parameters, rejected while building the response, also answer 400
+                .filter((request, next) -> Mono.defer(() -> next.handle(request))
+                        .onErrorResume(IllegalArgumentException.class, e -> error(HttpStatus.BAD_REQUEST, e.getMessage())))
+                .build();
+    }
+    
+    /**
+     * Get user by ID
+     * @param request The request, with the user ID as path variable
+     * @return Response with the user, or 404 if not found
+     */
+    private Mono<ServerResponse> getUserById(ServerRequest request) {
+        Long id = parseLong(request.pathVariable("id"), "id");
+        return reactiveUserRepository.findById(id)
+                .flatMap(user -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(user))
+                .switchIfEmpty(Mono.defer(() -> error(HttpStatus.NOT_FOUND, "User not found with id: " + id)));
+    }
+    
+    /**
+     * Stream a page of all users
+     * @param request The request, with optional after and limit parameters
+     * @return Response streaming the users
+     */
+    private Mono<ServerResponse> getAllUsers(ServerRequest request) {
+        return stream(reactiveUserRepository.findAll(after(request), limit(request)));
+    }
+    
+    /**
+     * Stream the users with a field equal to the value of the query parameter of the same name
+     * @param request The request, with the value and optional after and limit parameters
+     * @param field The field searched: name, surname or nationality
+     * @return Response streaming the matching users
+     */
+    private Mono<ServerResponse> search(ServerRequest request, String field) {
+        String value = request.queryParam(field)
+                .orElseThrow(() -> new IllegalArgumentException("Missing parameter: " + field));
+        long after = after(request);
+        int limit = limit(request);
+        switch (field) {
+            case "name":
+                return stream(reactiveUserRepository.findByName(value, after, limit));
+            case "surname":
+                return stream(reactiveUserRepository.findBySurname(value, after, limit));
+            default:
+                return stream(reactiveUserRepository.findByNationality(value, after, limit));
+        }
+    }
+    
+    private static Mono<ServerResponse> stream(Flux<User> users) {
+        return ServerResponse.ok().contentType(MediaType.APPLICATION_NDJSON).body(users, User.class);
+    }
+    
+    private static Mono<ServerResponse> error(HttpStatus status, String message) {
+        return ServerResponse.status(status).contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Collections.singletonMap("error", message));
+    }
+    
+    private static long after(ServerRequest request) {
+        return request.queryParam("after").map(value -> parseLong(value, "after")).orElse(0L);
+    }
+    
+    private static int limit(ServerRequest request) {
+        Optional<Long> limit = request.queryParam("limit").map(value -> parseLong(value, "limit"));
+        if (!limit.isPresent()) {
+            return UserService.DEFAULT_PAGE_LIMIT;
+        }
+        if (limit.get() < 1 || limit.get() > UserService.MAX_PAGE_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + UserService.MAX_PAGE_LIMIT + ": "
+                    + limit.get());
+        }
+        return limit.get().intValue();
+    }
+    
+    private static long parseLong(String value, String name) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.usermanagement.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of a single item of a batch write
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+    
+    /**
+     * Possible outcomes of a batch item
+     */
+    public enum Status {
+        CREATED,
+        UPDATED,
+        FAILED
+    }
+    
+    private final int index;
+    private final Status status;
+    private final Long id;
+    private final String error;
+    
+    /**
+     * Constructs a new item result
+     * @param index Position of the item in the batch request
+     * @param status Outcome of the item
+     * @param id ID of the created or updated user, null if the item failed
+     * @param error Reason the item failed, null if it succeeded
+     */
+    public BatchItemResult(int index, Status status, Long id, String error) {
+        this.index = index;
+        this.status = status;
+        this.id = id;
+        this.error = error;
+    }
+    
+    /**
+     * Create the result of a failed item
+     * @param index Position of the item in the batch request
+     * @param error Reason the item failed
+     * @return The item result
+     */
+    public static BatchItemResult failed(int index, String error) {
+        return new BatchItemResult(index, Status.FAILED, null, error);
+    }
+    
+    public int getIndex() {
+        return index;
+    }
+    
+    public Status getStatus() {
+        return status;
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public String getError() {
+        return error;
+    }
+}
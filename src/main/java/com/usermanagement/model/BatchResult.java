@@ -0,0 +1,57 @@
+package com.usermanagement.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a batch write, with one result per item of the request in request order
+ */
+public class BatchResult {
+    
+    private final int created;
+    private final int updated;
+    private final int failed;
+    private final List<BatchItemResult> results;
+    
+    /**
+     * Constructs a new batch result, counting the item outcomes
+     * @param results The item results in request order
+     */
+    public BatchResult(List<BatchItemResult> results) {
+        int createdCount = 0;
+        int updatedCount = 0;
+        int failedCount = 0;
+        for (BatchItemResult result : results) {
+            switch (result.getStatus()) {
+                case CREATED:
+                    createdCount++;
+                    break;
+                case UPDATED:
+                    updatedCount++;
+                    break;
+                default:
+                    failedCount++;
+            }
+        }
+        this.created = createdCount;
+        this.updated = updatedCount;
+        this.failed = failedCount;
+        this.results = Collections.unmodifiableList(results);
+    }
+    
+    public int getCreated() {
+        return created;
+    }
+    
+    public int getUpdated() {
+        return updated;
+    }
+    
+    public int getFailed() {
+        return failed;
+    }
+    
+    public List<BatchItemResult> getResults() {
+        return results;
+    }
+}
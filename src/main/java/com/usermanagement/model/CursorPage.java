@@ -0,0 +1,41 @@
+package com.usermanagement.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single page of a keyset (cursor) paginated listing
+ * The cursor is opaque to clients: it is passed back unchanged to fetch the next page
+ * @param <T> The type of the items in the page
+ */
+public class CursorPage<T> {
+    
+    private final List<T> items;
+    private final String nextCursor;
+    
+    /**
+     * Constructs a new page
+     * @param items The items of this page, in cursor order
+     * @param nextCursor The cursor to request the following page with, or null if this is the last page
+     */
+    public CursorPage(List<T> items, String nextCursor) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+    }
+    
+    public List<T> getItems() {
+        return items;
+    }
+    
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    
+    /**
+     * Check whether there are more items after this page
+     * @return true if a next page exists, false otherwise
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,36 @@
+package com.usermanagement.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * Entry of the nationality dictionary: the small integer code users store for a nationality name
+ * Codes are assigned by the {@link NationalityDictionary} implementation and never reused;
+ * the entity only describes the lookup table and lets queries order users by nationality name.
+ */
+@Entity
+@Table(name = "nationalities",
+        uniqueConstraints = @UniqueConstraint(name = "uk_nationalities_name", columnNames = "name"))
+public class Nationality {
+    
+    @Id
+    private Short id;
+    
+    @Column(nullable = false)
+    private String name;
+    
+    // Default constructor required by JPA
+    protected Nationality() {
+    }
+    
+    public Short getId() {
+        return id;
+    }
+    
+    public String getName() {
+        return name;
+    }
+}
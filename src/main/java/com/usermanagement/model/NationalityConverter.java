@@ -0,0 +1,33 @@
+package com.usermanagement.model;
+
+import org.springframework.beans.factory.ObjectProvider;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+/**
+ * Maps a user's nationality name to its dictionary code in the users table, and back
+ * Applies to every JPA read, write and query parameter on the nationality. A name not in the
+ * dictionary is encoded as a code no user has, so searching for an unknown nationality never
+ * adds it; writes register the name first. Created by Hibernate through Spring, before the
+ * dictionary is loaded, hence the provider.
+ */
+@Converter
+public class NationalityConverter implements AttributeConverter<String, Short> {
+    
+    private final ObjectProvider<NationalityDictionary> codes;
+    
+    public NationalityConverter(ObjectProvider<NationalityDictionary> codes) {
+        this.codes = codes;
+    }
+    
+    @Override
+    public Short convertToDatabaseColumn(String name) {
+        return name == null ? null : codes.getObject().codeOf(name);
+    }
+    
+    @Override
+    public String convertToEntityAttribute(Short code) {
+        return code == null ? null : codes.getObject().nameOf(code);
+    }
+}
@@ -0,0 +1,24 @@
+package com.usermanagement.model;
+
+/**
+ * Dictionary of the small integer codes the users table stores in place of nationality names
+ * Implemented by the repository layer, over the nationalities lookup table; the model only
+ * needs it to convert the nationality column (see {@link NationalityConverter}).
+ */
+public interface NationalityDictionary {
+    
+    /**
+     * Get the code of a nationality without adding it
+     * @param name The nationality name, may be null
+     * @return The code, or a code no user has if the nationality is not in the dictionary
+     */
+    short codeOf(String name);
+    
+    /**
+     * Get the nationality of a code
+     * @param code The code
+     * @return The nationality name
+     * @throws IllegalStateException if the code is not in the dictionary
+     */
+    String nameOf(short code);
+}
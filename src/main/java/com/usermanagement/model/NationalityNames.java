@@ -0,0 +1,49 @@
+package com.usermanagement.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Canonical instances of nationality names, shared by every user with the same nationality
+ * A few hundred distinct names are repeated across millions of users; holding one String per
+ * name instead of one per user keeps nationality out of the per-user heap cost. The pool is
+ * bounded: names longer than the dictionary column, and any name past MAX_SIZE distinct ones,
+ * are returned as given.
+ */
+public final class NationalityNames {
+    
+    /**
+     * Largest number of distinct names pooled, the number of codes the nationality dictionary holds
+     */
+    public static final int MAX_SIZE = Short.MAX_VALUE + 1;
+    
+    /**
+     * Longest name pooled, the length of the dictionary's name column
+     */
+    public static final int MAX_LENGTH = 255;
+    
+    private static final ConcurrentMap<String, String> NAMES = new ConcurrentHashMap<>();
+    
+    private NationalityNames() {
+    }
+    
+    /**
+     * Get the shared instance of a nationality name
+     * @param name The name, may be null
+     * @return The pooled instance equal to the name, or the name itself if it is not pooled
+     */
+    public static String canonical(String name) {
+        if (name == null || name.length() > MAX_LENGTH) {
+            return name;
+        }
+        String canonical = NAMES.get(name);
+        if (canonical != null) {
+            return canonical;
+        }
+        if (NAMES.size() >= MAX_SIZE) {
+            return name;
+        }
+        canonical = NAMES.putIfAbsent(name, name);
+        return canonical != null ? canonical : name;
+    }
+}
@@ -1,20 +1,64 @@
 package com.usermanagement.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.persistence.Column;
+import javax.persistence.ConstraintMode;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.ForeignKey;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Version;
+import javax.persistence.UniqueConstraint;
 import javax.validation.constraints.Email;
 import javax.validation.constraints.NotBlank;
+import java.util.Locale;
 
 /**
  * Represents a User entity with personal information
+ * Emails are unique regardless of case: the lower-cased email is stored alongside the
+ * original and carries the unique constraint. The search columns are indexed together
+ * with the ID so keyset paginated searches are served from the index; nationality is
+ * also indexed with surname, the most common combined query.
+ * Nationality is dictionary-encoded: the table stores the small integer code of the name in
+ * the nationalities lookup table, and users in memory share one instance of each name.
  */
 @Entity
+@Table(name = "users",
+        indexes = {
+                @Index(name = "idx_users_name_id", columnList = "name, id"),
+                @Index(name = "idx_users_surname_id", columnList = "surname, id"),
+                @Index(name = "idx_users_nationality_id", columnList = "nationality_id, id"),
+                @Index(name = "idx_users_nationality_surname_id", columnList = "nationality_id, surname, id")
+        },
+        uniqueConstraints = @UniqueConstraint(name = User.EMAIL_UNIQUE_CONSTRAINT, columnNames = "email_normalized"))
 public class User {
     
+    /**
+     * Name of the unique constraint on the normalized email
+     */
+    public static final String EMAIL_UNIQUE_CONSTRAINT = "uk_users_email_normalized";
+    
+    /**
+     * Number of IDs reserved per sequence call; Hibernate's pooled optimizer hands them
+     * out in memory, and sequence IDs (unlike IDENTITY) keep JDBC insert batching enabled
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+    
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_seq")
+    @SequenceGenerator(name = "user_seq", sequenceName = "user_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
     
     @NotBlank(message = "Name is required")
@@ -27,9 +71,33 @@ public class User {
     @Email(message = "Email should be valid")
     private String email;
     
+    @JsonIgnore
+    @Column(name = "email_normalized", nullable = false)
+    private String emailNormalized;
+    
     @NotBlank(message = "Nationality is required")
+    @Convert(converter = NationalityConverter.class)
+    @Column(name = "nationality_id", nullable = false)
     private String nationality;
     
+    /**
+     * Dictionary entry of the nationality, mapped read-only on the same column and never
+     * loaded; it only lets queries join the lookup table to order users by nationality name
+     */
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "nationality_id", insertable = false, updatable = false,
+            foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
+    private Nationality nationalityEntry;
+    
+    /**
+     * Incremented on every update; used for optimistic locking and as the user's ETag.
+     * Read-only in the API: clients send it back through If-Match, not in the body.
+     */
+    @Version
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long version;
+    
     // Default constructor required by JPA
     public User() {
     }
@@ -46,8 +114,33 @@ public class User {
         this.id = id;
         this.name = name;
         this.surname = surname;
-        this.email = email;
-        this.nationality = nationality;
+        setEmail(email);
+        this.nationality = NationalityNames.canonical(nationality);
+    }
+    
+    /**
+     * Constructs a User at a given version, outside the persistence context
+     * Used by the projection queries of the listings, which read the columns instead of
+     * managed entities: the users are neither tracked nor snapshotted for dirty checking.
+     * @param id Unique identifier for the user
+     * @param name User's first name
+     * @param surname User's last name
+     * @param email User's email address
+     * @param nationality User's nationality
+     * @param version The user's version
+     */
+    public User(Long id, String name, String surname, String email, String nationality, Long version) {
+        this(id, name, surname, email, nationality);
+        this.version = version;
+    }
+    
+    /**
+     * Normalize an email for case-insensitive comparison
+     * @param email The email to normalize, may be null
+     * @return The trimmed, lower-cased email, or null if email is null
+     */
+    public static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
     }
     
     // Getters and Setters
@@ -81,6 +174,11 @@ public class User {
     
     public void setEmail(String email) {
         this.email = email;
+        this.emailNormalized = normalizeEmail(email);
+    }
+    
+    public String getEmailNormalized() {
+        return emailNormalized;
     }
     
     public String getNationality() {
@@ -88,7 +186,24 @@ public class User {
     }
     
     public void setNationality(String nationality) {
-        this.nationality = nationality;
+        this.nationality = NationalityNames.canonical(nationality);
+    }
+    
+    public Long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+    
+    /**
+     * Keep the normalized email in step with the email before it is written
+     */
+    @PrePersist
+    @PreUpdate
+    void normalize() {
+        this.emailNormalized = normalizeEmail(email);
     }
     
     /**
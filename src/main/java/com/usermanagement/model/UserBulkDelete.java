@@ -0,0 +1,66 @@
+package com.usermanagement.model;
+
+import java.util.List;
+
+/**
+ * Selection of users to delete in bulk
+ * Users are deleted if they match every set condition: one of the listed IDs, and
+ * each of the field values. At least one condition is required.
+ */
+public class UserBulkDelete {
+    
+    private List<Long> ids;
+    private String name;
+    private String surname;
+    private String email;
+    private String nationality;
+    
+    public List<Long> getIds() {
+        return ids;
+    }
+    
+    public void setIds(List<Long> ids) {
+        this.ids = ids;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public String getSurname() {
+        return surname;
+    }
+    
+    public void setSurname(String surname) {
+        this.surname = surname;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    public void setEmail(String email) {
+        this.email = email;
+    }
+    
+    public String getNationality() {
+        return nationality;
+    }
+    
+    public void setNationality(String nationality) {
+        this.nationality = nationality;
+    }
+    
+    /**
+     * Check whether any condition is set, so the selection is not the whole table
+     * @return true if IDs or at least one field value are given
+     */
+    public boolean hasConditions() {
+        return (ids != null && !ids.isEmpty())
+                || name != null || surname != null || email != null || nationality != null;
+    }
+}
@@ -0,0 +1,231 @@
+package com.usermanagement.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.Instant;
+
+/**
+ * Bulk import of a user file, and its progress
+ * The file is imported in chunks of records, each committed in one transaction together with the
+ * position in the file after its last record and the counts so far: a failed import resumes at
+ * that position, so no record is imported twice and none is skipped.
+ */
+@Entity
+@Table(name = "user_imports")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserImport {
+    
+    /**
+     * Formats of import files, those of the user export
+     */
+    public enum Format {
+        
+        /**
+         * Comma separated values with a header row naming the name, surname, email and
+         * nationality columns, in any order; other columns, such as id, are ignored
+         */
+        CSV,
+        
+        /**
+         * One JSON object per line with name, surname, email and nationality properties
+         */
+        NDJSON
+    }
+    
+    /**
+     * States of an import
+     */
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        
+        /**
+         * Stopped by an error or a shutdown; resumable from the last committed chunk
+         */
+        FAILED
+    }
+    
+    /**
+     * Longest error message kept
+     */
+    public static final int MAX_ERROR_LENGTH = 1000;
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Format format;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+    
+    @JsonIgnore
+    @Column(nullable = false)
+    private String path;
+    
+    /**
+     * Size of the file in bytes
+     */
+    private long size;
+    
+    /**
+     * Position in the file after the last committed record
+     */
+    private long position;
+    
+    /**
+     * Records read up to the position, header excluded
+     */
+    private long records;
+    
+    private long imported;
+    
+    /**
+     * Records skipped because their email was taken by an earlier record or an existing user
+     */
+    private long duplicates;
+    
+    /**
+     * Records skipped because they could not be parsed or failed validation
+     */
+    private long invalid;
+    
+    /**
+     * Reason the last invalid record was skipped, with its record number
+     */
+    @Column(length = MAX_ERROR_LENGTH)
+    private String lastRejection;
+    
+    @Column(length = MAX_ERROR_LENGTH)
+    private String error;
+    
+    @Column(nullable = false)
+    private Instant createdAt;
+    
+    @Column(nullable = false)
+    private Instant updatedAt;
+    
+    // Default constructor required by JPA
+    protected UserImport() {
+    }
+    
+    /**
+     * Constructs a new import, queued to start at the beginning of the file
+     * @param format The format of the file
+     * @param path The file to import
+     * @param size The size of the file in bytes
+     */
+    public UserImport(Format format, String path, long size) {
+        this.format = format;
+        this.path = path;
+        this.size = size;
+        this.status = Status.QUEUED;
+        this.createdAt = Instant.now();
+        this.updatedAt = createdAt;
+    }
+    
+    /**
+     * Record a committed chunk
+     * @param position Position in the file after the chunk's last record
+     * @param records Records in the chunk
+     * @param imported Users created from the chunk
+     * @param duplicates Records of the chunk skipped for their email
+     * @param invalid Records of the chunk skipped as invalid
+     * @param lastRejection Reason the last invalid record of the chunk was skipped, null if none was
+     */
+    public void advance(long position, long records, long imported, long duplicates, long invalid, String lastRejection) {
+        this.position = position;
+        this.records += records;
+        this.imported += imported;
+        this.duplicates += duplicates;
+        this.invalid += invalid;
+        if (lastRejection != null) {
+            this.lastRejection = truncate(lastRejection);
+        }
+        this.updatedAt = Instant.now();
+    }
+    
+    /**
+     * Change the status of the import
+     * @param status The new status
+     * @param error The reason of a failure, null otherwise
+     */
+    public void setStatus(Status status, String error) {
+        this.status = status;
+        this.error = error == null ? null : truncate(error);
+        this.updatedAt = Instant.now();
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public Format getFormat() {
+        return format;
+    }
+    
+    public Status getStatus() {
+        return status;
+    }
+    
+    public String getPath() {
+        return path;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+    
+    public long getPosition() {
+        return position;
+    }
+    
+    public long getRecords() {
+        return records;
+    }
+    
+    public long getImported() {
+        return imported;
+    }
+    
+    public long getDuplicates() {
+        return duplicates;
+    }
+    
+    public long getInvalid() {
+        return invalid;
+    }
+    
+    public String getLastRejection() {
+        return lastRejection;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+    
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    private static String truncate(String message) {
+        return message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+    }
+}
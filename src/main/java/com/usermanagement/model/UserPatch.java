@@ -0,0 +1,85 @@
+package com.usermanagement.model;
+
+import javax.validation.constraints.Email;
+import javax.validation.constraints.Pattern;
+
+/**
+ * Partial update of a user
+ * Only the fields present are changed; absent or null fields keep their current value.
+ */
+public class UserPatch {
+    
+    private static final String NOT_BLANK = ".*\\S.*";
+    
+    @Pattern(regexp = NOT_BLANK, message = "Name must not be blank")
+    private String name;
+    
+    @Pattern(regexp = NOT_BLANK, message = "Surname must not be blank")
+    private String surname;
+    
+    @Pattern(regexp = NOT_BLANK, message = "Email must not be blank")
+    @Email(message = "Email should be valid")
+    private String email;
+    
+    @Pattern(regexp = NOT_BLANK, message = "Nationality must not be blank")
+    private String nationality;
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public String getSurname() {
+        return surname;
+    }
+    
+    public void setSurname(String surname) {
+        this.surname = surname;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    public void setEmail(String email) {
+        this.email = email;
+    }
+    
+    public String getNationality() {
+        return nationality;
+    }
+    
+    public void setNationality(String nationality) {
+        this.nationality = nationality;
+    }
+    
+    /**
+     * Check whether the patch changes nothing
+     * @return true if no field is set
+     */
+    public boolean isEmpty() {
+        return name == null && surname == null && email == null && nationality == null;
+    }
+    
+    /**
+     * Apply this patch to a user
+     * @param user The user to change
+     */
+    public void applyTo(User user) {
+        if (name != null) {
+            user.setName(name);
+        }
+        if (surname != null) {
+            user.setSurname(surname);
+        }
+        if (email != null) {
+            user.setEmail(email);
+        }
+        if (nationality != null) {
+            user.setNationality(nationality);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.usermanagement.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.function.Function;
+
+/**
+ * Criteria of a combined user query
+ * Any mix of the equality filters may be set; unset filters match every user. Results are
+ * ordered by the sort field with the ID as tie-breaker, and keyset paginated on that order.
+ */
+public class UserQuery {
+    
+    /**
+     * Fields a query can be sorted by
+     */
+    public enum SortField {
+        ID("id", null),
+        NAME("name", User::getName),
+        SURNAME("surname", User::getSurname),
+        EMAIL("emailNormalized", User::getEmailNormalized),
+        NATIONALITY("nationalityEntry.name", User::getNationality);
+        
+        private final String attribute;
+        private final Function<User, String> accessor;
+        
+        SortField(String attribute, Function<User, String> accessor) {
+            this.attribute = attribute;
+            this.accessor = accessor;
+        }
+        
+        /**
+         * Get the entity attribute sorted on
+         * Nationality is sorted on the name in the lookup table, as the users table only holds its code
+         * @return The attribute name, dotted for an attribute of an associated entity
+         */
+        public String getAttribute() {
+            return attribute;
+        }
+        
+        /**
+         * Get the value a user is sorted by, other than its ID
+         * @param user The user
+         * @return The sort value, or null when sorting by ID
+         */
+        public String valueOf(User user) {
+            return accessor == null ? null : accessor.apply(user);
+        }
+        
+        /**
+         * Parse a sort field from its request parameter form
+         * @param value The field name, in any case
+         * @return The sort field
+         * @throws IllegalArgumentException if there is no such field
+         */
+        public static SortField fromValue(String value) {
+            for (SortField field : values()) {
+                if (field.name().equalsIgnoreCase(value)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported sort field: " + value);
+        }
+    }
+    
+    private String name;
+    private String surname;
+    private String email;
+    private String nationality;
+    private SortField sortField = SortField.ID;
+    private boolean descending;
+    private String after;
+    private Integer limit;
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public String getSurname() {
+        return surname;
+    }
+    
+    public void setSurname(String surname) {
+        this.surname = surname;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    public void setEmail(String email) {
+        this.email = email;
+    }
+    
+    public String getNationality() {
+        return nationality;
+    }
+    
+    public void setNationality(String nationality) {
+        this.nationality = nationality;
+    }
+    
+    public SortField getSortField() {
+        return sortField;
+    }
+    
+    public void setSortField(SortField sortField) {
+        this.sortField = sortField;
+    }
+    
+    public boolean isDescending() {
+        return descending;
+    }
+    
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+    
+    public String getAfter() {
+        return after;
+    }
+    
+    public void setAfter(String after) {
+        this.after = after;
+    }
+    
+    public Integer getLimit() {
+        return limit;
+    }
+    
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+    
+    /**
+     * Position of the last user of a page in the query order
+     * Encoded as the ID alone when sorting by ID, otherwise as the ID and the
+     * Base64 encoded sort value
+     */
+    public static final class Cursor {
+        
+        private final long id;
+        private final String value;
+        
+        private Cursor(long id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+        
+        /**
+         * Create the cursor pointing after a user
+         * @param user The last user of a page
+         * @param sortField The field the query is sorted by
+         * @return The cursor
+         */
+        public static Cursor of(User user, SortField sortField) {
+            return new Cursor(user.getId(), sortField.valueOf(user));
+        }
+        
+        /**
+         * Parse a cursor received from a client
+         * @param cursor The encoded cursor
+         * @param sortField The field the query is sorted by
+         * @return The cursor
+         * @throws IllegalArgumentException if the cursor is malformed or belongs to another sort field
+         */
+        public static Cursor parse(String cursor, SortField sortField) {
+            try {
+                if (sortField == SortField.ID) {
+                    return new Cursor(Long.parseLong(cursor), null);
+                }
+                int separator = cursor.indexOf(':');
+                byte[] value = Base64.getUrlDecoder().decode(cursor.substring(separator + 1));
+                return new Cursor(Long.parseLong(cursor.substring(0, separator)), new String(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+            }
+        }
+        
+        /**
+         * Encode this cursor for a client
+         * @return The encoded cursor
+         */
+        public String encode() {
+            if (value == null) {
+                return Long.toString(id);
+            }
+            return id + ":" + Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+        
+        public long getId() {
+            return id;
+        }
+        
+        public String getValue() {
+            return value;
+        }
+    }
+}
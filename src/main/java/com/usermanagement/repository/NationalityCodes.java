@@ -0,0 +1,202 @@
+package com.usermanagement.repository;
+
+import com.usermanagement.model.NationalityDictionary;
+import com.usermanagement.model.NationalityNames;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of the small integer codes users store for their nationality, backed by the
+ * nationalities lookup table
+ * The dictionary is held in memory once the schema exists, so encoding and decoding do not
+ * query the database; only a name seen for the first time is inserted, by {@link #register(String)}.
+ * The table is read and written through the application's data source, in transactions of
+ * their own on the primary: an entry outlives the rollback of the write that registered it, so
+ * a code handed out never dangles. Other instances of the application may add entries too, so a
+ * code or name missing from memory is looked up in the table before it is taken as unknown, and
+ * an insert losing a race for a code or name reloads the table and tries again. Entries are never
+ * removed.
+ */
+@Component
+@Profile("!memory")
+public class NationalityCodes implements NationalityDictionary, SmartInitializingSingleton {
+    
+    /**
+     * Code of names not in the dictionary, which no user has
+     */
+    public static final short UNKNOWN = -1;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<String, Short> codes = new ConcurrentHashMap<>();
+    
+    /**
+     * Names by code; replaced, never modified, when names are added
+     */
+    private volatile String[] names = new String[0];
+    
+    /**
+     * Constructs a new dictionary on the application's database
+     * @param jdbcTemplate Template on the application's database
+     * @param transactionManager Manager of the transactions the table is read and written in,
+     *                           apart from the transaction of the caller
+     */
+    public NationalityCodes(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+    
+    /**
+     * Load the dictionary once every bean, including the JPA schema, is initialized
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        load();
+    }
+    
+    /**
+     * Get the code of a nationality, adding the nationality to the dictionary if it is new
+     * Called before a user with the nationality is written
+     * @param name The nationality name
+     * @return The code
+     * @throws IllegalArgumentException if the name is too long or the dictionary is full
+     */
+    public short register(String name) {
+        Short code = codes.get(name);
+        return code != null ? code : insert(name);
+    }
+    
+    /**
+     * Get the code of a nationality without adding it, to search by nationality
+     * @param name The nationality name, may be null
+     * @return The code, or UNKNOWN if the nationality is not in the dictionary
+     */
+    @Override
+    public short codeOf(String name) {
+        if (name == null) {
+            return UNKNOWN;
+        }
+        Short code = codes.get(name);
+        if (code != null) {
+            return code;
+        }
+        // Possibly added by another instance since the dictionary was loaded
+        List<Short> found = transactionTemplate.execute(status -> jdbcTemplate.queryForList(
+                "select id from nationalities where name = ?", Short.class, name));
+        if (found.isEmpty()) {
+            return UNKNOWN;
+        }
+        remember(found.get(0), NationalityNames.canonical(name));
+        return found.get(0);
+    }
+    
+    /**
+     * Get the nationality of a code
+     * @param code The code
+     * @return The shared instance of the nationality name
+     * @throws IllegalStateException if the code is not in the dictionary table either
+     */
+    @Override
+    public String nameOf(short code) {
+        String[] current = names;
+        if (code >= 0 && code < current.length && current[code] != null) {
+            return current[code];
+        }
+        // Possibly added by another instance since the dictionary was loaded
+        List<String> found = transactionTemplate.execute(status -> jdbcTemplate.queryForList(
+                "select name from nationalities where id = ?", String.class, code));
+        if (found.isEmpty()) {
+            throw new IllegalStateException("Unknown nationality code: " + code);
+        }
+        String name = NationalityNames.canonical(found.get(0));
+        remember(code, name);
+        return name;
+    }
+    
+    /**
+     * Get the number of nationalities in the dictionary
+     * @return The number of codes known to this instance
+     */
+    public int size() {
+        return codes.size();
+    }
+    
+    private void load() {
+        String[][] loaded = {new String[0]};
+        transactionTemplate.execute(status -> {
+            jdbcTemplate.query("select id, name from nationalities order by id", row -> {
+                short code = row.getShort(1);
+                loaded[0] = Arrays.copyOf(loaded[0], code + 1);
+                loaded[0][code] = NationalityNames.canonical(row.getString(2));
+            });
+            return null;
+        });
+        synchronized (this) {
+            // Keep entries remembered while the table was read
+            String[] current = names;
+            String[] merged = Arrays.copyOf(loaded[0], Math.max(loaded[0].length, current.length));
+            for (int code = 0; code < current.length; code++) {
+                if (merged[code] == null) {
+                    merged[code] = current[code];
+                }
+            }
+            for (int code = 0; code < merged.length; code++) {
+                if (merged[code] != null) {
+                    codes.put(merged[code], (short) code);
+                }
+            }
+            names = merged;
+        }
+    }
+    
+    private short insert(String name) {
+        if (name.length() > NationalityNames.MAX_LENGTH) {
+            throw new IllegalArgumentException("Nationality must be at most " + NationalityNames.MAX_LENGTH
+                    + " characters long");
+        }
+        String canonical = NationalityNames.canonical(name);
+        while (true) {
+            Short existing = codes.get(canonical);
+            if (existing != null) {
+                return existing;
+            }
+            int next = names.length;
+            if (next >= NationalityNames.MAX_SIZE) {
+                throw new IllegalArgumentException("Too many distinct nationalities, at most "
+                        + NationalityNames.MAX_SIZE + " are supported");
+            }
+            short code = (short) next;
+            try {
+                transactionTemplate.execute(status ->
+                        jdbcTemplate.update("insert into nationalities (id, name) values (?, ?)", code, name));
+            } catch (DuplicateKeyException e) {
+                // The code or the name was taken by another thread or instance since the dictionary was read
+                load();
+                continue;
+            }
+            remember(code, canonical);
+            return code;
+        }
+    }
+    
+    private synchronized void remember(short code, String name) {
+        String[] current = names;
+        String[] updated = Arrays.copyOf(current, Math.max(current.length, code + 1));
+        updated[code] = name;
+        // Decodable before the code is handed out
+        names = updated;
+        codes.put(name, code);
+    }
+}
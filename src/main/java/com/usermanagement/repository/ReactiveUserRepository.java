@@ -0,0 +1,173 @@
+package com.usermanagement.repository;
+
+import com.usermanagement.model.User;
+import io.r2dbc.spi.Closeable;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Row;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking reads of users over R2DBC, against the same database and schema as the JPA repositories
+ * Serves the reactive read API only: writes stay on the JPA path. Results are streamed row by
+ * row in ID order and follow the subscriber's demand, so a slow reader slows the query down
+ * instead of buffering its results.
+ * The connection factory is deliberately not a bean: Spring Boot backs off from configuring
+ * the JDBC DataSource when one exists.
+ */
+@Repository
+@ConditionalOnProperty(name = "user.reactive.enabled", havingValue = "true")
+public class ReactiveUserRepository implements DisposableBean {
+    
+    private static final String SELECT = "select id, name, surname, email, nationality_id, version from users";
+    
+    private final ConnectionFactory connectionFactory;
+    private final DatabaseClient databaseClient;
+    private final NationalityCodes nationalityCodes;
+    
+    /**
+     * Constructs a new repository
+     * @param url The R2DBC URL of the database to read, empty for the one of the JDBC URL
+     * @param jdbcUrl The JDBC URL of the database the JPA repositories use
+     * @param poolSize Most connections to open when the R2DBC URL is derived from the JDBC URL
+     * @param username The database user
+     * @param password The database password
+     * @param nationalityCodes The dictionary nationalities are encoded with, held in memory
+     */
+    public ReactiveUserRepository(@Value("${user.reactive.r2dbc-url:}") String url,
+                                  @Value("${spring.datasource.url}") String jdbcUrl,
+                                  @Value("${user.reactive.pool-size:10}") int poolSize,
+                                  @Value("${spring.datasource.username}") String username,
+                                  @Value("${spring.datasource.password}") String password,
+                                  NationalityCodes nationalityCodes) {
+        String r2dbcUrl = url.isEmpty() ? toR2dbcUrl(jdbcUrl, poolSize) : url;
+        this.connectionFactory = ConnectionFactories.get(ConnectionFactoryOptions.parse(r2dbcUrl).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build());
+        this.databaseClient = DatabaseClient.create(connectionFactory);
+        this.nationalityCodes = nationalityCodes;
+    }
+    
+    /**
+     * Build the pooled R2DBC URL of the database a JDBC URL points at
+     * H2 URLs are rewritten to the R2DBC H2 form, their settings passed as options, so that an
+     * in-memory database is the same one the JDBC connections use; other URLs only change scheme.
+     * @param jdbcUrl The JDBC URL, such as jdbc:h2:mem:userdb or jdbc:postgresql://host/db
+     * @param poolSize Most connections of the pool
+     * @return The R2DBC URL, such as r2dbc:pool:h2:mem:///userdb?maxSize=10
+     * @throws IllegalArgumentException if the URL is not a JDBC URL
+     */
+    public static String toR2dbcUrl(String jdbcUrl, int poolSize) {
+        if (!jdbcUrl.startsWith("jdbc:")) {
+            throw new IllegalArgumentException("Not a JDBC URL: " + jdbcUrl);
+        }
+        String url = jdbcUrl.substring("jdbc:".length());
+        String pool = "maxSize=" + poolSize;
+        for (String mode : new String[]{"h2:mem:", "h2:file:"}) {
+            if (url.startsWith(mode)) {
+                String database = url.substring(mode.length());
+                int settings = database.indexOf(';');
+                String options = settings < 0 ? "" : "&options=" + database.substring(settings + 1);
+                String name = settings < 0 ? database : database.substring(0, settings);
+                return "r2dbc:pool:" + mode + "///" + name + "?" + pool + options;
+            }
+        }
+        return "r2dbc:pool:" + url + (url.contains("?") ? "&" : "?") + pool;
+    }
+    
+    /**
+     * Find a user by ID
+     * @param id The ID of the user
+     * @return The user, or empty if it does not exist
+     */
+    public Mono<User> findById(Long id) {
+        return databaseClient.sql(SELECT + " where id = :id")
+                .bind("id", id)
+                .map(this::toUser)
+                .one();
+    }
+    
+    /**
+     * Stream users in ID order
+     * @param after Only users with a greater ID are returned
+     * @param limit The maximum number of users
+     * @return The users
+     */
+    public Flux<User> findAll(long after, int limit) {
+        return find(null, null, after, limit);
+    }
+    
+    /**
+     * Stream the users with the given name in ID order
+     * @param name The name to match
+     * @param after Only users with a greater ID are returned
+     * @param limit The maximum number of users
+     * @return The users
+     */
+    public Flux<User> findByName(String name, long after, int limit) {
+        return find("name", name, after, limit);
+    }
+    
+    /**
+     * Stream the users with the given surname in ID order
+     * @param surname The surname to match
+     * @param after Only users with a greater ID are returned
+     * @param limit The maximum number of users
+     * @return The users
+     */
+    public Flux<User> findBySurname(String surname, long after, int limit) {
+        return find("surname", surname, after, limit);
+    }
+    
+    /**
+     * Stream the users with the given nationality in ID order
+     * @param nationality The nationality to match
+     * @param after Only users with a greater ID are returned
+     * @param limit The maximum number of users
+     * @return The users
+     */
+    public Flux<User> findByNationality(String nationality, long after, int limit) {
+        return find("nationality_id", nationalityCodes.codeOf(nationality), after, limit);
+    }
+    
+    /**
+     * Close the connection pool
+     */
+    @Override
+    public void destroy() {
+        if (connectionFactory instanceof Closeable) {
+            Mono.from(((Closeable) connectionFactory).close()).block();
+        }
+    }
+    
+    private Flux<User> find(String column, Object value, long after, int limit) {
+        StringBuilder sql = new StringBuilder(SELECT).append(" where id > :after");
+        if (column != null) {
+            sql.append(" and ").append(column).append(" = :value");
+        }
+        sql.append(" order by id fetch first :limit rows only");
+        
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString())
+                .bind("after", after)
+                .bind("limit", limit);
+        if (column != null) {
+            spec = spec.bind("value", value);
+        }
+        return spec.map(this::toUser).all();
+    }
+    
+    private User toUser(Row row) {
+        User user = new User(row.get("id", Long.class), row.get("name", String.class), row.get("surname", String.class),
+                row.get("email", String.class), nationalityCodes.nameOf(row.get("nationality_id", Short.class)));
+        user.setVersion(row.get("version", Long.class));
+        return user;
+    }
+}
@@ -0,0 +1,72 @@
+package com.usermanagement.repository;
+
+import java.util.function.Supplier;
+
+/**
+ * Keeps the reads of the current thread on the primary database when replica routing is enabled
+ * Read-only transactions go to the replica unless the thread is pinned to the primary, which
+ * gives read-your-writes: a thread is pinned while it serves a client that wrote recently, or
+ * while it reads a user written recently. Pins nest, and have no effect without replica routing.
+ */
+public final class ReplicaRouting {
+    
+    private static final ThreadLocal<Integer> PINS = new ThreadLocal<>();
+    
+    private ReplicaRouting() {
+    }
+    
+    /**
+     * Pin the current thread to the primary until the returned pin is closed, in a finally block
+     * @return The pin, to close once the reads are done
+     */
+    public static Pin pinToPrimary() {
+        Integer pins = PINS.get();
+        PINS.set(pins == null ? 1 : pins + 1);
+        return ReplicaRouting::unpin;
+    }
+    
+    /**
+     * Run a read on the primary
+     * @param read The read
+     * @param <T> The type of the result
+     * @return The result of the read
+     */
+    public static <T> T onPrimary(Supplier<T> read) {
+        Pin pin = pinToPrimary();
+        try {
+            return read.get();
+        } finally {
+            pin.close();
+        }
+    }
+    
+    /**
+     * Check whether the current thread is pinned to the primary
+     * @return true if reads of the current thread must go to the primary
+     */
+    public static boolean isPinnedToPrimary() {
+        return PINS.get() != null;
+    }
+    
+    private static void unpin() {
+        int pins = PINS.get();
+        if (pins == 1) {
+            PINS.remove();
+        } else {
+            PINS.set(pins - 1);
+        }
+    }
+    
+    /**
+     * A pin of the current thread to the primary
+     */
+    @FunctionalInterface
+    public interface Pin extends AutoCloseable {
+        
+        /**
+         * Release the pin
+         */
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,53 @@
+package com.usermanagement.repository;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Data source sending read-only transactions to a replica and everything else to the primary
+ * Connections must be obtained lazily, once the transaction's read-only flag is known, so this
+ * data source is used behind a LazyConnectionDataSourceProxy. Work outside a transaction goes
+ * to the primary, as do read-only transactions of a thread pinned with {@link ReplicaRouting}.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    
+    /**
+     * Target of the data source
+     */
+    public enum Target {
+        PRIMARY,
+        REPLICA
+    }
+    
+    /**
+     * Constructs a new routing data source
+     * @param primary The primary database, taking every write
+     * @param replica The replica, taking read-only transactions
+     */
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(Target.PRIMARY, primary);
+        targets.put(Target.REPLICA, replica);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+    }
+    
+    /**
+     * Get the database the current thread's next connection goes to
+     * @return The target
+     */
+    public static Target currentTarget() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !ReplicaRouting.isPinnedToPrimary()
+                ? Target.REPLICA : Target.PRIMARY;
+    }
+    
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return currentTarget();
+    }
+}
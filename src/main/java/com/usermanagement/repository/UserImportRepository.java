@@ -0,0 +1,22 @@
+package com.usermanagement.repository;
+
+import com.usermanagement.model.UserImport;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository of user imports and their progress
+ */
+@Repository
+public interface UserImportRepository extends JpaRepository<UserImport, Long> {
+    
+    /**
+     * Find the imports in any of the given states
+     * @param statuses The states
+     * @return The imports, in no particular order
+     */
+    List<UserImport> findByStatusIn(Collection<UserImport.Status> statuses);
+}
@@ -0,0 +1,23 @@
+package com.usermanagement.repository;
+
+import com.usermanagement.model.User;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+
+/**
+ * Repository fragment running dynamic user queries with a row limit
+ * Unlike JpaSpecificationExecutor's paged finders, no count query is issued
+ */
+public interface UserQueryRepository {
+    
+    /**
+     * Find the first users matching a specification in the given order
+     * @param spec The conditions the users must match
+     * @param sort The order of the results
+     * @param limit The maximum number of users to return
+     * @return List of at most limit users
+     */
+    List<User> findAll(Specification<User> spec, Sort sort, int limit);
+}
@@ -0,0 +1,52 @@
+package com.usermanagement.repository;
+
+import com.usermanagement.model.User;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.List;
+
+import static org.springframework.data.jpa.repository.query.QueryUtils.toOrders;
+
+/**
+ * Criteria API implementation of the {@link UserQueryRepository} fragment
+ */
+public class UserQueryRepositoryImpl implements UserQueryRepository {
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    /**
+     * Find the first users matching a specification in the given order
+     * The whole query, conditions, order and limit, is executed as a single SQL statement.
+     * Users are read as a projection, outside the persistence context, like the other listings.
+     * @param spec The conditions the users must match
+     * @param sort The order of the results
+     * @param limit The maximum number of users to return
+     * @return List of at most limit users
+     */
+    @Override
+    public List<User> findAll(Specification<User> spec, Sort sort, int limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<User> query = builder.createQuery(User.class);
+        Root<User> root = query.from(User.class);
+        
+        Predicate predicate = spec.toPredicate(root, query, builder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.select(builder.construct(User.class, root.get("id"), root.get("name"), root.get("surname"),
+                root.get("email"), root.get("nationality"), root.get("version")))
+                .orderBy(toOrders(sort, root, builder));
+        
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+}
@@ -1,50 +1,122 @@
 package com.usermanagement.repository;
 
 import com.usermanagement.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 /**
  * Repository interface for User entity
  * Provides CRUD operations for User objects
  */
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, UserQueryRepository, UserWriteRepository {
     
     /**
-     * Find a user by email
-     * @param email The email to search for
+     * Find a user by normalized email, using the unique email index
+     * @param emailNormalized The normalized email to search for
      * @return Optional containing the user if found
+     * @see User#normalizeEmail(String)
+     */
+    Optional<User> findByEmailNormalized(String emailNormalized);
+    
+    /**
+     * Find which of the given normalized emails are already taken
+     * @param emails The normalized emails to check
+     * @return The subset of the emails that belong to existing users
+     */
+    @Query("select u.emailNormalized from User u where u.emailNormalized in :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+    
+    /**
+     * Columns of the listing projections, passed to the User constructor taking a version
      */
-    Optional<User> findByEmail(String email);
+    String USER_PROJECTION = "select new com.usermanagement.model.User("
+            + "u.id, u.name, u.surname, u.email, u.nationality, u.version) from User u ";
     
     /**
-     * Check if a user with the given email exists
-     * @param email The email to check
-     * @return true if a user with the email exists, false otherwise
+     * Find the users following a keyset cursor, ordered by ID
+     * Like every listing query, reads the columns into users outside the persistence context
+     * instead of loading managed entities
+     * @param afterId Only users with an ID greater than this are returned
+     * @param pageable The page size to apply
+     * @return List of at most pageable.getPageSize() users
      */
-    boolean existsByEmail(String email);
+    @Query(USER_PROJECTION + "where u.id > :afterId order by u.id")
+    List<User> findPageAfter(@Param("afterId") Long afterId, Pageable pageable);
     
     /**
-     * Find users by name
+     * Find the users with the given name following a keyset cursor, ordered by ID
      * @param name The name to search for
-     * @return List of users with the given name
+     * @param afterId Only users with an ID greater than this are returned
+     * @param pageable The page size to apply
+     * @return List of at most pageable.getPageSize() users with the given name
      */
-    java.util.List<User> findByName(String name);
+    @Query(USER_PROJECTION + "where u.name = :name and u.id > :afterId order by u.id")
+    List<User> findPageByName(@Param("name") String name, @Param("afterId") Long afterId, Pageable pageable);
     
     /**
-     * Find users by surname
+     * Find the users with the given surname following a keyset cursor, ordered by ID
      * @param surname The surname to search for
-     * @return List of users with the given surname
+     * @param afterId Only users with an ID greater than this are returned
+     * @param pageable The page size to apply
+     * @return List of at most pageable.getPageSize() users with the given surname
      */
-    java.util.List<User> findBySurname(String surname);
+    @Query(USER_PROJECTION + "where u.surname = :surname and u.id > :afterId order by u.id")
+    List<User> findPageBySurname(@Param("surname") String surname, @Param("afterId") Long afterId, Pageable pageable);
     
     /**
-     * Find users by nationality
+     * Find the users with the given nationality following a keyset cursor, ordered by ID
      * @param nationality The nationality to search for
-     * @return List of users with the given nationality
+     * @param afterId Only users with an ID greater than this are returned
+     * @param pageable The page size to apply
+     * @return List of at most pageable.getPageSize() users with the given nationality
+     */
+    @Query(USER_PROJECTION + "where u.nationality = :nationality and u.id > :afterId order by u.id")
+    List<User> findPageByNationality(@Param("nationality") String nationality, @Param("afterId") Long afterId,
+                                     Pageable pageable);
+    
+    /**
+     * Number of rows fetched per JDBC round trip when streaming users
+     */
+    int STREAM_FETCH_SIZE = 1000;
+    
+    /**
+     * Stream all users ordered by ID, fetching rows from the JDBC cursor in chunks
+     * Must be consumed inside a transaction and closed afterwards
+     * @return Stream of all users
+     */
+    @Query("select u from User u order by u.id")
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    Stream<User> streamAllByOrderByIdAsc();
+    
+    /**
+     * Find the version of a user without loading the entity
+     * @param id The ID of the user
+     * @return Optional containing the version if the user exists
+     */
+    @Query("select u.version from User u where u.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+    
+    /**
+     * Count users per nationality in a single grouped query
+     * @return Rows of nationality and number of users holding it
      */
-    java.util.List<User> findByNationality(String nationality);
-}
\ No newline at end of file
+    @Query("select u.nationality, count(u) from User u group by u.nationality")
+    List<Object[]> countByNationality();
+}
@@ -0,0 +1,90 @@
+package com.usermanagement.repository;
+
+import com.usermanagement.model.User;
+import com.usermanagement.model.UserQuery;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Root;
+
+/**
+ * Specifications translating a {@link UserQuery} into SQL conditions
+ */
+public final class UserSpecifications {
+    
+    private UserSpecifications() {
+    }
+    
+    /**
+     * Build the conditions of a query's filters
+     * Email is matched on its normalized form, ignoring case
+     * @param query The query
+     * @return Specification matching the users that pass every set filter
+     */
+    public static Specification<User> matching(UserQuery query) {
+        return Specification.where(equalTo("name", query.getName()))
+                .and(equalTo("surname", query.getSurname()))
+                .and(equalTo("emailNormalized", User.normalizeEmail(query.getEmail())))
+                .and(equalTo("nationality", query.getNationality()));
+    }
+    
+    /**
+     * Build the keyset condition selecting the users after a cursor in the query order
+     * @param query The query
+     * @param cursor The cursor of the previous page
+     * @return Specification matching the users that follow the cursor
+     */
+    public static Specification<User> after(UserQuery query, UserQuery.Cursor cursor) {
+        boolean descending = query.isDescending();
+        return (root, criteria, builder) -> {
+            Path<Long> id = root.get("id");
+            if (query.getSortField() == UserQuery.SortField.ID) {
+                return descending ? builder.lessThan(id, cursor.getId()) : builder.greaterThan(id, cursor.getId());
+            }
+            Path<String> value = path(root, query.getSortField().getAttribute());
+            // (value, id) > (cursor value, cursor id), or < when descending
+            return builder.or(
+                    descending ? builder.lessThan(value, cursor.getValue()) : builder.greaterThan(value, cursor.getValue()),
+                    builder.and(
+                            builder.equal(value, cursor.getValue()),
+                            descending ? builder.lessThan(id, cursor.getId()) : builder.greaterThan(id, cursor.getId())));
+        };
+    }
+    
+    /**
+     * Build the order of a query: the sort field, then the ID as tie-breaker
+     * @param query The query
+     * @return The sort
+     */
+    public static Sort sortOf(UserQuery query) {
+        Sort.Direction direction = query.isDescending() ? Sort.Direction.DESC : Sort.Direction.ASC;
+        if (query.getSortField() == UserQuery.SortField.ID) {
+            return Sort.by(direction, "id");
+        }
+        return Sort.by(direction, query.getSortField().getAttribute(), "id");
+    }
+    
+    /**
+     * Resolve a sort attribute, joining the association of a dotted attribute
+     * The join is a left join, as the one the sort creates for the same attribute, so both share it
+     * @param root The queried users
+     * @param attribute The attribute, possibly of an associated entity, such as "nationalityEntry.name"
+     * @return The path of the attribute
+     */
+    private static Path<String> path(Root<User> root, String attribute) {
+        int dot = attribute.indexOf('.');
+        if (dot < 0) {
+            return root.get(attribute);
+        }
+        return root.join(attribute.substring(0, dot), JoinType.LEFT).get(attribute.substring(dot + 1));
+    }
+    
+    private static Specification<User> equalTo(String attribute, String value) {
+        if (value == null) {
+            return null;
+        }
+        return (root, criteria, builder) -> builder.equal(root.get(attribute), value);
+    }
+}
@@ -0,0 +1,44 @@
+package com.usermanagement.repository;
+
+import com.usermanagement.model.User;
+import com.usermanagement.model.UserBulkDelete;
+import com.usermanagement.model.UserPatch;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository fragment running writes that also return the previous state of the rows they
+ * change; on H2 each is a single statement that no SELECT has to precede
+ */
+public interface UserWriteRepository {
+    
+    /**
+     * Apply a partial update and increment the version
+     * @param id The ID of the user to update
+     * @param patch The fields to change
+     * @param expectedVersion The version the user must be at, or null to update regardless
+     * @return The user as it was before the update, or empty if no row was updated
+     *         because the user does not exist or is at another version
+     */
+    Optional<User> patch(Long id, UserPatch patch, Long expectedVersion);
+    
+    /**
+     * Delete a user
+     * @param id The ID of the user to delete
+     * @param expectedVersion The version the user must be at, or null to delete regardless
+     * @return The deleted user, or empty if no row was deleted because the user
+     *         does not exist or is at another version
+     */
+    Optional<User> deleteReturning(Long id, Long expectedVersion);
+    
+    /**
+     * Delete the first users, in ID order, matching the field values of a bulk delete
+     * @param filter The field values the users must match; its IDs are ignored
+     * @param ids The IDs the users must have, or null for any
+     * @param limit The maximum number of users to delete
+     * @return The deleted users
+     */
+    List<User> deleteMatching(UserBulkDelete filter, Collection<Long> ids, int limit);
+}
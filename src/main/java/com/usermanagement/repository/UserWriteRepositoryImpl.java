@@ -0,0 +1,296 @@
+package com.usermanagement.repository;
+
+import com.usermanagement.model.User;
+import com.usermanagement.model.UserBulkDelete;
+import com.usermanagement.model.UserPatch;
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Native SQL implementation of the {@link UserWriteRepository} fragment
+ * On H2, each write is wrapped in H2's OLD TABLE data change delta table, which returns the
+ * changed rows as they were before the statement; an empty result means no row matched.
+ * Other databases have no such table, so there the previous row is read first and the write
+ * is guarded by the version read, retrying if the row changed in between: two statements
+ * instead of one, with the same results; bulk deletes read a bounded set of rows, then delete
+ * them in one batch of version-guarded statements. The H2 statements are used by default on H2 only;
+ * user.write.delta-tables=false turns them off, and true fails startup on other databases.
+ * Nationalities are written and read as their dictionary codes.
+ */
+public class UserWriteRepositoryImpl implements UserWriteRepository, InitializingBean {
+    
+    private static final String PREVIOUS_COLUMNS = "id, name, surname, email, nationality_id, version";
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    @Autowired
+    private NationalityCodes nationalityCodes;
+    
+    /**
+     * Whether to use H2's data change delta tables: "true", "false" or "auto" for H2 only
+     */
+    @Value("${user.write.delta-tables:auto}")
+    private String deltaTablesSetting;
+    
+    private boolean deltaTables;
+    
+    /**
+     * Choose between the H2 statements and the portable ones for the configured database
+     * @throws IllegalStateException if the H2 statements are required on another database
+     */
+    @Override
+    public void afterPropertiesSet() {
+        Dialect dialect = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect();
+        boolean h2 = dialect instanceof H2Dialect;
+        if ("auto".equals(deltaTablesSetting)) {
+            deltaTables = h2;
+        } else if (Boolean.parseBoolean(deltaTablesSetting)) {
+            if (!h2) {
+                throw new IllegalStateException("user.write.delta-tables=true requires H2, the database dialect is "
+                        + dialect.getClass().getName());
+            }
+            deltaTables = true;
+        } else {
+            deltaTables = false;
+        }
+    }
+    
+    /**
+     * Apply a partial update and increment the version, in one statement on H2
+     * Only the columns of the fields set in the patch are written.
+     * @param id The ID of the user to update
+     * @param patch The fields to change
+     * @param expectedVersion The version the user must be at, or null to update regardless
+     * @return The user as it was before the update, or empty if no row was updated
+     *         because the user does not exist or is at another version
+     */
+    @Override
+    public Optional<User> patch(Long id, UserPatch patch, Long expectedVersion) {
+        StringBuilder sql = new StringBuilder("update users set version = version + 1");
+        List<Object> parameters = new ArrayList<>();
+        set(sql, parameters, "name", patch.getName());
+        set(sql, parameters, "surname", patch.getSurname());
+        set(sql, parameters, "email", patch.getEmail());
+        set(sql, parameters, "email_normalized", User.normalizeEmail(patch.getEmail()));
+        set(sql, parameters, "nationality_id",
+                patch.getNationality() == null ? null : nationalityCodes.codeOf(patch.getNationality()));
+        sql.append(" where id = ?");
+        parameters.add(id);
+        
+        if (!deltaTables) {
+            return guarded(sql, parameters, id, expectedVersion);
+        }
+        if (expectedVersion != null) {
+            sql.append(" and version = ?");
+            parameters.add(expectedVersion);
+        }
+        List<?> rows = previousRows(sql.toString(), parameters);
+        return rows.isEmpty() ? Optional.empty() : Optional.of(toUser((Object[]) rows.get(0)));
+    }
+    
+    /**
+     * Delete a user, in one statement on H2
+     * @param id The ID of the user to delete
+     * @param expectedVersion The version the user must be at, or null to delete regardless
+     * @return The deleted user, or empty if no row was deleted because the user
+     *         does not exist or is at another version
+     */
+    @Override
+    public Optional<User> deleteReturning(Long id, Long expectedVersion) {
+        StringBuilder sql = new StringBuilder("delete from users where id = ?");
+        List<Object> parameters = new ArrayList<>();
+        parameters.add(id);
+        if (!deltaTables) {
+            return guarded(sql, parameters, id, expectedVersion);
+        }
+        if (expectedVersion != null) {
+            sql.append(" and version = ?");
+            parameters.add(expectedVersion);
+        }
+        
+        List<?> rows = previousRows(sql.toString(), parameters);
+        return rows.isEmpty() ? Optional.empty() : Optional.of(toUser((Object[]) rows.get(0)));
+    }
+    
+    /**
+     * Delete the first users, in ID order, matching the field values of a bulk delete
+     * On H2 the rows are selected by a subquery bounded by the limit, so the number of rows a
+     * statement returns stays bounded however many users match. Elsewhere they are read first,
+     * with the database's own row limit, and deleted by one batch of version-guarded deletes;
+     * rows changed in between are read again, so the limit is reached whenever enough users match.
+     * @param filter The field values the users must match; its IDs are ignored
+     * @param ids The IDs the users must have, or null for any
+     * @param limit The maximum number of users to delete
+     * @return The deleted users
+     */
+    @Override
+    public List<User> deleteMatching(UserBulkDelete filter, Collection<Long> ids, int limit) {
+        StringBuilder sql = new StringBuilder(" from users where 1 = 1");
+        List<Object> parameters = new ArrayList<>();
+        if (ids != null) {
+            sql.append(" and id in (");
+            for (Long id : ids) {
+                sql.append(parameters.isEmpty() ? "?" : ", ?");
+                parameters.add(id);
+            }
+            sql.append(")");
+        }
+        where(sql, parameters, "name", filter.getName());
+        where(sql, parameters, "surname", filter.getSurname());
+        where(sql, parameters, "email_normalized", User.normalizeEmail(filter.getEmail()));
+        where(sql, parameters, "nationality_id",
+                filter.getNationality() == null ? null : nationalityCodes.codeOf(filter.getNationality()));
+        sql.append(" order by id");
+        
+        if (!deltaTables) {
+            return deleteGuarded("select " + PREVIOUS_COLUMNS + sql, parameters, limit);
+        }
+        parameters.add(limit);
+        List<?> rows = previousRows("delete from users where id in (select id" + sql + " fetch first ? rows only)",
+                parameters);
+        List<User> users = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            users.add(toUser((Object[]) row));
+        }
+        return users;
+    }
+    
+    /**
+     * Run a data change statement and read the rows it changed as they were before
+     * @param statement The UPDATE or DELETE statement, with positional parameters
+     * @param parameters The parameter values in order
+     * @return Rows of the previous column values
+     */
+    private List<?> previousRows(String statement, List<Object> parameters) {
+        Query query = entityManager.createNativeQuery(
+                "select " + PREVIOUS_COLUMNS + " from old table (" + statement + ")");
+        for (int i = 0; i < parameters.size(); i++) {
+            query.setParameter(i + 1, parameters.get(i));
+        }
+        return query.getResultList();
+    }
+    
+    /**
+     * Read a user, then run a write of that user guarded by the version read
+     * Without an expected version, the write is retried on the row as it is now if another
+     * write changed it in between; with one, such a change means the version no longer matches.
+     * @param statement The UPDATE or DELETE statement, ending with its condition on the ID
+     * @param parameters The parameter values in order
+     * @param id The ID of the user
+     * @param expectedVersion The version the user must be at, or null for any
+     * @return The user as it was before the write, or empty if no row was written
+     */
+    private Optional<User> guarded(StringBuilder statement, List<Object> parameters, Long id, Long expectedVersion) {
+        statement.append(" and version = ?");
+        String select = "select " + PREVIOUS_COLUMNS + " from users where id = ?"
+                + (expectedVersion != null ? " and version = ?" : "");
+        while (true) {
+            Query read = entityManager.createNativeQuery(select).setParameter(1, id);
+            if (expectedVersion != null) {
+                read.setParameter(2, expectedVersion);
+            }
+            List<?> rows = read.getResultList();
+            if (rows.isEmpty()) {
+                return Optional.empty();
+            }
+            User previous = toUser((Object[]) rows.get(0));
+            Query write = entityManager.createNativeQuery(statement.toString());
+            for (int i = 0; i < parameters.size(); i++) {
+                write.setParameter(i + 1, parameters.get(i));
+            }
+            write.setParameter(parameters.size() + 1, previous.getVersion());
+            if (write.executeUpdate() > 0) {
+                return Optional.of(previous);
+            }
+            if (expectedVersion != null) {
+                return Optional.empty();
+            }
+        }
+    }
+    
+    /**
+     * Read the users to delete, then delete each of them guarded by the version read, in one batch
+     * @param select The query of the users to delete, with positional parameters
+     * @param parameters The parameter values in order
+     * @param limit The maximum number of users to delete
+     * @return The deleted users
+     */
+    private List<User> deleteGuarded(String select, List<Object> parameters, int limit) {
+        List<User> deleted = new ArrayList<>();
+        while (deleted.size() < limit) {
+            int wanted = limit - deleted.size();
+            Query read = entityManager.createNativeQuery(select).setMaxResults(wanted);
+            for (int i = 0; i < parameters.size(); i++) {
+                read.setParameter(i + 1, parameters.get(i));
+            }
+            List<?> rows = read.getResultList();
+            if (rows.isEmpty()) {
+                break;
+            }
+            List<User> users = new ArrayList<>(rows.size());
+            for (Object row : rows) {
+                users.add(toUser((Object[]) row));
+            }
+            entityManager.unwrap(Session.class).doWork(connection -> {
+                try (PreparedStatement delete = connection.prepareStatement(
+                        "delete from users where id = ? and version = ?")) {
+                    for (User user : users) {
+                        delete.setLong(1, user.getId());
+                        delete.setLong(2, user.getVersion());
+                        delete.addBatch();
+                    }
+                    int[] counts = delete.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        // Drivers that cannot tell report SUCCESS_NO_INFO; the row was read just before
+                        if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                            deleted.add(users.get(i));
+                        }
+                    }
+                }
+            });
+            if (rows.size() < wanted) {
+                // Fewer users matched than asked for, so none is left
+                break;
+            }
+        }
+        return deleted;
+    }
+    
+    private static void set(StringBuilder sql, List<Object> parameters, String column, Object value) {
+        if (value != null) {
+            sql.append(", ").append(column).append(" = ?");
+            parameters.add(value);
+        }
+    }
+    
+    private static void where(StringBuilder sql, List<Object> parameters, String column, Object value) {
+        if (value != null) {
+            sql.append(" and ").append(column).append(" = ?");
+            parameters.add(value);
+        }
+    }
+    
+    private User toUser(Object[] row) {
+        User user = new User(((Number) row[0]).longValue(), (String) row[1], (String) row[2],
+                (String) row[3], nationalityCodes.nameOf(((Number) row[4]).shortValue()));
+        user.setVersion(((Number) row[5]).longValue());
+        return user;
+    }
+}
@@ -0,0 +1,899 @@
+package com.usermanagement.service;
+
+import com.usermanagement.model.BatchItemResult;
+import com.usermanagement.model.BatchResult;
+import com.usermanagement.model.CursorPage;
+import com.usermanagement.model.User;
+import com.usermanagement.model.UserBulkDelete;
+import com.usermanagement.model.UserPatch;
+import com.usermanagement.model.UserQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityNotFoundException;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Implementation of UserService holding every user in memory, without JPA or a database
+ * Active with the "memory" profile, in place of {@link UserServiceImpl}. Users are kept in a map
+ * keyed by primitive IDs, with secondary indexes from email, name, surname and nationality to the
+ * users having them; users are lost when the application stops.
+ * Writes are serialized by a {@link StampedLock}. Reads take no lock: they run under an optimistic
+ * stamp and are only repeated under the read lock when a write overlapped them. Stored users are
+ * never changed in place, writes replace them, and callers always receive copies.
+ * Publishes a {@link UserChangeEvent} for every user it creates, updates or deletes, once the
+ * write is visible to readers.
+ */
+@Service
+@Profile("memory")
+public class InMemoryUserService implements UserService {
+    
+    /**
+     * Number of users deleted per write lock hold in bulk deletes, and read per page in exports
+     */
+    private static final int CHUNK_SIZE = 1000;
+    
+    private final Validator validator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StampedLock lock = new StampedLock();
+    
+    private final LongObjectMap<User> usersById = new LongObjectMap<>();
+    private final LongIdSet ids = new LongIdSet();
+    
+    // Secondary indexes are only written under the write lock, but are concurrent maps so that
+    // lock-free readers never traverse a map being restructured
+    private final Map<String, User> usersByEmail = new ConcurrentHashMap<>();
+    private final Map<String, LongIdSet> idsByName = new ConcurrentHashMap<>();
+    private final Map<String, LongIdSet> idsBySurname = new ConcurrentHashMap<>();
+    private final Map<String, LongIdSet> idsByNationality = new ConcurrentHashMap<>();
+    
+    private long nextId = 1;
+    
+    @Autowired
+    public InMemoryUserService(Validator validator, ApplicationEventPublisher eventPublisher) {
+        this.validator = validator;
+        this.eventPublisher = eventPublisher;
+    }
+    
+    /**
+     * Create a new user
+     * @param user The user to create, which receives the generated ID and version
+     * @return The created user
+     * @throws ConstraintViolationException if the user is not valid
+     * @throws IllegalArgumentException if email already exists
+     */
+    @Override
+    public User createUser(User user) {
+        checkValid(user);
+        User created;
+        long stamp = lock.writeLock();
+        try {
+            checkEmailFree(User.normalizeEmail(user.getEmail()), null, user.getEmail());
+            created = insert(user, nextId++, 0L);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        user.setId(created.getId());
+        user.setVersion(created.getVersion());
+        eventPublisher.publishEvent(UserChangeEvent.created(created));
+        return copy(created);
+    }
+    
+    /**
+     * Create or update many users atomically
+     * Items are checked exactly as {@link UserServiceImpl#saveUsers(List)} does, then applied
+     * under a single write lock hold, so readers see either none or all of the batch
+     * @param users The users to save, new ones receive their generated ID and version
+     * @return The outcome of every item, in request order
+     * @throws IllegalArgumentException if the batch is empty or larger than MAX_BATCH_SIZE
+     */
+    @Override
+    public BatchResult saveUsers(List<User> users) {
+        if (users == null || users.isEmpty() || users.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch must contain between 1 and " + MAX_BATCH_SIZE + " users");
+        }
+        
+        BatchItemResult[] results = new BatchItemResult[users.size()];
+        
+        // Bean validation and duplicates within the batch
+        Set<String> batchEmails = new HashSet<>();
+        Set<Long> updateIds = new HashSet<>();
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            String error = validate(user);
+            if (error == null && !batchEmails.add(user.getEmailNormalized())) {
+                error = "Duplicate email in batch: " + user.getEmail();
+            }
+            if (error == null && user.getId() != null && !updateIds.add(user.getId())) {
+                error = "Duplicate id in batch: " + user.getId();
+            }
+            if (error != null) {
+                results[i] = BatchItemResult.failed(i, error);
+            }
+        }
+        
+        List<UserChangeEvent> events = new ArrayList<>();
+        long stamp = lock.writeLock();
+        try {
+            // Emails are checked against the users as they were before the batch
+            Set<String> takenEmails = new HashSet<>();
+            for (String email : batchEmails) {
+                if (usersByEmail.containsKey(email)) {
+                    takenEmails.add(email);
+                }
+            }
+            
+            for (int i = 0; i < users.size(); i++) {
+                if (results[i] != null) {
+                    continue;
+                }
+                User user = users.get(i);
+                if (user.getId() == null) {
+                    if (takenEmails.contains(user.getEmailNormalized())) {
+                        results[i] = BatchItemResult.failed(i, "Email already exists: " + user.getEmail());
+                        continue;
+                    }
+                    User created = insert(user, nextId++, 0L);
+                    user.setId(created.getId());
+                    user.setVersion(created.getVersion());
+                    events.add(UserChangeEvent.created(created));
+                    results[i] = new BatchItemResult(i, BatchItemResult.Status.CREATED, created.getId(), null);
+                    continue;
+                }
+                User existing = usersById.get(user.getId());
+                if (existing == null) {
+                    results[i] = BatchItemResult.failed(i, "User not found with id: " + user.getId());
+                } else if (!existing.getEmailNormalized().equals(user.getEmailNormalized())
+                        && takenEmails.contains(user.getEmailNormalized())) {
+                    results[i] = BatchItemResult.failed(i, "Email already exists: " + user.getEmail());
+                } else {
+                    User updated = replace(existing, withVersion(user, existing));
+                    events.add(UserChangeEvent.updated(existing, updated));
+                    results[i] = new BatchItemResult(i, BatchItemResult.Status.UPDATED, existing.getId(), null);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        events.forEach(eventPublisher::publishEvent);
+        return new BatchResult(Arrays.asList(results));
+    }
+    
+    /**
+     * Get a page of all users
+     * @param after The cursor returned with the previous page, or null for the first page
+     * @param limit The maximum number of users to return, or null for the default
+     * @return Page of users ordered by ID
+     * @throws IllegalArgumentException if limit is out of range
+     */
+    @Override
+    public CursorPage<User> getAllUsers(Long after, Integer limit) {
+        int pageLimit = resolveLimit(limit);
+        return toPage(read(() -> pageOf(ids, cursorOf(after), pageLimit + 1)), pageLimit);
+    }
+    
+    /**
+     * Pass every user, in ID order, to the given consumer
+     * Users are read a page at a time, so writes are not held up by a slow consumer
+     * @param consumer The consumer receiving the users one by one
+     */
+    @Override
+    public void exportUsers(Consumer<User> consumer) {
+        long after = 0L;
+        List<User> page;
+        do {
+            long cursor = after;
+            page = read(() -> pageOf(ids, cursor, CHUNK_SIZE));
+            for (User user : page) {
+                consumer.accept(copy(user));
+                after = user.getId();
+            }
+        } while (page.size() == CHUNK_SIZE);
+    }
+    
+    /**
+     * Get user by ID
+     * @param id The ID to search for
+     * @return Optional containing the user if found
+     */
+    @Override
+    public Optional<User> getUserById(Long id) {
+        return Optional.ofNullable(read(() -> find(id))).map(InMemoryUserService::copy);
+    }
+    
+    /**
+     * Get user by email, ignoring case
+     * @param email The email to search for
+     * @return Optional containing the user if found
+     */
+    @Override
+    public Optional<User> getUserByEmail(String email) {
+        String normalized = User.normalizeEmail(email);
+        if (normalized == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(read(() -> usersByEmail.get(normalized))).map(InMemoryUserService::copy);
+    }
+    
+    /**
+     * Replace all fields of an existing user
+     * The version is only incremented if a field changed, as JPA does
+     * @param id The ID of the user to update
+     * @param userDetails The updated user details
+     * @param expectedVersion The version the client last read, or null to update unconditionally
+     * @return The updated user
+     * @throws ConstraintViolationException if the user details are not valid
+     * @throws EntityNotFoundException if user not found
+     * @throws IllegalArgumentException if email already exists
+     * @throws OptimisticLockingFailureException if the user's version differs from the expected one
+     */
+    @Override
+    public User updateUser(Long id, User userDetails, Long expectedVersion) {
+        checkValid(userDetails);
+        User previous;
+        User user;
+        long stamp = lock.writeLock();
+        try {
+            previous = require(id, expectedVersion);
+            checkEmailFree(User.normalizeEmail(userDetails.getEmail()), id, userDetails.getEmail());
+            user = replace(previous, withVersion(userDetails, previous));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        eventPublisher.publishEvent(UserChangeEvent.updated(previous, user));
+        return copy(user);
+    }
+    
+    /**
+     * Change only some fields of an existing user
+     * @param id The ID of the user to update
+     * @param patch The fields to change
+     * @param expectedVersion The version the client last read, or null to update unconditionally
+     * @return The updated user
+     * @throws EntityNotFoundException if user not found
+     * @throws IllegalArgumentException if the patch is empty or email already exists
+     * @throws OptimisticLockingFailureException if the user's version differs from the expected one
+     */
+    @Override
+    public User patchUser(Long id, UserPatch patch, Long expectedVersion) {
+        if (patch.isEmpty()) {
+            throw new IllegalArgumentException("No fields to update");
+        }
+        
+        User previous;
+        User user;
+        long stamp = lock.writeLock();
+        try {
+            previous = require(id, expectedVersion);
+            if (patch.getEmail() != null) {
+                checkEmailFree(User.normalizeEmail(patch.getEmail()), id, patch.getEmail());
+            }
+            User patched = copy(previous);
+            patch.applyTo(patched);
+            patched.setVersion(previous.getVersion() + 1);
+            user = replace(previous, patched);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        eventPublisher.publishEvent(UserChangeEvent.updated(previous, user));
+        return copy(user);
+    }
+    
+    /**
+     * Delete a user
+     * @param id The ID of the user to delete
+     * @param expectedVersion The version the client last read, or null to delete unconditionally
+     * @throws EntityNotFoundException if user not found
+     * @throws OptimisticLockingFailureException if the user's version differs from the expected one
+     */
+    @Override
+    public void deleteUser(Long id, Long expectedVersion) {
+        User user;
+        long stamp = lock.writeLock();
+        try {
+            user = require(id, expectedVersion);
+            remove(user);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        eventPublisher.publishEvent(UserChangeEvent.deleted(user));
+    }
+    
+    /**
+     * Delete all users matching a bulk delete
+     * Users are deleted up to CHUNK_SIZE per write lock hold, so a long purge lets reads
+     * and other writes through between chunks
+     * @param request The users to delete
+     * @return The number of users deleted
+     * @throws IllegalArgumentException if the request has no conditions or more than MAX_BATCH_SIZE IDs
+     */
+    @Override
+    public long deleteUsers(UserBulkDelete request) {
+        if (!request.hasConditions()) {
+            throw new IllegalArgumentException("Bulk delete requires IDs or at least one field to match");
+        }
+        List<Long> requestIds = request.getIds();
+        if (requestIds != null && requestIds.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Bulk delete accepts at most " + MAX_BATCH_SIZE + " IDs");
+        }
+        
+        long deleted = 0;
+        if (requestIds != null && !requestIds.isEmpty()) {
+            List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(requestIds));
+            for (int from = 0; from < distinct.size(); from += CHUNK_SIZE) {
+                deleted += deleteChunk(request, distinct.subList(from, Math.min(from + CHUNK_SIZE, distinct.size())));
+            }
+            return deleted;
+        }
+        int count;
+        do {
+            count = deleteChunk(request, null);
+            deleted += count;
+        } while (count == CHUNK_SIZE);
+        return deleted;
+    }
+    
+    /**
+     * Delete up to CHUNK_SIZE users of a bulk delete under one write lock hold
+     * @param filter The field values the users must match
+     * @param candidateIds The IDs the users must have, or null for any
+     * @return The number of users deleted
+     */
+    private int deleteChunk(UserBulkDelete filter, List<Long> candidateIds) {
+        String email = User.normalizeEmail(filter.getEmail());
+        List<User> users = new ArrayList<>();
+        long stamp = lock.writeLock();
+        try {
+            if (candidateIds != null) {
+                for (Long id : candidateIds) {
+                    User user = find(id);
+                    if (user != null && matches(user, filter.getName(), filter.getSurname(), email, filter.getNationality())) {
+                        users.add(user);
+                    }
+                }
+            } else {
+                LongIdSet candidates = candidates(filter.getName(), filter.getSurname(), email, filter.getNationality());
+                for (int i = 0; i < candidates.size() && users.size() < CHUNK_SIZE; i++) {
+                    User user = usersById.get(candidates.get(i));
+                    if (matches(user, filter.getName(), filter.getSurname(), email, filter.getNationality())) {
+                        users.add(user);
+                    }
+                }
+            }
+            removeAll(users);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        users.forEach(user -> eventPublisher.publishEvent(UserChangeEvent.deleted(user)));
+        return users.size();
+    }
+    
+    /**
+     * Get the current version of a user
+     * @param id The ID of the user
+     * @return Optional containing the version if the user exists
+     */
+    @Override
+    public Optional<Long> getUserVersion(Long id) {
+        return Optional.ofNullable(read(() -> find(id))).map(User::getVersion);
+    }
+    
+    /**
+     * Search users by name
+     * @param name The name to search for
+     * @param after The cursor returned with the previous page, or null for the first page
+     * @param limit The maximum number of users to return, or null for the default
+     * @return Page of users with the given name ordered by ID
+     * @throws IllegalArgumentException if limit is out of range
+     */
+    @Override
+    public CursorPage<User> searchUsersByName(String name, Long after, Integer limit) {
+        return searchIndex(idsByName, name, after, limit);
+    }
+    
+    /**
+     * Search users by surname
+     * @param surname The surname to search for
+     * @param after The cursor returned with the previous page, or null for the first page
+     * @param limit The maximum number of users to return, or null for the default
+     * @return Page of users with the given surname ordered by ID
+     * @throws IllegalArgumentException if limit is out of range
+     */
+    @Override
+    public CursorPage<User> searchUsersBySurname(String surname, Long after, Integer limit) {
+        return searchIndex(idsBySurname, surname, after, limit);
+    }
+    
+    /**
+     * Search users by nationality
+     * @param nationality The nationality to search for
+     * @param after The cursor returned with the previous page, or null for the first page
+     * @param limit The maximum number of users to return, or null for the default
+     * @return Page of users with the given nationality ordered by ID
+     * @throws IllegalArgumentException if limit is out of range
+     */
+    @Override
+    public CursorPage<User> searchUsersByNationality(String nationality, Long after, Integer limit) {
+        return searchIndex(idsByNationality, nationality, after, limit);
+    }
+    
+    /**
+     * Query users by any combination of name, surname, email and nationality
+     * Candidates are taken from the most selective index among the filters set. Ordered by ID
+     * they are walked from the cursor; ordered by another field, the matching users are kept
+     * in a heap bounded by the page size, so the cost grows with the matches, not the page.
+     * @param query The filters, sort order and page to fetch
+     * @return Page of matching users in the query order
+     * @throws IllegalArgumentException if the limit is out of range or the cursor is invalid
+     */
+    @Override
+    public CursorPage<User> queryUsers(UserQuery query) {
+        int pageLimit = resolveLimit(query.getLimit());
+        UserQuery.Cursor cursor = query.getAfter() == null ? null
+                : UserQuery.Cursor.parse(query.getAfter(), query.getSortField());
+        List<User> users = copies(read(() -> select(query, cursor, pageLimit + 1)));
+        if (users.size() <= pageLimit) {
+            return new CursorPage<>(users, null);
+        }
+        List<User> page = users.subList(0, pageLimit);
+        return new CursorPage<>(page, UserQuery.Cursor.of(page.get(pageLimit - 1), query.getSortField()).encode());
+    }
+    
+    /**
+     * Count users per nationality from the sizes of the nationality index entries
+     * @return Map of nationality to number of users
+     */
+    @Override
+    public Map<String, Long> countUsersByNationality() {
+        return read(() -> {
+            Map<String, Long> counts = new HashMap<>();
+            idsByNationality.forEach((nationality, set) -> {
+                if (!set.isEmpty()) {
+                    counts.put(nationality, (long) set.size());
+                }
+            });
+            return counts;
+        });
+    }
+    
+    /**
+     * Run a read without locking, falling back to the read lock if a write overlapped it
+     * A read racing a write may see the structures half updated and fail or return a wrong
+     * result; either way its stamp no longer validates and the read is run again under the lock.
+     * @param reader The read, which must not have side effects
+     * @param <T> The type of the result
+     * @return The result of the read
+     */
+    private <T> T read(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * Get a page of the users of one secondary index entry
+     * @param index The index
+     * @param value The indexed value
+     * @param after The cursor returned with the previous page, or null for the first page
+     * @param limit The maximum number of users to return, or null for the default
+     * @return Page of users with the given value ordered by ID
+     */
+    private CursorPage<User> searchIndex(Map<String, LongIdSet> index, String value, Long after, Integer limit) {
+        int pageLimit = resolveLimit(limit);
+        return toPage(read(() -> pageOf(lookup(index, value), cursorOf(after), pageLimit + 1)), pageLimit);
+    }
+    
+    /**
+     * Read the users of an ID set following a cursor, in ID order
+     * @param set The IDs, may be null for none
+     * @param after The exclusive lower ID bound
+     * @param count The maximum number of users to read
+     * @return The users, as stored
+     */
+    private List<User> pageOf(LongIdSet set, long after, int count) {
+        List<User> users = new ArrayList<>();
+        if (set == null) {
+            return users;
+        }
+        for (int i = set.indexAfter(after); i < set.size() && users.size() < count; i++) {
+            users.add(usersById.get(set.get(i)));
+        }
+        return users;
+    }
+    
+    /**
+     * Select the users matching a query, following its cursor, in the query order
+     * @param query The query
+     * @param cursor The cursor of the previous page, or null for the first page
+     * @param count The maximum number of users to select
+     * @return The users, as stored
+     */
+    private List<User> select(UserQuery query, UserQuery.Cursor cursor, int count) {
+        String name = query.getName();
+        String surname = query.getSurname();
+        String email = User.normalizeEmail(query.getEmail());
+        String nationality = query.getNationality();
+        LongIdSet candidates = candidates(name, surname, email, nationality);
+        List<User> users = new ArrayList<>();
+        
+        if (query.getSortField() == UserQuery.SortField.ID) {
+            int step = query.isDescending() ? -1 : 1;
+            int start = query.isDescending()
+                    ? (cursor == null ? candidates.size() - 1 : candidates.indexBefore(cursor.getId()))
+                    : (cursor == null ? 0 : candidates.indexAfter(cursor.getId()));
+            for (int i = start; i >= 0 && i < candidates.size() && users.size() < count; i += step) {
+                User user = usersById.get(candidates.get(i));
+                if (matches(user, name, surname, email, nationality)) {
+                    users.add(user);
+                }
+            }
+            return users;
+        }
+        
+        UserQuery.SortField field = query.getSortField();
+        Comparator<User> order = Comparator.<User, String>comparing(field::valueOf).thenComparing(User::getId);
+        if (query.isDescending()) {
+            order = order.reversed();
+        }
+        // The heap keeps the first users in the query order, with the last of them on top
+        PriorityQueue<User> first = new PriorityQueue<>(count + 1, order.reversed());
+        for (int i = 0; i < candidates.size(); i++) {
+            User user = usersById.get(candidates.get(i));
+            if (matches(user, name, surname, email, nationality) && follows(user, query, cursor)) {
+                first.add(user);
+                if (first.size() > count) {
+                    first.poll();
+                }
+            }
+        }
+        users.addAll(first);
+        users.sort(order);
+        return users;
+    }
+    
+    /**
+     * Check whether a user comes after a cursor in the query order
+     * @param user The user
+     * @param query The query
+     * @param cursor The cursor of the previous page, or null for the first page
+     * @return true if the user belongs after the cursor
+     */
+    private static boolean follows(User user, UserQuery query, UserQuery.Cursor cursor) {
+        if (cursor == null) {
+            return true;
+        }
+        int comparison = query.getSortField().valueOf(user).compareTo(cursor.getValue());
+        if (comparison == 0) {
+            comparison = Long.compare(user.getId(), cursor.getId());
+        }
+        return query.isDescending() ? comparison < 0 : comparison > 0;
+    }
+    
+    /**
+     * Pick the smallest set of IDs that holds every user matching the given fields
+     * @param name The name to match, or null for any
+     * @param surname The surname to match, or null for any
+     * @param email The normalized email to match, or null for any
+     * @param nationality The nationality to match, or null for any
+     * @return The candidate IDs, which still have to be matched against every field
+     */
+    private LongIdSet candidates(String name, String surname, String email, String nationality) {
+        if (email != null) {
+            LongIdSet single = new LongIdSet();
+            User user = usersByEmail.get(email);
+            if (user != null) {
+                single.add(user.getId());
+            }
+            return single;
+        }
+        LongIdSet candidates = ids;
+        for (LongIdSet set : Arrays.asList(
+                narrowing(idsByName, name), narrowing(idsBySurname, surname), narrowing(idsByNationality, nationality))) {
+            if (set != null && set.size() < candidates.size()) {
+                candidates = set;
+            }
+        }
+        return candidates;
+    }
+    
+    /**
+     * Get the entry of a secondary index a filter narrows the candidates to
+     * @param index The index
+     * @param value The filter value, or null if the filter is not set
+     * @return The IDs having the value, an empty set if none has it, or null if the filter is not set
+     */
+    private static LongIdSet narrowing(Map<String, LongIdSet> index, String value) {
+        if (value == null) {
+            return null;
+        }
+        LongIdSet set = index.get(value);
+        return set != null ? set : new LongIdSet();
+    }
+    
+    private static boolean matches(User user, String name, String surname, String email, String nationality) {
+        return user != null
+                && (name == null || name.equals(user.getName()))
+                && (surname == null || surname.equals(user.getSurname()))
+                && (email == null || email.equals(user.getEmailNormalized()))
+                && (nationality == null || nationality.equals(user.getNationality()));
+    }
+    
+    private User find(Long id) {
+        return id == null ? null : usersById.get(id);
+    }
+    
+    private static LongIdSet lookup(Map<String, LongIdSet> index, String value) {
+        return value == null ? null : index.get(value);
+    }
+    
+    /**
+     * Get a user to write, checking the version a client last read
+     * Must be called under the write lock
+     * @param id The ID of the user
+     * @param expectedVersion The version the client expects, or null to skip the check
+     * @return The stored user
+     * @throws EntityNotFoundException if user not found
+     * @throws OptimisticLockingFailureException if the versions differ
+     */
+    private User require(Long id, Long expectedVersion) {
+        User user = find(id);
+        if (user == null) {
+            throw new EntityNotFoundException("User not found with id: " + id);
+        }
+        if (expectedVersion != null && !expectedVersion.equals(user.getVersion())) {
+            throw new OptimisticLockingFailureException("User " + id + " was modified: expected version "
+                    + expectedVersion + " but is at version " + user.getVersion());
+        }
+        return user;
+    }
+    
+    /**
+     * Check that no other user has an email
+     * Must be called under the write lock
+     * @param normalized The normalized email
+     * @param ownerId The ID of the user taking the email, or null for a new user
+     * @param email The email as given, for the error message
+     * @throws IllegalArgumentException if another user has the email
+     */
+    private void checkEmailFree(String normalized, Long ownerId, String email) {
+        User owner = usersByEmail.get(normalized);
+        if (owner != null && !owner.getId().equals(ownerId)) {
+            throw new IllegalArgumentException("Email already exists: " + email);
+        }
+    }
+    
+    /**
+     * Store a new user and index it
+     * @param user The user details
+     * @param id The ID of the new user
+     * @param version The version of the new user
+     * @return The stored user
+     */
+    private User insert(User user, long id, long version) {
+        User stored = new User(id, user.getName(), user.getSurname(), user.getEmail(), user.getNationality());
+        stored.setVersion(version);
+        usersById.put(id, stored);
+        ids.add(id);
+        usersByEmail.put(stored.getEmailNormalized(), stored);
+        index(idsByName, stored.getName(), id);
+        index(idsBySurname, stored.getSurname(), id);
+        index(idsByNationality, stored.getNationality(), id);
+        return stored;
+    }
+    
+    /**
+     * Replace a stored user, moving it only in the indexes whose value changed
+     * @param previous The stored user
+     * @param user The new state of the user, with the same ID
+     * @return The new state, now stored
+     */
+    private User replace(User previous, User user) {
+        long id = previous.getId();
+        usersById.put(id, user);
+        if (!previous.getEmailNormalized().equals(user.getEmailNormalized())) {
+            usersByEmail.remove(previous.getEmailNormalized());
+        }
+        usersByEmail.put(user.getEmailNormalized(), user);
+        if (!previous.getName().equals(user.getName())) {
+            unindex(idsByName, previous.getName(), id);
+            index(idsByName, user.getName(), id);
+        }
+        if (!previous.getSurname().equals(user.getSurname())) {
+            unindex(idsBySurname, previous.getSurname(), id);
+            index(idsBySurname, user.getSurname(), id);
+        }
+        if (!previous.getNationality().equals(user.getNationality())) {
+            unindex(idsByNationality, previous.getNationality(), id);
+            index(idsByNationality, user.getNationality(), id);
+        }
+        return user;
+    }
+    
+    /**
+     * Remove a stored user from the map and every index
+     * @param user The stored user
+     */
+    private void remove(User user) {
+        long id = user.getId();
+        usersById.remove(id);
+        ids.remove(id);
+        usersByEmail.remove(user.getEmailNormalized());
+        unindex(idsByName, user.getName(), id);
+        unindex(idsBySurname, user.getSurname(), id);
+        unindex(idsByNationality, user.getNationality(), id);
+    }
+    
+    /**
+     * Remove many stored users, compacting each index entry they were in once
+     * @param users The stored users
+     */
+    private void removeAll(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        LongIdSet removed = new LongIdSet();
+        for (User user : users) {
+            usersById.remove(user.getId());
+            usersByEmail.remove(user.getEmailNormalized());
+            removed.add(user.getId());
+        }
+        ids.removeAll(removed);
+        unindexAll(idsByName, users, User::getName);
+        unindexAll(idsBySurname, users, User::getSurname);
+        unindexAll(idsByNationality, users, User::getNationality);
+    }
+    
+    private static void index(Map<String, LongIdSet> index, String value, long id) {
+        index.computeIfAbsent(value, key -> new LongIdSet()).add(id);
+    }
+    
+    private static void unindex(Map<String, LongIdSet> index, String value, long id) {
+        LongIdSet set = index.get(value);
+        if (set != null && set.remove(id) && set.isEmpty()) {
+            index.remove(value);
+        }
+    }
+    
+    private static void unindexAll(Map<String, LongIdSet> index, List<User> users, Function<User, String> field) {
+        Map<String, LongIdSet> removedByValue = new HashMap<>();
+        for (User user : users) {
+            removedByValue.computeIfAbsent(field.apply(user), key -> new LongIdSet()).add(user.getId());
+        }
+        removedByValue.forEach((value, removed) -> {
+            LongIdSet set = index.get(value);
+            if (set != null) {
+                set.removeAll(removed);
+                if (set.isEmpty()) {
+                    index.remove(value);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Build the new state of an updated user, incrementing the version only if a field changed
+     * @param details The new field values
+     * @param previous The stored user
+     * @return The new state
+     */
+    private static User withVersion(User details, User previous) {
+        User user = new User(previous.getId(), details.getName(), details.getSurname(),
+                details.getEmail(), details.getNationality());
+        boolean changed = !Objects.equals(previous.getName(), user.getName())
+                || !Objects.equals(previous.getSurname(), user.getSurname())
+                || !Objects.equals(previous.getEmail(), user.getEmail())
+                || !Objects.equals(previous.getNationality(), user.getNationality());
+        user.setVersion(changed ? previous.getVersion() + 1 : previous.getVersion());
+        return user;
+    }
+    
+    private static User copy(User user) {
+        return UserChangeEvent.snapshot(user);
+    }
+    
+    private static List<User> copies(List<User> users) {
+        return users.stream().map(InMemoryUserService::copy).collect(Collectors.toList());
+    }
+    
+    /**
+     * Validate a requested page size, falling back to the default when absent
+     * @param limit The requested page size, may be null
+     * @return The page size to use
+     * @throws IllegalArgumentException if limit is out of range
+     */
+    private static int resolveLimit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_LIMIT;
+        }
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_LIMIT + ": " + limit);
+        }
+        return limit;
+    }
+    
+    private static long cursorOf(Long after) {
+        return after != null ? after : 0L;
+    }
+    
+    /**
+     * Copy users read with one lookahead row and cut them down to the page size
+     * @param users The users read, as stored
+     * @param pageLimit The page size
+     * @return The page
+     */
+    private static CursorPage<User> toPage(List<User> users, int pageLimit) {
+        List<User> page = copies(users.size() <= pageLimit ? users : users.subList(0, pageLimit));
+        String nextCursor = users.size() <= pageLimit ? null : String.valueOf(page.get(pageLimit - 1).getId());
+        return new CursorPage<>(page, nextCursor);
+    }
+    
+    /**
+     * Run bean validation on a user, as JPA does when persisting
+     * @param user The user to validate
+     * @throws ConstraintViolationException if the user is not valid
+     */
+    private void checkValid(User user) {
+        Set<ConstraintViolation<User>> violations = validator.validate(user);
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+    }
+    
+    /**
+     * Run bean validation on a user
+     * @param user The user to validate
+     * @return The validation messages joined together, or null if the user is valid
+     */
+    private String validate(User user) {
+        if (user == null) {
+            return "User is required";
+        }
+        Set<ConstraintViolation<User>> violations = validator.validate(user);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+}
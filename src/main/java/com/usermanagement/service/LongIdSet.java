@@ -0,0 +1,112 @@
+package com.usermanagement.service;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of primitive long IDs, backed by a growable array
+ * IDs are handed out in increasing order, so adding one is almost always an append, and
+ * pages in ID order are read by binary searching the cursor and walking the array.
+ * Not thread-safe: writers must be serialized by the caller, and concurrent readers must
+ * validate what they read, as with {@link LongObjectMap}.
+ */
+final class LongIdSet {
+    
+    private static final int MIN_CAPACITY = 4;
+    
+    private long[] ids = new long[MIN_CAPACITY];
+    private int size;
+    
+    /**
+     * Add an ID
+     * @param id The ID
+     * @return true if the ID was added, false if it was already present
+     */
+    boolean add(long id) {
+        int index = size == 0 || ids[size - 1] < id ? size : Arrays.binarySearch(ids, 0, size, id);
+        if (index >= 0 && index < size) {
+            return false;
+        }
+        int insertAt = index >= 0 ? index : -index - 1;
+        long[] target = size == ids.length ? Arrays.copyOf(ids, size * 2) : ids;
+        System.arraycopy(ids, insertAt, target, insertAt + 1, size - insertAt);
+        target[insertAt] = id;
+        ids = target;
+        size++;
+        return true;
+    }
+    
+    /**
+     * Remove an ID
+     * @param id The ID
+     * @return true if the ID was removed, false if it was absent
+     */
+    boolean remove(long id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+        size--;
+        return true;
+    }
+    
+    /**
+     * Remove many IDs in a single pass over the set
+     * @param removed The IDs to remove
+     */
+    void removeAll(LongIdSet removed) {
+        int kept = 0;
+        int next = 0;
+        for (int i = 0; i < size; i++) {
+            long id = ids[i];
+            while (next < removed.size && removed.ids[next] < id) {
+                next++;
+            }
+            if (next < removed.size && removed.ids[next] == id) {
+                continue;
+            }
+            ids[kept++] = id;
+        }
+        size = kept;
+        if (size < ids.length / 4 && ids.length > MIN_CAPACITY) {
+            ids = Arrays.copyOf(ids, Math.max(MIN_CAPACITY, size * 2));
+        }
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Get the ID at a position
+     * @param index The position, from 0 to size - 1
+     * @return The ID
+     */
+    long get(int index) {
+        return ids[index];
+    }
+    
+    /**
+     * Find the position of the first ID greater than the given one
+     * @param id The exclusive lower bound
+     * @return The position, size if every ID is smaller or equal
+     */
+    int indexAfter(long id) {
+        int index = Arrays.binarySearch(ids, 0, Math.min(size, ids.length), id);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+    
+    /**
+     * Find the position of the last ID smaller than the given one
+     * @param id The exclusive upper bound
+     * @return The position, -1 if every ID is greater or equal
+     */
+    int indexBefore(long id) {
+        int index = Arrays.binarySearch(ids, 0, Math.min(size, ids.length), id);
+        return index >= 0 ? index - 1 : -index - 2;
+    }
+}
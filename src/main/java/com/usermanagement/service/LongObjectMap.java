@@ -0,0 +1,153 @@
+package com.usermanagement.service;
+
+/**
+ * Open addressing hash map keyed by primitive longs, with linear probing
+ * Keys are stored unboxed in a long array next to the value array, so a lookup touches two
+ * arrays and no entry objects. Removal shifts the following entries back instead of leaving
+ * tombstones, so probe sequences never grow with churn.
+ * Not thread-safe: writers must be serialized by the caller. A read racing a write never loops
+ * forever, since probing is bounded by the capacity, but may return a wrong result or throw, so
+ * concurrent readers must validate what they read (see {@link InMemoryUserService}).
+ * @param <V> The type of the values
+ */
+final class LongObjectMap<V> {
+    
+    private static final int MIN_CAPACITY = 16;
+    
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    
+    /**
+     * Constructs an empty map
+     */
+    LongObjectMap() {
+        this.keys = new long[MIN_CAPACITY];
+        this.values = new Object[MIN_CAPACITY];
+    }
+    
+    /**
+     * Get the value of a key
+     * @param key The key
+     * @return The value, or null if the key is absent
+     */
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            Object value = values[i];
+            if (value == null) {
+                return null;
+            }
+            if (keys[i] == key) {
+                return (V) value;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Associate a value with a key
+     * @param key The key
+     * @param value The value, not null
+     * @return The previous value, or null if the key was absent
+     */
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > keys.length / 2) {
+            resize(keys.length * 2);
+        }
+        return null;
+    }
+    
+    /**
+     * Remove a key
+     * @param key The key
+     * @return The value the key had, or null if it was absent
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                shiftBack(i, mask);
+                size--;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    /**
+     * Fill the hole left by a removed entry with the entries after it that probed past it
+     * @param hole The slot of the removed entry
+     * @param mask The capacity minus one
+     */
+    private void shiftBack(int hole, int mask) {
+        int i = (hole + 1) & mask;
+        while (values[i] != null) {
+            int home = slot(keys[i], mask);
+            // Move the entry unless its home slot lies cyclically in (hole, i]
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+        values[hole] = null;
+    }
+    
+    /**
+     * Rehash every entry into new arrays of the given capacity
+     * @param capacity The new capacity, a power of two
+     */
+    private void resize(int capacity) {
+        long[] newKeys = new long[capacity];
+        Object[] newValues = new Object[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < keys.length; j++) {
+            if (values[j] != null) {
+                int i = slot(keys[j], mask);
+                while (newValues[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                newKeys[i] = keys[j];
+                newValues[i] = values[j];
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+    
+    /**
+     * Get the home slot of a key: the Fibonacci hash of the key, so sequential IDs spread out
+     * @param key The key
+     * @param mask The capacity minus one
+     * @return The slot
+     */
+    private static int slot(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
@@ -0,0 +1,104 @@
+package com.usermanagement.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.usermanagement.model.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+
+/**
+ * Users written within the read-your-writes window, by ID and by email
+ * With replica routing enabled, a lookup of a user written less than the window ago is read
+ * from the primary: the replica may not have applied the write yet, and the user cache would
+ * otherwise keep the stale copy. Both the emails before and after a change are recorded, so
+ * neither the old nor the new address is looked up on a stale replica. The time of the last
+ * write is kept too, for listings tagged with the state of all users (see
+ * {@link UserChangeTracker}): such a tag may be ahead of the replica until the window has
+ * passed, so listings read from the replica go untagged meanwhile.
+ */
+@Component
+@Profile("!memory")
+@ConditionalOnProperty(name = "user.replica.enabled", havingValue = "true")
+public class RecentUserWrites {
+    
+    private final Cache<Long, Boolean> ids;
+    private final Cache<String, Boolean> emails;
+    private final long windowNanos;
+    private volatile long lastWriteExpiresAt = System.nanoTime();
+    
+    /**
+     * Constructs a new record of recent writes
+     * @param window How long after a write its user is read from the primary, at least the replication lag
+     */
+    public RecentUserWrites(@Value("${user.replica.read-your-writes-window:5s}") Duration window) {
+        this.ids = Caffeine.newBuilder().expireAfterWrite(window).build();
+        this.emails = Caffeine.newBuilder().expireAfterWrite(window).build();
+        this.windowNanos = window.toNanos();
+    }
+    
+    /**
+     * Record a user change
+     * Recorded before the commit, so no lookup can reach the replica between the commit and
+     * the recording, while the user cache is being invalidated
+     * @param event The change
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onUserChange(UserChangeEvent event) {
+        ids.put(event.getUserId(), Boolean.TRUE);
+        lastWriteExpiresAt = System.nanoTime() + windowNanos;
+        record(event.getPrevious());
+        record(event.getCurrent());
+    }
+    
+    /**
+     * Check whether a user was written within the window
+     * @param id The ID of the user
+     * @return true if the user must be read from the primary
+     */
+    public boolean containsId(Long id) {
+        return ids.getIfPresent(id) != null;
+    }
+    
+    /**
+     * Check whether a user with the given email was written within the window
+     * @param email The email, in any case
+     * @return true if the user must be read from the primary
+     */
+    public boolean containsEmail(String email) {
+        String normalized = User.normalizeEmail(email);
+        return normalized != null && emails.getIfPresent(normalized) != null;
+    }
+    
+    /**
+     * Check whether any user was written within the window
+     * @return true if the replica may not have applied every committed write yet
+     */
+    public boolean containsAny() {
+        return System.nanoTime() - lastWriteExpiresAt < 0;
+    }
+    
+    /**
+     * Record a chunk of imported users, before the commit like other changes
+     * @param event The import
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onUsersImported(UsersImportedEvent event) {
+        lastWriteExpiresAt = System.nanoTime() + windowNanos;
+        for (User user : event.getUsers()) {
+            ids.put(user.getId(), Boolean.TRUE);
+            record(user);
+        }
+    }
+    
+    private void record(User user) {
+        if (user != null && user.getEmailNormalized() != null) {
+            emails.put(user.getEmailNormalized(), Boolean.TRUE);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.usermanagement.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.usermanagement.model.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of users, addressable by ID and by email
+ * Emails are matched case-insensitively, through their normalized form. Entries expire
+ * after a fixed time, and the cache is size-bounded: once full, Caffeine evicts the entries
+ * it estimates least likely to be used again, by recent access frequency (W-TinyLFU).
+ * Cached reads return the cached instance without touching the database.
+ */
+@Component
+public class UserCache {
+    
+    private final Cache<Long, User> usersById;
+    private final Cache<String, Long> idsByEmail;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    
+    /**
+     * Incremented on every invalidation. A load that raced with an invalidation
+     * may have read stale data and is not cached.
+     */
+    private long generation;
+    
+    /**
+     * Constructs a new cache
+     * @param maximumSize Maximum number of users held
+     * @param ttl Time after which a cached user is reloaded
+     */
+    public UserCache(@Value("${user.cache.maximum-size:10000}") long maximumSize,
+                     @Value("${user.cache.ttl:10m}") Duration ttl) {
+        this.idsByEmail = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.usersById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .executor(Runnable::run)
+                .removalListener((Long id, User user, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        evictions.increment();
+                        if (user != null) {
+                            idsByEmail.asMap().remove(user.getEmailNormalized(), id);
+                        }
+                    }
+                })
+                .build();
+    }
+    
+    /**
+     * Get a user by ID, loading and caching it on a miss
+     * @param id The ID to search for
+     * @param loader Loads the user from the database on a miss
+     * @return Optional containing the user if found
+     */
+    public Optional<User> getById(Long id, Function<Long, Optional<User>> loader) {
+        User cached = usersById.getIfPresent(id);
+        if (cached != null) {
+            hits.increment();
+            return Optional.of(cached);
+        }
+        misses.increment();
+        return load(id, loader);
+    }
+    
+    /**
+     * Get a cached user by ID without loading it on a miss
+     * @param id The ID to search for
+     * @return Optional containing the user if it is cached
+     */
+    public Optional<User> peekById(Long id) {
+        User cached = usersById.getIfPresent(id);
+        if (cached != null) {
+            hits.increment();
+        }
+        return Optional.ofNullable(cached);
+    }
+    
+    /**
+     * Get a user by email, loading and caching it on a miss
+     * @param email The email to search for, in any case
+     * @param loader Loads the user by normalized email from the database on a miss
+     * @return Optional containing the user if found
+     */
+    public Optional<User> getByEmail(String email, Function<String, Optional<User>> loader) {
+        String key = User.normalizeEmail(email);
+        Long id = idsByEmail.getIfPresent(key);
+        if (id != null) {
+            User cached = usersById.getIfPresent(id);
+            // The email index may outlive a change of the user's email
+            if (cached != null && key.equals(cached.getEmailNormalized())) {
+                hits.increment();
+                return Optional.of(cached);
+            }
+        }
+        misses.increment();
+        return load(key, loader);
+    }
+    
+    /**
+     * Remove a user from the cache under its ID and the given emails
+     * Must be called after the change to the user is committed
+     * @param id The ID of the changed user
+     * @param emails The emails the user was or is cached under
+     */
+    public void invalidate(Long id, String... emails) {
+        synchronized (this) {
+            generation++;
+            usersById.invalidate(id);
+            for (String email : emails) {
+                if (email != null) {
+                    idsByEmail.invalidate(User.normalizeEmail(email));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Get the cache counters
+     * @return Map with the hit, miss and eviction counts and the current size
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("size", usersById.estimatedSize());
+        return stats;
+    }
+    
+    /**
+     * Load a user and cache it unless it was invalidated while loading
+     * @param key The ID or email to load by
+     * @param loader Loads the user from the database
+     * @param <K> The type of the key
+     * @return Optional containing the user if found
+     */
+    private <K> Optional<User> load(K key, Function<K, Optional<User>> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            loadGeneration = generation;
+        }
+        Optional<User> loaded = loader.apply(key);
+        loaded.ifPresent(user -> {
+            synchronized (this) {
+                if (generation == loadGeneration) {
+                    usersById.put(user.getId(), user);
+                    idsByEmail.put(user.getEmailNormalized(), user.getId());
+                }
+            }
+        });
+        return loaded;
+    }
+}
@@ -0,0 +1,94 @@
+package com.usermanagement.service;
+
+import com.usermanagement.model.User;
+
+/**
+ * Application event published by the user service for every user it creates, updates or deletes
+ * Listeners receive it once the change is committed. The users carried by the event are
+ * snapshots and are not modified afterwards.
+ */
+public class UserChangeEvent {
+    
+    /**
+     * Kinds of change
+     */
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+    
+    private final Type type;
+    private final Long userId;
+    private final User previous;
+    private final User current;
+    
+    /**
+     * Constructs a new change event
+     * @param type The kind of change
+     * @param userId The ID of the changed user
+     * @param previous The user before the change, null for creations
+     * @param current The user after the change, null for deletions
+     */
+    public UserChangeEvent(Type type, Long userId, User previous, User current) {
+        this.type = type;
+        this.userId = userId;
+        this.previous = previous;
+        this.current = current;
+    }
+    
+    /**
+     * Create the event for a created user
+     * @param user The created user
+     * @return The event
+     */
+    public static UserChangeEvent created(User user) {
+        return new UserChangeEvent(Type.CREATED, user.getId(), null, snapshot(user));
+    }
+    
+    /**
+     * Create the event for an updated user
+     * @param previous Snapshot of the user before the update
+     * @param user The updated user
+     * @return The event
+     */
+    public static UserChangeEvent updated(User previous, User user) {
+        return new UserChangeEvent(Type.UPDATED, user.getId(), previous, snapshot(user));
+    }
+    
+    /**
+     * Create the event for a deleted user
+     * @param user The deleted user
+     * @return The event
+     */
+    public static UserChangeEvent deleted(User user) {
+        return new UserChangeEvent(Type.DELETED, user.getId(), snapshot(user), null);
+    }
+    
+    /**
+     * Copy a user so later changes to the entity do not leak into an event
+     * @param user The user to copy
+     * @return The copy
+     */
+    public static User snapshot(User user) {
+        User copy = new User(user.getId(), user.getName(), user.getSurname(), user.getEmail(), user.getNationality());
+        copy.setVersion(user.getVersion());
+        return copy;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public Long getUserId() {
+        return userId;
+    }
+    
+    public User getPrevious() {
+        return previous;
+    }
+    
+    public User getCurrent() {
+        return current;
+    }
+}
@@ -0,0 +1,45 @@
+package com.usermanagement.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks whether any user changed, to tag user listings for conditional requests
+ * The tag changes after every committed create, update, delete and import, so a listing can be
+ * answered with 304 Not Modified without running its query. It starts from a per-process
+ * epoch so tags handed out before a restart never match afterwards.
+ */
+@Component
+public class UserChangeTracker {
+    
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    private final AtomicLong changes = new AtomicLong();
+    
+    /**
+     * Get the tag of the current state of the users
+     * @return A tag that differs from every earlier one once a user changed
+     */
+    public String getTag() {
+        return epoch + "-" + changes.get();
+    }
+    
+    /**
+     * Record a committed user change
+     * @param event The change
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChange(UserChangeEvent event) {
+        changes.incrementAndGet();
+    }
+    
+    /**
+     * Record a committed chunk of imported users
+     * @param event The import
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUsersImported(UsersImportedEvent event) {
+        changes.incrementAndGet();
+    }
+}
@@ -0,0 +1,110 @@
+package com.usermanagement.service;
+
+import com.usermanagement.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory user counts per nationality, used for dashboard facets
+ * The counters are loaded with a single GROUP BY query at startup and then adjusted from
+ * {@link UserChangeEvent}s as users are created, updated and deleted, and from
+ * {@link UsersImportedEvent}s as they are imported, so reading them never queries the database.
+ */
+@Component
+public class UserFacets {
+    
+    private static final Logger logger = LoggerFactory.getLogger(UserFacets.class);
+    
+    private static final Comparator<Map.Entry<String, Long>> BY_COUNT_DESC =
+            Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
+    
+    private final UserService userService;
+    private volatile ConcurrentMap<String, Long> nationalityCounts = new ConcurrentHashMap<>();
+    
+    @Autowired
+    public UserFacets(UserService userService) {
+        this.userService = userService;
+    }
+    
+    /**
+     * Get the number of users per nationality
+     * @return Map of nationality to number of users, largest count first
+     */
+    public Map<String, Long> getNationalityCounts() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(nationalityCounts.entrySet());
+        entries.sort(BY_COUNT_DESC);
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries) {
+            counts.put(entry.getKey(), entry.getValue());
+        }
+        return counts;
+    }
+    
+    /**
+     * Load the counters from the database once the application has started
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        ConcurrentMap<String, Long> rebuilt = new ConcurrentHashMap<>(userService.countUsersByNationality());
+        nationalityCounts = rebuilt;
+        logger.info("Nationality facets loaded for {} nationalities", rebuilt.size());
+    }
+    
+    /**
+     * Count a committed chunk of imported users
+     * @param event The import
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onUsersImported(UsersImportedEvent event) {
+        for (User user : event.getUsers()) {
+            String nationality = nationalityOf(user);
+            if (nationality != null) {
+                adjust(nationality, 1);
+            }
+        }
+    }
+    
+    /**
+     * Apply a committed user change to the counters
+     * @param event The change
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onUserChange(UserChangeEvent event) {
+        String previous = nationalityOf(event.getPrevious());
+        String current = nationalityOf(event.getCurrent());
+        if (Objects.equals(previous, current)) {
+            return;
+        }
+        if (previous != null) {
+            adjust(previous, -1);
+        }
+        if (current != null) {
+            adjust(current, 1);
+        }
+    }
+    
+    private void adjust(String nationality, long delta) {
+        nationalityCounts.compute(nationality, (key, count) -> {
+            long adjusted = (count == null ? 0 : count) + delta;
+            return adjusted > 0 ? adjusted : null;
+        });
+    }
+    
+    private static String nationalityOf(User user) {
+        return user == null ? null : user.getNationality();
+    }
+}
@@ -0,0 +1,124 @@
+package com.usermanagement.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the records of an import file through a file channel, keeping track of their positions
+ * A record ends at a line break, except inside a double-quoted CSV field, where line breaks are
+ * part of the value. Blank lines are skipped and a trailing carriage return is dropped. The
+ * position after each record is where reading resumes, so an import can restart from the last
+ * record it committed. Records are capped in length, so a file without line breaks, or with an
+ * unterminated quote, fails instead of being read into memory whole.
+ */
+final class UserImportReader implements Closeable {
+    
+    private static final int BUFFER_SIZE = 1 << 20;
+    
+    private final FileChannel channel;
+    private final boolean quotedLineBreaks;
+    private final int maxRecordLength;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private byte[] record;
+    private long position;
+    
+    /**
+     * Opens a file for reading from its beginning
+     * @param path The file
+     * @param quotedLineBreaks Whether line breaks inside double quotes belong to the record, as in CSV
+     * @param maxRecordLength Most bytes a record may have
+     * @throws IOException if the file cannot be opened
+     */
+    UserImportReader(Path path, boolean quotedLineBreaks, int maxRecordLength) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.quotedLineBreaks = quotedLineBreaks;
+        this.maxRecordLength = maxRecordLength;
+        this.record = new byte[Math.min(256, maxRecordLength + 1)];
+        buffer.limit(0);
+    }
+    
+    /**
+     * Continue reading at the given position, which must be the position after a record
+     * @param position The position in the file
+     * @throws IOException if the file cannot be read
+     */
+    void seek(long position) throws IOException {
+        channel.position(position);
+        buffer.limit(0);
+        this.position = position;
+    }
+    
+    /**
+     * Get the position after the last record read
+     * @return The position in the file
+     */
+    long getPosition() {
+        return position;
+    }
+    
+    /**
+     * Read the next record
+     * @return The record, or null at the end of the file
+     * @throws IOException if the file cannot be read, or the record is longer than the maximum
+     */
+    String next() throws IOException {
+        int length = 0;
+        long start = position;
+        boolean quoted = false;
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                buffer.clear();
+                int read = channel.read(buffer);
+                buffer.flip();
+                if (read <= 0) {
+                    return length == 0 ? null : decode(length, start, quoted);
+                }
+            }
+            byte b = buffer.get();
+            position++;
+            if (b == '\n' && !quoted) {
+                if (length > 0 && record[length - 1] == '\r') {
+                    length--;
+                }
+                if (length > 0) {
+                    return decode(length, start, quoted);
+                }
+                start = position;
+                continue;
+            }
+            if (b == '"' && quotedLineBreaks) {
+                quoted = !quoted;
+            }
+            if (length == record.length) {
+                if (length > maxRecordLength) {
+                    throw tooLong(start, quoted);
+                }
+                record = Arrays.copyOf(record, (int) Math.min((long) length * 2, maxRecordLength + 1L));
+            }
+            record[length++] = b;
+        }
+    }
+    
+    private String decode(int length, long start, boolean quoted) throws IOException {
+        if (length > maxRecordLength) {
+            throw tooLong(start, quoted);
+        }
+        return new String(record, 0, length, StandardCharsets.UTF_8);
+    }
+    
+    private IOException tooLong(long start, boolean quoted) {
+        return new IOException("Record at byte " + start + " is longer than " + maxRecordLength + " bytes"
+                + (quoted ? ", within a quoted field never closed" : ""));
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
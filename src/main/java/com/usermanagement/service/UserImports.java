@@ -0,0 +1,553 @@
+package com.usermanagement.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.usermanagement.model.User;
+import com.usermanagement.model.UserImport;
+import com.usermanagement.repository.NationalityCodes;
+import com.usermanagement.repository.ReplicaRouting;
+import com.usermanagement.repository.UserImportRepository;
+import com.usermanagement.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.PersistenceException;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk imports of user files in CSV or NDJSON, run in the background one at a time
+ * An uploaded file is stored in the import directory and read in chunks of records through a
+ * file channel. The records of a chunk are parsed and validated in parallel on a pool with a
+ * thread per core, while the previous chunk is written. Each chunk is written in one
+ * transaction: the first record of each email in the chunk is kept, emails already taken in the
+ * database are looked up in bulk, the remaining users are inserted in JDBC batches, and the
+ * import's position and counts are updated. Since every earlier chunk is committed by then, the
+ * bulk lookup also catches emails repeated across chunks, without holding the file's emails in
+ * memory. Duplicates and invalid records are skipped and counted, never fatal.
+ * A failed import, or one interrupted by a shutdown, is resumed from its last committed chunk.
+ * The users created by a chunk are published together, as one {@link UsersImportedEvent}.
+ */
+@Component
+@Profile("!memory")
+public class UserImports implements SmartInitializingSingleton, DisposableBean {
+    
+    private static final Logger logger = LoggerFactory.getLogger(UserImports.class);
+    
+    /**
+     * Number of entities written per flush, matching hibernate.jdbc.batch_size
+     */
+    private static final int BATCH_FLUSH_SIZE = 50;
+    
+    /**
+     * Largest number of emails bound to a single IN clause
+     */
+    private static final int IN_CLAUSE_CHUNK_SIZE = 1000;
+    
+    /**
+     * Attempts to write a chunk whose emails are taken by concurrent writes between the bulk
+     * lookup and the insert
+     */
+    private static final int WRITE_ATTEMPTS = 2;
+    
+    private static final List<String> CSV_COLUMNS = Arrays.asList("name", "surname", "email", "nationality");
+    
+    private final UserImportRepository importRepository;
+    private final UserRepository userRepository;
+    private final EntityManager entityManager;
+    private final Validator validator;
+    private final NationalityCodes nationalityCodes;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final int chunkSize;
+    private final int parallelism;
+    private final int maxRecordLength;
+    private final ExecutorService runner;
+    private final ExecutorService validators;
+    
+    /**
+     * Constructs a new import service
+     * @param importRepository Repository of the imports and their progress
+     * @param userRepository Repository of the users, to look up taken emails
+     * @param entityManager Entity manager the users are inserted with
+     * @param validator Validator of the imported users
+     * @param nationalityCodes The dictionary the users table encodes nationalities with
+     * @param eventPublisher Publisher of the events of the created users
+     * @param transactionManager Manager of the transactions chunks are written in
+     * @param objectMapper Mapper reading the records of NDJSON files
+     * @param directory Directory uploaded files are stored in until imported
+     * @param chunkSize Records per chunk, and per transaction
+     * @param parallelism Threads validating records, 0 for one per core
+     * @param maxRecordLength Most bytes a record may have; a longer one fails the import
+     */
+    public UserImports(UserImportRepository importRepository, UserRepository userRepository,
+                       EntityManager entityManager, Validator validator, NationalityCodes nationalityCodes,
+                       ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager,
+                       ObjectMapper objectMapper,
+                       @Value("${user.import.directory:imports}") String directory,
+                       @Value("${user.import.chunk-size:1000}") int chunkSize,
+                       @Value("${user.import.parallelism:0}") int parallelism,
+                       @Value("${user.import.max-record-length:65536}") int maxRecordLength) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Import chunk size must be positive: " + chunkSize);
+        }
+        if (maxRecordLength < 1) {
+            throw new IllegalArgumentException("Import maximum record length must be positive: " + maxRecordLength);
+        }
+        this.importRepository = importRepository;
+        this.userRepository = userRepository;
+        this.entityManager = entityManager;
+        this.validator = validator;
+        this.nationalityCodes = nationalityCodes;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.directory = Paths.get(directory);
+        this.chunkSize = chunkSize;
+        this.maxRecordLength = maxRecordLength;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.runner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threads = new AtomicInteger();
+        this.validators = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "user-import-validation-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Mark the imports left queued or running by a previous process as failed, so they can be resumed
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        List<UserImport> interrupted = ReplicaRouting.onPrimary(() -> importRepository.findByStatusIn(
+                Arrays.asList(UserImport.Status.QUEUED, UserImport.Status.RUNNING)));
+        for (UserImport job : interrupted) {
+            job.setStatus(UserImport.Status.FAILED, "Interrupted by a shutdown");
+            importRepository.save(job);
+            logger.warn("User import {} was interrupted at record {}, resume it to continue", job.getId(), job.getRecords());
+        }
+    }
+    
+    /**
+     * Store a file and queue its import
+     * @param content The content of the file, read until its end
+     * @param format The format of the file
+     * @return The queued import
+     * @throws IOException if the file cannot be stored
+     */
+    public UserImport start(InputStream content, UserImport.Format format) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(UUID.randomUUID() + "." + format.name().toLowerCase(Locale.ROOT));
+        try {
+            long size = Files.copy(content, file);
+            UserImport job = importRepository.save(new UserImport(format, file.toString(), size));
+            logger.info("Queued user import {} of {} ({} bytes)", job.getId(), file, size);
+            runner.execute(() -> run(job.getId()));
+            return job;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+    
+    /**
+     * Get an import and its progress as of its last committed chunk
+     * Read from the primary, since progress is polled while the import runs
+     * @param id The ID of the import
+     * @return Optional containing the import if found
+     */
+    public Optional<UserImport> get(Long id) {
+        return ReplicaRouting.onPrimary(() -> importRepository.findById(id));
+    }
+    
+    /**
+     * Queue a failed import again, to continue after its last committed chunk
+     * @param id The ID of the import
+     * @return The queued import
+     * @throws EntityNotFoundException if the import is not found
+     * @throws IllegalStateException if the import has not failed
+     */
+    public synchronized UserImport resume(Long id) {
+        UserImport job = get(id).orElseThrow(() -> new EntityNotFoundException("Import not found with id: " + id));
+        if (job.getStatus() != UserImport.Status.FAILED) {
+            throw new IllegalStateException("Import " + id + " is " + job.getStatus() + ", only failed imports can be resumed");
+        }
+        job.setStatus(UserImport.Status.QUEUED, null);
+        UserImport queued = importRepository.save(job);
+        logger.info("Resuming user import {} at record {}", id, queued.getRecords());
+        runner.execute(() -> run(id));
+        return queued;
+    }
+    
+    /**
+     * Run an import from its position to the end of its file
+     * The next chunk is read and validated while the current one is written
+     * @param id The ID of the import
+     */
+    private void run(Long id) {
+        UserImport job = get(id).orElse(null);
+        if (job == null || job.getStatus() != UserImport.Status.QUEUED) {
+            return;
+        }
+        job.setStatus(UserImport.Status.RUNNING, null);
+        job = importRepository.save(job);
+        long start = System.nanoTime();
+        long startRecords = job.getRecords();
+        CompletableFuture<ValidatedChunk> pending = null;
+        try (UserImportReader reader = new UserImportReader(Paths.get(job.getPath()),
+                job.getFormat() == UserImport.Format.CSV, maxRecordLength)) {
+            RecordParser parser = parserFor(job.getFormat(), reader);
+            if (job.getPosition() > reader.getPosition()) {
+                reader.seek(job.getPosition());
+            }
+            pending = validate(readChunk(reader, job.getRecords()), parser);
+            while (pending != null) {
+                ValidatedChunk chunk = pending.get();
+                pending = validate(readChunk(reader, chunk.firstRecord - 1 + chunk.records), parser);
+                job = write(id, chunk);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            job.setStatus(UserImport.Status.COMPLETED, null);
+            job = importRepository.save(job);
+            logger.info("Completed user import {}: {} records in {} ms, {} imported, {} duplicates, {} invalid",
+                    id, job.getRecords() - startRecords, (System.nanoTime() - start) / 1_000_000,
+                    job.getImported(), job.getDuplicates(), job.getInvalid());
+        } catch (InterruptedException e) {
+            fail(id, "Interrupted by a shutdown", null);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            fail(id, e.getCause().getMessage(), e.getCause());
+        } catch (IOException | RuntimeException e) {
+            fail(id, e.getMessage(), e);
+        } finally {
+            if (pending != null) {
+                pending.cancel(false);
+            }
+        }
+    }
+    
+    private void fail(Long id, String error, Throwable cause) {
+        logger.error("User import {} failed, resume it to continue after its last committed chunk", id, cause);
+        try {
+            get(id).ifPresent(job -> {
+                job.setStatus(UserImport.Status.FAILED, error == null ? "Import failed" : error);
+                importRepository.save(job);
+            });
+        } catch (RuntimeException e) {
+            logger.error("Cannot record the failure of user import {}", id, e);
+        }
+    }
+    
+    /**
+     * Read the next chunk of records
+     * @param reader The reader of the file
+     * @param recordsBefore Records of the file before the chunk
+     * @return The chunk, or null at the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    private Chunk readChunk(UserImportReader reader, long recordsBefore) throws IOException {
+        List<String> records = new ArrayList<>(chunkSize);
+        String record;
+        while (records.size() < chunkSize && (record = reader.next()) != null) {
+            records.add(record);
+        }
+        return records.isEmpty() ? null : new Chunk(records, recordsBefore + 1, reader.getPosition());
+    }
+    
+    /**
+     * Parse and validate the records of a chunk in parallel, one slice per validation thread
+     * @param chunk The chunk, may be null
+     * @param parser The parser of the file's records
+     * @return The validated chunk, once every slice is done, or null if chunk is null
+     */
+    private CompletableFuture<ValidatedChunk> validate(Chunk chunk, RecordParser parser) {
+        if (chunk == null) {
+            return null;
+        }
+        int size = chunk.records.size();
+        int sliceSize = (size + parallelism - 1) / parallelism;
+        List<CompletableFuture<Object[]>> slices = new ArrayList<>();
+        for (int from = 0; from < size; from += sliceSize) {
+            int sliceFrom = from;
+            int sliceTo = Math.min(size, from + sliceSize);
+            slices.add(CompletableFuture.supplyAsync(() -> {
+                Object[] results = new Object[sliceTo - sliceFrom];
+                for (int i = sliceFrom; i < sliceTo; i++) {
+                    results[i - sliceFrom] = parseAndValidate(chunk.records.get(i), chunk.firstRecord + i, parser);
+                }
+                return results;
+            }, validators));
+        }
+        return CompletableFuture.allOf(slices.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            ValidatedChunk validated = new ValidatedChunk(chunk.firstRecord, size, chunk.endPosition);
+            for (CompletableFuture<Object[]> slice : slices) {
+                for (Object result : slice.join()) {
+                    if (result instanceof User) {
+                        validated.users.add((User) result);
+                    } else {
+                        validated.invalid++;
+                        validated.lastRejection = (String) result;
+                    }
+                }
+            }
+            return validated;
+        });
+    }
+    
+    /**
+     * Parse and validate a record
+     * @param record The record
+     * @param number The number of the record in the file, from 1, for rejection messages
+     * @param parser The parser of the file's records
+     * @return The user, or the reason the record is rejected
+     */
+    private Object parseAndValidate(String record, long number, RecordParser parser) {
+        User user;
+        try {
+            user = parser.parse(record);
+        } catch (IOException | RuntimeException e) {
+            return "Record " + number + ": cannot be parsed: " + e.getMessage();
+        }
+        Set<ConstraintViolation<User>> violations = validator.validate(user);
+        if (!violations.isEmpty()) {
+            return "Record " + number + ": " + violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+        }
+        return user;
+    }
+    
+    /**
+     * Write a validated chunk and advance the import past it, in one transaction
+     * Retried once if an email is taken by a concurrent write after the bulk lookup
+     * @param id The ID of the import
+     * @param chunk The chunk
+     * @return The import as committed
+     */
+    private UserImport write(Long id, ValidatedChunk chunk) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> writeChunk(id, chunk));
+            } catch (DataIntegrityViolationException | PersistenceException e) {
+                if (attempt == WRITE_ATTEMPTS) {
+                    throw e;
+                }
+                logger.debug("Retrying records {} of user import {} after a concurrent write", chunk.firstRecord, id, e);
+            }
+        }
+    }
+    
+    private UserImport writeChunk(Long id, ValidatedChunk chunk) {
+        List<User> candidates = new ArrayList<>(chunk.users.size());
+        Set<String> emails = new HashSet<>();
+        for (User user : chunk.users) {
+            if (emails.add(user.getEmailNormalized())) {
+                candidates.add(user);
+            }
+        }
+        Set<String> takenEmails = new HashSet<>();
+        List<String> emailList = new ArrayList<>(emails);
+        for (int from = 0; from < emailList.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+            takenEmails.addAll(userRepository.findExistingEmails(
+                    emailList.subList(from, Math.min(emailList.size(), from + IN_CLAUSE_CHUNK_SIZE))));
+        }
+        
+        List<User> created = new ArrayList<>();
+        for (User candidate : candidates) {
+            if (takenEmails.contains(candidate.getEmailNormalized())) {
+                continue;
+            }
+            // A retried chunk must not reuse the IDs given by the rolled back attempt
+            User user = new User(null, candidate.getName(), candidate.getSurname(), candidate.getEmail(), candidate.getNationality());
+            nationalityCodes.register(user.getNationality());
+            entityManager.persist(user);
+            created.add(UserChangeEvent.snapshot(user));
+            if (created.size() % BATCH_FLUSH_SIZE == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        if (!created.isEmpty()) {
+            eventPublisher.publishEvent(new UsersImportedEvent(id, created));
+        }
+        
+        int imported = created.size();
+        UserImport job = entityManager.find(UserImport.class, id);
+        job.advance(chunk.endPosition, chunk.records, imported, chunk.users.size() - imported,
+                chunk.invalid, chunk.lastRejection);
+        return job;
+    }
+    
+    /**
+     * Get the parser of the records of a file, reading the header row of a CSV file
+     * @param format The format of the file
+     * @param reader The reader of the file, at its beginning
+     * @return The parser
+     * @throws IOException if the file cannot be read, or a CSV file lacks a required column
+     */
+    private RecordParser parserFor(UserImport.Format format, UserImportReader reader) throws IOException {
+        if (format == UserImport.Format.NDJSON) {
+            return record -> {
+                JsonNode node = objectMapper.readTree(record);
+                if (!node.isObject()) {
+                    throw new IOException("not a JSON object");
+                }
+                return new User(null, text(node, "name"), text(node, "surname"), text(node, "email"), text(node, "nationality"));
+            };
+        }
+        String header = reader.next();
+        List<String> columns = header == null ? new ArrayList<>() : parseCsv(header).stream()
+                .map(column -> column == null ? "" : column.trim().toLowerCase(Locale.ROOT))
+                .collect(Collectors.toList());
+        int[] indexes = new int[CSV_COLUMNS.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = columns.indexOf(CSV_COLUMNS.get(i));
+            if (indexes[i] < 0) {
+                throw new IOException("CSV header must name the columns " + CSV_COLUMNS + ", got " + columns);
+            }
+        }
+        return record -> {
+            List<String> fields = parseCsv(record);
+            String[] values = new String[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                values[i] = indexes[i] < fields.size() ? fields.get(indexes[i]) : null;
+            }
+            return new User(null, values[0], values[1], values[2], values[3]);
+        };
+    }
+    
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+    
+    /**
+     * Split a CSV record into its fields, as written by the user export
+     * Fields containing separators, quotes or line breaks are double-quoted, with quotes doubled;
+     * empty fields are null
+     * @param record The record
+     * @return The fields
+     * @throws IllegalArgumentException if a quoted field is not closed
+     */
+    static List<String> parseCsv(String record) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.length() == 0 ? null : field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+        fields.add(field.length() == 0 ? null : field.toString());
+        return fields;
+    }
+    
+    @Override
+    public void destroy() {
+        runner.shutdownNow();
+        validators.shutdownNow();
+    }
+    
+    /**
+     * Parser of the records of an import file into users
+     */
+    @FunctionalInterface
+    private interface RecordParser {
+        User parse(String record) throws IOException;
+    }
+    
+    /**
+     * Records read from an import file
+     */
+    private static final class Chunk {
+        
+        final List<String> records;
+        final long firstRecord;
+        final long endPosition;
+        
+        Chunk(List<String> records, long firstRecord, long endPosition) {
+            this.records = records;
+            this.firstRecord = firstRecord;
+            this.endPosition = endPosition;
+        }
+    }
+    
+    /**
+     * Valid users of a chunk, in file order, and the count of its invalid records
+     */
+    private static final class ValidatedChunk {
+        
+        final long firstRecord;
+        final int records;
+        final long endPosition;
+        final List<User> users = new ArrayList<>();
+        int invalid;
+        String lastRejection;
+        
+        ValidatedChunk(long firstRecord, int records, long endPosition) {
+            this.firstRecord = firstRecord;
+            this.records = records;
+            this.endPosition = endPosition;
+        }
+    }
+}
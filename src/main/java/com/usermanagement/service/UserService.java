@@ -1,15 +1,40 @@
 package com.usermanagement.service;
 
+import com.usermanagement.model.BatchResult;
+import com.usermanagement.model.CursorPage;
 import com.usermanagement.model.User;
+import com.usermanagement.model.UserBulkDelete;
+import com.usermanagement.model.UserPatch;
+import com.usermanagement.model.UserQuery;
+import org.springframework.dao.OptimisticLockingFailureException;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * Service interface for User management operations
+ * Listing operations are keyset paginated on the user ID: a page holds at most
+ * {@link #MAX_PAGE_LIMIT} users and carries the cursor of the following page
  */
 public interface UserService {
     
+    /**
+     * Page size used when a listing call does not specify a limit
+     */
+    int DEFAULT_PAGE_LIMIT = 50;
+    
+    /**
+     * Largest page size a listing call may request
+     */
+    int MAX_PAGE_LIMIT = 1000;
+    
+    /**
+     * Largest number of users a batch write may contain
+     */
+    int MAX_BATCH_SIZE = 10000;
+    
     /**
      * Create a new user
      * @param user The user to create
@@ -18,10 +43,30 @@ public interface UserService {
     User createUser(User user);
     
     /**
-     * Get all users
-     * @return List of all users
+     * Create or update many users in a single transaction
+     * Items without an ID are created, items with an ID update the existing user.
+     * Invalid items are reported as failed without affecting the rest of the batch
+     * @param users The users to save
+     * @return The outcome of every item, in request order
+     * @throws IllegalArgumentException if the batch is empty or larger than {@link #MAX_BATCH_SIZE}
+     */
+    BatchResult saveUsers(List<User> users);
+    
+    /**
+     * Get a page of all users
+     * @param after The cursor returned with the previous page, or null for the first page
+     * @param limit The maximum number of users to return, or null for the default
+     * @return Page of users ordered by ID
+     * @throws IllegalArgumentException if limit is out of range
      */
-    List<User> getAllUsers();
+    CursorPage<User> getAllUsers(Long after, Integer limit);
+    
+    /**
+     * Pass every user, in ID order, to the given consumer without holding the
+     * whole table in memory
+     * @param consumer The consumer receiving the users one by one
+     */
+    void exportUsers(Consumer<User> consumer);
     
     /**
      * Get user by ID
@@ -31,7 +76,7 @@ public interface UserService {
     Optional<User> getUserById(Long id);
     
     /**
-     * Get user by email
+     * Get user by email, ignoring case
      * @param email The email to search for
      * @return Optional containing the user if found
      */
@@ -41,34 +86,88 @@ public interface UserService {
      * Update an existing user
      * @param id The ID of the user to update
      * @param userDetails The updated user details
+     * @param expectedVersion The version the client last read, or null to update unconditionally
+     * @return The updated user
+     * @throws OptimisticLockingFailureException if the user's version differs from the expected
+     *         one or the user was changed concurrently
+     */
+    User updateUser(Long id, User userDetails, Long expectedVersion);
+    
+    /**
+     * Change only some fields of an existing user
+     * @param id The ID of the user to update
+     * @param patch The fields to change
+     * @param expectedVersion The version the client last read, or null to update unconditionally
      * @return The updated user
+     * @throws OptimisticLockingFailureException if the user's version differs from the expected one
      */
-    User updateUser(Long id, User userDetails);
+    User patchUser(Long id, UserPatch patch, Long expectedVersion);
     
     /**
      * Delete a user
      * @param id The ID of the user to delete
+     * @param expectedVersion The version the client last read, or null to delete unconditionally
+     * @throws OptimisticLockingFailureException if the user's version differs from the expected
+     *         one or the user was changed concurrently
+     */
+    void deleteUser(Long id, Long expectedVersion);
+    
+    /**
+     * Delete all users matching a bulk delete
+     * @param request The users to delete: listed IDs and/or field values to match
+     * @return The number of users deleted
+     * @throws IllegalArgumentException if the request has no conditions or more than {@link #MAX_BATCH_SIZE} IDs
+     */
+    long deleteUsers(UserBulkDelete request);
+    
+    /**
+     * Get the current version of a user, without fetching the whole user when possible
+     * @param id The ID of the user
+     * @return Optional containing the version if the user exists
      */
-    void deleteUser(Long id);
+    Optional<Long> getUserVersion(Long id);
     
     /**
      * Search users by name
      * @param name The name to search for
-     * @return List of users with the given name
+     * @param after The cursor returned with the previous page, or null for the first page
+     * @param limit The maximum number of users to return, or null for the default
+     * @return Page of users with the given name ordered by ID
+     * @throws IllegalArgumentException if limit is out of range
      */
-    List<User> searchUsersByName(String name);
+    CursorPage<User> searchUsersByName(String name, Long after, Integer limit);
     
     /**
      * Search users by surname
      * @param surname The surname to search for
-     * @return List of users with the given surname
+     * @param after The cursor returned with the previous page, or null for the first page
+     * @param limit The maximum number of users to return, or null for the default
+     * @return Page of users with the given surname ordered by ID
+     * @throws IllegalArgumentException if limit is out of range
      */
-    List<User> searchUsersBySurname(String surname);
+    CursorPage<User> searchUsersBySurname(String surname, Long after, Integer limit);
     
     /**
      * Search users by nationality
      * @param nationality The nationality to search for
-     * @return List of users with the given nationality
+     * @param after The cursor returned with the previous page, or null for the first page
+     * @param limit The maximum number of users to return, or null for the default
+     * @return Page of users with the given nationality ordered by ID
+     * @throws IllegalArgumentException if limit is out of range
+     */
+    CursorPage<User> searchUsersByNationality(String nationality, Long after, Integer limit);
+    
+    /**
+     * Query users by any combination of name, surname, email and nationality
+     * @param query The filters, sort order and page to fetch
+     * @return Page of matching users in the query order
+     * @throws IllegalArgumentException if the limit is out of range or the cursor is invalid
+     */
+    CursorPage<User> queryUsers(UserQuery query);
+    
+    /**
+     * Count users per nationality
+     * @return Map of nationality to number of users
      */
-    List<User> searchUsersByNationality(String nationality);
-}
\ No newline at end of file
+    Map<String, Long> countUsersByNationality();
+}
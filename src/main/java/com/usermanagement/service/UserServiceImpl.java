@@ -1,139 +1,729 @@
 package com.usermanagement.service;
 
+import com.usermanagement.model.BatchItemResult;
+import com.usermanagement.model.BatchResult;
+import com.usermanagement.model.CursorPage;
 import com.usermanagement.model.User;
+import com.usermanagement.model.UserBulkDelete;
+import com.usermanagement.model.UserPatch;
+import com.usermanagement.model.UserQuery;
+import com.usermanagement.repository.NationalityCodes;
+import com.usermanagement.repository.ReplicaRouting;
 import com.usermanagement.repository.UserRepository;
+import com.usermanagement.repository.UserSpecifications;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManager;
 import javax.persistence.EntityNotFoundException;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PersistenceException;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Implementation of UserService interface
+ * Publishes a {@link UserChangeEvent} for every user it creates, updates or deletes
+ * Backed by JPA, except with the "memory" profile where {@link InMemoryUserService} replaces it
  */
 @Service
+@Profile("!memory")
 public class UserServiceImpl implements UserService {
     
+    /**
+     * Number of entities written per flush in batch writes, matching hibernate.jdbc.batch_size
+     */
+    private static final int BATCH_FLUSH_SIZE = 50;
+    
+    /**
+     * Largest number of values bound to a single IN clause
+     */
+    private static final int IN_CLAUSE_CHUNK_SIZE = 1000;
+    
     private final UserRepository userRepository;
+    private final EntityManager entityManager;
+    private final Validator validator;
+    private final UserCache userCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final NationalityCodes nationalityCodes;
+    
+    /**
+     * Users written within the read-your-writes window; null unless replica routing is enabled
+     */
+    private final RecentUserWrites recentWrites;
     
     @Autowired
-    public UserServiceImpl(UserRepository userRepository) {
+    public UserServiceImpl(UserRepository userRepository, EntityManager entityManager, Validator validator,
+                           UserCache userCache, ApplicationEventPublisher eventPublisher,
+                           PlatformTransactionManager transactionManager, NationalityCodes nationalityCodes,
+                           ObjectProvider<RecentUserWrites> recentWrites) {
         this.userRepository = userRepository;
+        this.entityManager = entityManager;
+        this.validator = validator;
+        this.userCache = userCache;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.nationalityCodes = nationalityCodes;
+        this.recentWrites = recentWrites.getIfAvailable();
     }
     
     /**
      * Create a new user
+     * Email uniqueness is enforced by the unique constraint on the normalized email,
+     * which also closes the race between checking and inserting
      * @param user The user to create
      * @return The created user
      * @throws IllegalArgumentException if email already exists
      */
     @Override
     public User createUser(User user) {
-        // Check if email already exists
-        if (userRepository.existsByEmail(user.getEmail())) {
-            throw new IllegalArgumentException("Email already exists: " + user.getEmail());
+        registerNationality(user.getNationality());
+        User createdUser;
+        try {
+            createdUser = userRepository.saveAndFlush(user);
+        } catch (DataIntegrityViolationException e) {
+            throw translateEmailConflict(e, user.getEmail());
+        }
+        eventPublisher.publishEvent(UserChangeEvent.created(createdUser));
+        return createdUser;
+    }
+    
+    /**
+     * Create or update many users in a single transaction
+     * Emails and existing users are checked with one query per chunk of the batch
+     * instead of one per item, and inserts are sent as JDBC batches
+     * @param users The users to save
+     * @return The outcome of every item, in request order
+     * @throws IllegalArgumentException if the batch is empty or larger than MAX_BATCH_SIZE
+     * @throws OptimisticLockingFailureException if a user to update was changed concurrently
+     */
+    @Override
+    @Transactional
+    public BatchResult saveUsers(List<User> users) {
+        if (users == null || users.isEmpty() || users.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch must contain between 1 and " + MAX_BATCH_SIZE + " users");
+        }
+        
+        BatchItemResult[] results = new BatchItemResult[users.size()];
+        
+        // Bean validation and duplicates within the batch
+        Set<String> batchEmails = new HashSet<>();
+        Set<Long> updateIds = new HashSet<>();
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            String error = validate(user);
+            if (error == null && !batchEmails.add(user.getEmailNormalized())) {
+                error = "Duplicate email in batch: " + user.getEmail();
+            }
+            if (error == null && user.getId() != null && !updateIds.add(user.getId())) {
+                error = "Duplicate id in batch: " + user.getId();
+            }
+            if (error != null) {
+                results[i] = BatchItemResult.failed(i, error);
+            }
         }
         
-        return userRepository.save(user);
+        // Users being updated and emails already taken, fetched in bulk
+        Map<Long, User> existingUsers = new HashMap<>();
+        for (List<Long> chunk : chunks(updateIds)) {
+            for (User existing : userRepository.findAllById(chunk)) {
+                existingUsers.put(existing.getId(), existing);
+            }
+        }
+        Set<String> takenEmails = new HashSet<>();
+        for (List<String> chunk : chunks(batchEmails)) {
+            takenEmails.addAll(userRepository.findExistingEmails(chunk));
+        }
+        
+        // Updates are applied to the managed entities first, so flushing and
+        // clearing the context while inserting cannot detach them
+        List<Integer> creates = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            User user = users.get(i);
+            registerNationality(user.getNationality());
+            if (user.getId() == null) {
+                if (takenEmails.contains(user.getEmailNormalized())) {
+                    results[i] = BatchItemResult.failed(i, "Email already exists: " + user.getEmail());
+                } else {
+                    creates.add(i);
+                }
+                continue;
+            }
+            User existing = existingUsers.get(user.getId());
+            if (existing == null) {
+                results[i] = BatchItemResult.failed(i, "User not found with id: " + user.getId());
+            } else if (!existing.getEmailNormalized().equals(user.getEmailNormalized())
+                    && takenEmails.contains(user.getEmailNormalized())) {
+                results[i] = BatchItemResult.failed(i, "Email already exists: " + user.getEmail());
+            } else {
+                User previous = UserChangeEvent.snapshot(existing);
+                afterCommit(() -> userCache.invalidate(existing.getId(), previous.getEmail(), user.getEmail()));
+                existing.setName(user.getName());
+                existing.setSurname(user.getSurname());
+                existing.setEmail(user.getEmail());
+                existing.setNationality(user.getNationality());
+                eventPublisher.publishEvent(UserChangeEvent.updated(previous, existing));
+                results[i] = new BatchItemResult(i, BatchItemResult.Status.UPDATED, existing.getId(), null);
+            }
+        }
+        try {
+            entityManager.flush();
+            entityManager.clear();
+            
+            for (int n = 0; n < creates.size(); n++) {
+                int i = creates.get(n);
+                User user = users.get(i);
+                entityManager.persist(user);
+                eventPublisher.publishEvent(UserChangeEvent.created(user));
+                results[i] = new BatchItemResult(i, BatchItemResult.Status.CREATED, user.getId(), null);
+                if ((n + 1) % BATCH_FLUSH_SIZE == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+            }
+            entityManager.flush();
+            entityManager.clear();
+        } catch (OptimisticLockException e) {
+            throw new OptimisticLockingFailureException("A user was updated by a concurrent write, retry the batch", e);
+        } catch (PersistenceException e) {
+            // An email was taken by a concurrent write after the bulk check
+            if (isEmailConflict(e)) {
+                throw new IllegalArgumentException("Email taken by a concurrent write, retry the batch", e);
+            }
+            throw e;
+        }
+        
+        List<BatchItemResult> resultList = new ArrayList<>(results.length);
+        for (BatchItemResult result : results) {
+            resultList.add(result);
+        }
+        return new BatchResult(resultList);
+    }
+    
+    /**
+     * Get a page of all users
+     * Listings read the users as projections in read-only transactions: the users are built
+     * from the selected columns and never enter the persistence context
+     * @param after The cursor returned with the previous page, or null for the first page
+     * @param limit The maximum number of users to return, or null for the default
+     * @return Page of users ordered by ID
+     * @throws IllegalArgumentException if limit is out of range
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<User> getAllUsers(Long after, Integer limit) {
+        int pageLimit = resolveLimit(limit);
+        return toPage(userRepository.findPageAfter(
+                cursorOf(after), lookahead(pageLimit)), pageLimit);
     }
     
     /**
-     * Get all users
-     * @return List of all users
+     * Pass every user, in ID order, to the given consumer
+     * Rows are read from a database cursor and detached once consumed, so the
+     * persistence context stays empty however large the table is
+     * @param consumer The consumer receiving the users one by one
      */
     @Override
-    public List<User> getAllUsers() {
-        return userRepository.findAll();
+    @Transactional(readOnly = true)
+    public void exportUsers(Consumer<User> consumer) {
+        try (Stream<User> users = userRepository.streamAllByOrderByIdAsc()) {
+            users.forEach(user -> {
+                consumer.accept(user);
+                entityManager.detach(user);
+            });
+        }
     }
     
     /**
-     * Get user by ID
+     * Get user by ID, served from the user cache when possible
+     * With replica routing, a miss is read from the replica unless the user was written recently
      * @param id The ID to search for
      * @return Optional containing the user if found
      */
     @Override
     public Optional<User> getUserById(Long id) {
-        return userRepository.findById(id);
+        return userCache.getById(id, key -> lookup(recentWrites != null && recentWrites.containsId(key),
+                () -> userRepository.findById(key)));
     }
     
     /**
-     * Get user by email
+     * Get user by email, ignoring case, served from the user cache when possible
+     * With replica routing, a miss is read from the replica unless the email was written recently
      * @param email The email to search for
      * @return Optional containing the user if found
      */
     @Override
     public Optional<User> getUserByEmail(String email) {
-        return userRepository.findByEmail(email);
+        return userCache.getByEmail(email, key -> lookup(recentWrites != null && recentWrites.containsEmail(key),
+                () -> userRepository.findByEmailNormalized(key)));
     }
     
     /**
      * Update an existing user
+     * Email uniqueness is enforced by the unique constraint on the normalized email
      * @param id The ID of the user to update
      * @param userDetails The updated user details
+     * @param expectedVersion The version the client last read, or null to update unconditionally
      * @return The updated user
      * @throws EntityNotFoundException if user not found
      * @throws IllegalArgumentException if email already exists
+     * @throws OptimisticLockingFailureException if the user's version differs from the expected
+     *         one or the user was changed concurrently
      */
     @Override
-    public User updateUser(Long id, User userDetails) {
+    @Transactional
+    public User updateUser(Long id, User userDetails, Long expectedVersion) {
         User user = userRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException("User not found with id: " + id));
+        checkVersion(user, expectedVersion);
         
-        // Check if email is being changed and if it already exists
-        if (!user.getEmail().equals(userDetails.getEmail()) && 
-                userRepository.existsByEmail(userDetails.getEmail())) {
-            throw new IllegalArgumentException("Email already exists: " + userDetails.getEmail());
-        }
-        
+        User previous = UserChangeEvent.snapshot(user);
+        registerNationality(userDetails.getNationality());
         user.setName(userDetails.getName());
         user.setSurname(userDetails.getSurname());
         user.setEmail(userDetails.getEmail());
         user.setNationality(userDetails.getNationality());
         
-        return userRepository.save(user);
+        try {
+            userRepository.flush();
+        } catch (DataIntegrityViolationException e) {
+            throw translateEmailConflict(e, userDetails.getEmail());
+        }
+        afterCommit(() -> userCache.invalidate(id, previous.getEmail(), user.getEmail()));
+        eventPublisher.publishEvent(UserChangeEvent.updated(previous, user));
+        return user;
+    }
+    
+    /**
+     * Change only some fields of an existing user
+     * The change returns the previous state of the user, which feeds the cache invalidation
+     * and the change event; on H2 it is a single statement and the user is not read first.
+     * Email uniqueness is enforced by the unique constraint on the normalized email
+     * @param id The ID of the user to update
+     * @param patch The fields to change
+     * @param expectedVersion The version the client last read, or null to update unconditionally
+     * @return The updated user
+     * @throws EntityNotFoundException if user not found
+     * @throws IllegalArgumentException if the patch is empty or email already exists
+     * @throws OptimisticLockingFailureException if the user's version differs from the expected one
+     */
+    @Override
+    @Transactional
+    public User patchUser(Long id, UserPatch patch, Long expectedVersion) {
+        if (patch.isEmpty()) {
+            throw new IllegalArgumentException("No fields to update");
+        }
+        registerNationality(patch.getNationality());
+        
+        Optional<User> updated;
+        try {
+            updated = userRepository.patch(id, patch, expectedVersion);
+        } catch (DataIntegrityViolationException e) {
+            throw translateEmailConflict(e, patch.getEmail());
+        }
+        if (!updated.isPresent()) {
+            throw notMatched(id, expectedVersion);
+        }
+        
+        User previous = updated.get();
+        User user = UserChangeEvent.snapshot(previous);
+        patch.applyTo(user);
+        user.setVersion(previous.getVersion() + 1);
+        afterCommit(() -> userCache.invalidate(id, previous.getEmail(), user.getEmail()));
+        eventPublisher.publishEvent(UserChangeEvent.updated(previous, user));
+        return user;
     }
     
     /**
      * Delete a user
+     * The delete returns the deleted row, which feeds the cache invalidation and the change
+     * event; on H2 it is a single statement and the user is not read first
      * @param id The ID of the user to delete
+     * @param expectedVersion The version the client last read, or null to delete unconditionally
      * @throws EntityNotFoundException if user not found
+     * @throws OptimisticLockingFailureException if the user's version differs from the expected one
+     */
+    @Override
+    @Transactional
+    public void deleteUser(Long id, Long expectedVersion) {
+        User user = userRepository.deleteReturning(id, expectedVersion)
+                .orElseThrow(() -> notMatched(id, expectedVersion));
+        afterCommit(() -> userCache.invalidate(id, user.getEmail()));
+        eventPublisher.publishEvent(UserChangeEvent.deleted(user));
+    }
+    
+    /**
+     * Delete all users matching a bulk delete
+     * Users are deleted set-based, up to IN_CLAUSE_CHUNK_SIZE per statement, each chunk in its
+     * own transaction: a long purge makes progress that survives a failure part-way, and
+     * neither the rows returned nor the pending cache invalidations grow with the purge
+     * @param request The users to delete
+     * @return The number of users deleted
+     * @throws IllegalArgumentException if the request has no conditions or more than MAX_BATCH_SIZE IDs
+     */
+    @Override
+    public long deleteUsers(UserBulkDelete request) {
+        if (!request.hasConditions()) {
+            throw new IllegalArgumentException("Bulk delete requires IDs or at least one field to match");
+        }
+        List<Long> ids = request.getIds();
+        if (ids != null && ids.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Bulk delete accepts at most " + MAX_BATCH_SIZE + " IDs");
+        }
+        
+        long deleted = 0;
+        if (ids != null && !ids.isEmpty()) {
+            for (List<Long> chunk : chunks(new HashSet<>(ids))) {
+                deleted += deleteChunk(request, chunk, chunk.size());
+            }
+            return deleted;
+        }
+        int count;
+        do {
+            count = deleteChunk(request, null, IN_CLAUSE_CHUNK_SIZE);
+            deleted += count;
+        } while (count == IN_CLAUSE_CHUNK_SIZE);
+        return deleted;
+    }
+    
+    /**
+     * Delete one chunk of a bulk delete in its own transaction
+     * @param filter The field values the users must match
+     * @param ids The IDs the users must have, or null for any
+     * @param limit The maximum number of users to delete
+     * @return The number of users deleted
+     */
+    private int deleteChunk(UserBulkDelete filter, Collection<Long> ids, int limit) {
+        Integer count = transactionTemplate.execute(status -> {
+            List<User> users = userRepository.deleteMatching(filter, ids, limit);
+            if (!users.isEmpty()) {
+                afterCommit(() -> users.forEach(user -> userCache.invalidate(user.getId(), user.getEmail())));
+                users.forEach(user -> eventPublisher.publishEvent(UserChangeEvent.deleted(user)));
+            }
+            return users.size();
+        });
+        return count == null ? 0 : count;
+    }
+    
+    /**
+     * Get the current version of a user
+     * Served from the user cache when the user is cached, otherwise read with a
+     * query selecting only the version
+     * @param id The ID of the user
+     * @return Optional containing the version if the user exists
      */
     @Override
-    public void deleteUser(Long id) {
-        if (!userRepository.existsById(id)) {
-            throw new EntityNotFoundException("User not found with id: " + id);
+    public Optional<Long> getUserVersion(Long id) {
+        Optional<User> cached = userCache.peekById(id);
+        if (cached.isPresent()) {
+            return cached.map(User::getVersion);
         }
-        userRepository.deleteById(id);
+        return lookup(recentWrites != null && recentWrites.containsId(id), () -> userRepository.findVersionById(id));
     }
     
     /**
      * Search users by name
      * @param name The name to search for
-     * @return List of users with the given name
+     * @param after The cursor returned with the previous page, or null for the first page
+     * @param limit The maximum number of users to return, or null for the default
+     * @return Page of users with the given name ordered by ID
+     * @throws IllegalArgumentException if limit is out of range
      */
     @Override
-    public List<User> searchUsersByName(String name) {
-        return userRepository.findByName(name);
+    @Transactional(readOnly = true)
+    public CursorPage<User> searchUsersByName(String name, Long after, Integer limit) {
+        int pageLimit = resolveLimit(limit);
+        return toPage(userRepository.findPageByName(
+                name, cursorOf(after), lookahead(pageLimit)), pageLimit);
     }
     
     /**
      * Search users by surname
      * @param surname The surname to search for
-     * @return List of users with the given surname
+     * @param after The cursor returned with the previous page, or null for the first page
+     * @param limit The maximum number of users to return, or null for the default
+     * @return Page of users with the given surname ordered by ID
+     * @throws IllegalArgumentException if limit is out of range
      */
     @Override
-    public List<User> searchUsersBySurname(String surname) {
-        return userRepository.findBySurname(surname);
+    @Transactional(readOnly = true)
+    public CursorPage<User> searchUsersBySurname(String surname, Long after, Integer limit) {
+        int pageLimit = resolveLimit(limit);
+        return toPage(userRepository.findPageBySurname(
+                surname, cursorOf(after), lookahead(pageLimit)), pageLimit);
     }
     
     /**
      * Search users by nationality
      * @param nationality The nationality to search for
-     * @return List of users with the given nationality
+     * @param after The cursor returned with the previous page, or null for the first page
+     * @param limit The maximum number of users to return, or null for the default
+     * @return Page of users with the given nationality ordered by ID
+     * @throws IllegalArgumentException if limit is out of range
      */
     @Override
-    public List<User> searchUsersByNationality(String nationality) {
-        return userRepository.findByNationality(nationality);
+    @Transactional(readOnly = true)
+    public CursorPage<User> searchUsersByNationality(String nationality, Long after, Integer limit) {
+        int pageLimit = resolveLimit(limit);
+        return toPage(userRepository.findPageByNationality(
+                nationality, cursorOf(after), lookahead(pageLimit)), pageLimit);
+    }
+    
+    /**
+     * Query users by any combination of name, surname, email and nationality
+     * Filters, keyset condition, order and limit are all pushed into a single SQL statement
+     * @param query The filters, sort order and page to fetch
+     * @return Page of matching users in the query order
+     * @throws IllegalArgumentException if the limit is out of range or the cursor is invalid
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<User> queryUsers(UserQuery query) {
+        int pageLimit = resolveLimit(query.getLimit());
+        Specification<User> spec = UserSpecifications.matching(query);
+        if (query.getAfter() != null) {
+            spec = spec.and(UserSpecifications.after(query, UserQuery.Cursor.parse(query.getAfter(), query.getSortField())));
+        }
+        List<User> users = userRepository.findAll(spec, UserSpecifications.sortOf(query), pageLimit + 1);
+        if (users.size() <= pageLimit) {
+            return new CursorPage<>(users, null);
+        }
+        List<User> page = users.subList(0, pageLimit);
+        return new CursorPage<>(page, UserQuery.Cursor.of(page.get(pageLimit - 1), query.getSortField()).encode());
+    }
+    
+    /**
+     * Count users per nationality with a single GROUP BY query
+     * @return Map of nationality to number of users
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Map<String, Long> countUsersByNationality() {
+        Map<String, Long> counts = new HashMap<>();
+        for (Object[] row : userRepository.countByNationality()) {
+            counts.put((String) row[0], (Long) row[1]);
+        }
+        return counts;
+    }
+    
+    /**
+     * Validate a requested page size, falling back to the default when absent
+     * @param limit The requested page size, may be null
+     * @return The page size to use
+     * @throws IllegalArgumentException if limit is out of range
+     */
+    private int resolveLimit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_LIMIT;
+        }
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_LIMIT + ": " + limit);
+        }
+        return limit;
+    }
+    
+    /**
+     * Translate a page cursor into the ID the next page starts after
+     * @param after The cursor, may be null for the first page
+     * @return The exclusive lower ID bound
+     */
+    private static Long cursorOf(Long after) {
+        return after != null ? after : 0L;
+    }
+    
+    /**
+     * Build a page request fetching one row more than the page size, so the
+     * presence of a next page is known without a count query
+     * @param pageLimit The page size
+     * @return The page request to pass to the repository
+     */
+    private static PageRequest lookahead(int pageLimit) {
+        return PageRequest.of(0, pageLimit + 1);
+    }
+    
+    /**
+     * Cut a lookahead result down to the page size and derive the next cursor
+     * @param users The users fetched with {@link #lookahead(int)}
+     * @param pageLimit The page size
+     * @return The page
+     */
+    private static CursorPage<User> toPage(List<User> users, int pageLimit) {
+        if (users.size() <= pageLimit) {
+            return new CursorPage<>(users, null);
+        }
+        List<User> page = users.subList(0, pageLimit);
+        return new CursorPage<>(page, String.valueOf(page.get(pageLimit - 1).getId()));
+    }
+    
+    /**
+     * Check that a user is still at the version a client last read
+     * @param user The current user
+     * @param expectedVersion The version the client expects, or null to skip the check
+     * @throws OptimisticLockingFailureException if the versions differ
+     */
+    private static void checkVersion(User user, Long expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(user.getVersion())) {
+            throw new OptimisticLockingFailureException("User " + user.getId() + " was modified: expected version "
+                    + expectedVersion + " but is at version " + user.getVersion());
+        }
+    }
+    
+    /**
+     * Explain why a conditional write matched no row
+     * Only a conditional write needs a second look to tell a stale version from a missing user
+     * @param id The ID of the user written
+     * @param expectedVersion The version the write was conditioned on, or null
+     * @return The exception to throw
+     */
+    private RuntimeException notMatched(Long id, Long expectedVersion) {
+        Optional<Long> version = expectedVersion == null ? Optional.empty() : userRepository.findVersionById(id);
+        if (version.isPresent()) {
+            return new OptimisticLockingFailureException("User " + id + " was modified: expected version "
+                    + expectedVersion + " but is at version " + version.get());
+        }
+        return new EntityNotFoundException("User not found with id: " + id);
+    }
+    
+    /**
+     * Run an action once the current transaction commits, or right away if there is none
+     * @param action The action to run
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+    
+    /**
+     * Run a lookup by ID or email
+     * Lookups run in read-only transactions, served by the replica when replica routing is
+     * enabled, except for users written within the read-your-writes window: the replica may not
+     * have applied their changes yet, so they are read from the primary
+     * @param recentlyWritten Whether the looked up user was written within the window
+     * @param lookup The lookup
+     * @param <T> The type of the result
+     * @return The result of the lookup
+     */
+    private static <T> T lookup(boolean recentlyWritten, Supplier<T> lookup) {
+        return recentlyWritten ? ReplicaRouting.onPrimary(lookup) : lookup.get();
+    }
+    
+    /**
+     * Add a nationality about to be written to the dictionary of nationality codes
+     * Blank nationalities are left out, since validation rejects them anyway
+     * @param nationality The nationality, may be null
+     * @throws IllegalArgumentException if the nationality cannot be added to the dictionary
+     */
+    private void registerNationality(String nationality) {
+        if (nationality != null && !nationality.trim().isEmpty()) {
+            nationalityCodes.register(nationality);
+        }
+    }
+    
+    /**
+     * Translate a violation of the email unique constraint into the error reported to callers
+     * @param e The exception raised by the write
+     * @param email The email that was written
+     * @return The exception to throw
+     * @throws DataIntegrityViolationException if the violation is not an email conflict
+     */
+    private static IllegalArgumentException translateEmailConflict(DataIntegrityViolationException e, String email) {
+        if (!isEmailConflict(e)) {
+            throw e;
+        }
+        return new IllegalArgumentException("Email already exists: " + email, e);
+    }
+    
+    /**
+     * Check whether an exception was caused by the email unique constraint
+     * @param e The exception raised by a write
+     * @return true if the normalized email constraint was violated
+     */
+    private static boolean isEmailConflict(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                String constraint = ((ConstraintViolationException) cause).getConstraintName();
+                return constraint != null
+                        && constraint.toLowerCase().contains(User.EMAIL_UNIQUE_CONSTRAINT);
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Run bean validation on a user
+     * @param user The user to validate
+     * @return The validation messages joined together, or null if the user is valid
+     */
+    private String validate(User user) {
+        if (user == null) {
+            return "User is required";
+        }
+        Set<ConstraintViolation<User>> violations = validator.validate(user);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+    
+    /**
+     * Split values into lists small enough to bind to a single IN clause
+     * @param values The values to split
+     * @param <T> The type of the values
+     * @return The chunks
+     */
+    private static <T> List<List<T>> chunks(Collection<T> values) {
+        List<List<T>> chunks = new ArrayList<>();
+        List<T> chunk = new ArrayList<>(Math.min(values.size(), IN_CLAUSE_CHUNK_SIZE));
+        for (T value : values) {
+            chunk.add(value);
+            if (chunk.size() == IN_CLAUSE_CHUNK_SIZE) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(IN_CLAUSE_CHUNK_SIZE);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
     }
 }
\ No newline at end of file
@@ -0,0 +1,404 @@
+package com.usermanagement.service;
+
+import com.usermanagement.model.User;
+import com.usermanagement.repository.NationalityCodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshots of the users table in a compact binary file, restored in bulk at startup
+ * A snapshot is a 32 byte header followed by one record per user in ID order:
+ * <pre>
+ * header: magic "USNP" (int), format version (int), user count (long), payload length (long),
+ *         CRC32 of the payload (int), reserved (int)
+ * record: id (long), version (long), then name, surname, email and nationality, each as its
+ *         UTF-8 length (unsigned short, 0xFFFF for null) followed by its bytes
+ * </pre>
+ * Snapshots are written through a file channel to a temporary file that replaces the
+ * previous snapshot once complete, and read back through a memory mapping. The checksum is
+ * verified before anything is inserted. Restoring runs before the web server starts, so the
+ * application only reports ready once the users are loaded; it inserts with JDBC batches,
+ * bypassing JPA, builds the secondary indexes once all rows are in rather than row by row,
+ * and moves the ID sequence past the restored IDs.
+ */
+@Component
+@Profile("!memory")
+public class UserSnapshots implements SmartLifecycle {
+    
+    private static final Logger logger = LoggerFactory.getLogger(UserSnapshots.class);
+    
+    static final int MAGIC = 0x55534E50;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    
+    private static final int NULL_LENGTH = 0xFFFF;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final int INSERT_BATCH_SIZE = 1000;
+    
+    private static final String SELECT_USERS =
+            "select id, version, name, surname, email, nationality_id from users order by id";
+    private static final String INSERT_USER =
+            "insert into users (id, version, name, surname, email, email_normalized, nationality_id) values (?, ?, ?, ?, ?, ?, ?)";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final NationalityCodes nationalityCodes;
+    private final TransactionTemplate transactionTemplate;
+    private final Path path;
+    private final boolean restoreOnStartup;
+    private final boolean saveOnShutdown;
+    private volatile boolean running;
+    
+    /**
+     * Constructs a new snapshot store
+     * @param jdbcTemplate Template on the application's database
+     * @param nationalityCodes The dictionary the users table encodes nationalities with
+     * @param transactionManager Manager of the transaction a snapshot is restored in
+     * @param path The snapshot file
+     * @param restoreOnStartup Whether to restore the snapshot, if it exists, when the application starts
+     * @param saveOnShutdown Whether to save a snapshot when the application stops
+     */
+    public UserSnapshots(JdbcTemplate jdbcTemplate, NationalityCodes nationalityCodes,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${user.snapshot.path:snapshots/users.snapshot}") String path,
+                         @Value("${user.snapshot.restore-on-startup:false}") boolean restoreOnStartup,
+                         @Value("${user.snapshot.save-on-shutdown:false}") boolean saveOnShutdown) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.nationalityCodes = nationalityCodes;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.path = Paths.get(path);
+        this.restoreOnStartup = restoreOnStartup;
+        this.saveOnShutdown = saveOnShutdown;
+    }
+    
+    public Path getPath() {
+        return path;
+    }
+    
+    /**
+     * Save a snapshot of all users to the snapshot file
+     * @return The number of users saved
+     * @throws IOException if the file cannot be written
+     */
+    public long save() throws IOException {
+        return save(path);
+    }
+    
+    /**
+     * Save a snapshot of all users
+     * The users are read with a single query, so the snapshot is consistent
+     * @param target The file to write; replaced only once the snapshot is complete
+     * @return The number of users saved
+     * @throws IOException if the file cannot be written
+     */
+    public long save(Path target) throws IOException {
+        long start = System.nanoTime();
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        SnapshotWriter writer;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writer = new SnapshotWriter(channel);
+            try {
+                jdbcTemplate.query(SELECT_USERS, row -> {
+                    writer.writeUser(row.getLong(1), row.getLong(2), row.getString(3), row.getString(4),
+                            row.getString(5), nationalityCodes.nameOf(row.getShort(6)));
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.finish();
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Saved {} users to snapshot {} ({} bytes) in {} ms", writer.count, target,
+                HEADER_SIZE + writer.payloadLength, (System.nanoTime() - start) / 1_000_000);
+        return writer.count;
+    }
+    
+    /**
+     * Restore a snapshot into the empty users table
+     * The users are inserted in a single transaction, so a failed restore leaves the table empty
+     * and can be retried. Secondary indexes are dropped for the duration of the restore and
+     * recreated whether it succeeds or not.
+     * @param source The snapshot file
+     * @return The number of users restored
+     * @throws IOException if the file cannot be read, is not a snapshot, has an unsupported
+     *         format version or fails its checksum
+     * @throws IllegalStateException if the users table is not empty
+     */
+    public long restore(Path source) throws IOException {
+        long start = System.nanoTime();
+        Long existing = jdbcTemplate.queryForObject("select count(*) from users", Long.class);
+        if (existing != null && existing > 0) {
+            throw new IllegalStateException("Cannot restore a snapshot into a non-empty users table: " + existing + " users");
+        }
+        
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large to map: " + channel.size() + " bytes");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        long count = verifyHeader(buffer, source);
+        
+        // Secondary indexes are built once all rows are in, much faster than row by row
+        Index[] indexes = User.class.getAnnotation(Table.class).indexes();
+        for (Index index : indexes) {
+            jdbcTemplate.execute("drop index " + index.name());
+        }
+        long maxId;
+        try {
+            maxId = transactionTemplate.execute(status -> {
+                try {
+                    return insertUsers(buffer, count, source);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (Index index : indexes) {
+                jdbcTemplate.execute("create " + (index.unique() ? "unique " : "") + "index " + index.name()
+                        + " on users (" + index.columnList() + ")");
+            }
+        }
+        // Past the restored IDs, and never back into a block of IDs already handed out
+        Long next = jdbcTemplate.queryForObject("select next value for user_seq", Long.class);
+        long restart = Math.max(maxId + User.ID_ALLOCATION_SIZE + 1, next + User.ID_ALLOCATION_SIZE);
+        jdbcTemplate.execute("alter sequence user_seq restart with " + restart);
+        logger.info("Restored {} users from snapshot {} in {} ms", count, source, (System.nanoTime() - start) / 1_000_000);
+        return count;
+    }
+    
+    /**
+     * Insert the users of a verified snapshot with JDBC batches
+     * @param buffer The mapped snapshot, positioned after the header
+     * @param count The number of users in the snapshot
+     * @param source The snapshot file, for error messages
+     * @return The largest ID inserted
+     * @throws IOException if a record is truncated
+     */
+    private long insertUsers(ByteBuffer buffer, long count, Path source) throws IOException {
+        byte[] scratch = new byte[NULL_LENGTH];
+        List<Object[]> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        long maxId = 0;
+        try {
+            for (long i = 0; i < count; i++) {
+                long id = buffer.getLong();
+                long version = buffer.getLong();
+                String name = readString(buffer, scratch);
+                String surname = readString(buffer, scratch);
+                String email = readString(buffer, scratch);
+                String nationality = readString(buffer, scratch);
+                batch.add(new Object[]{id, version, name, surname, email, User.normalizeEmail(email),
+                        nationalityCodes.register(nationality)});
+                maxId = Math.max(maxId, id);
+                if (batch.size() == INSERT_BATCH_SIZE) {
+                    jdbcTemplate.batchUpdate(INSERT_USER, batch);
+                    batch.clear();
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Malformed user snapshot, records end before " + count + " users: " + source, e);
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_USER, batch);
+        }
+        return maxId;
+    }
+    
+    /**
+     * Restore the snapshot, if configured and present, before the web server starts
+     */
+    @Override
+    public void start() {
+        running = true;
+        if (!restoreOnStartup) {
+            return;
+        }
+        if (!Files.isRegularFile(path)) {
+            logger.info("No user snapshot at {}, starting without restoring", path);
+            return;
+        }
+        try {
+            restore(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot restore user snapshot " + path, e);
+        }
+    }
+    
+    /**
+     * Save a snapshot, if configured, once the web server has stopped
+     */
+    @Override
+    public void stop() {
+        running = false;
+        if (!saveOnShutdown) {
+            return;
+        }
+        try {
+            save(path);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Cannot save user snapshot {}", path, e);
+        }
+    }
+    
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+    
+    /**
+     * Start before and stop after the web servers, which use the default phase
+     * @return The lifecycle phase
+     */
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+    
+    /**
+     * Check the header and checksum of a mapped snapshot
+     * @param buffer The mapped snapshot, positioned after the header on return
+     * @param source The snapshot file, for error messages
+     * @return The number of users in the snapshot
+     * @throws IOException if the snapshot is invalid
+     */
+    private static long verifyHeader(ByteBuffer buffer, Path source) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a user snapshot: " + source);
+        }
+        int formatVersion = buffer.getInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported user snapshot format version " + formatVersion + ": " + source);
+        }
+        long count = buffer.getLong();
+        long payloadLength = buffer.getLong();
+        int checksum = buffer.getInt();
+        buffer.getInt();
+        if (payloadLength != buffer.remaining()) {
+            throw new IOException("Truncated user snapshot, expected " + payloadLength + " bytes of users but found "
+                    + buffer.remaining() + ": " + source);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("User snapshot checksum mismatch: " + source);
+        }
+        return count;
+    }
+    
+    private static String readString(ByteBuffer buffer, byte[] scratch) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        buffer.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Writes users to a snapshot file through a reusable buffer, checksumming what it writes
+     */
+    private static final class SnapshotWriter {
+        
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+        private long count;
+        private long payloadLength;
+        
+        SnapshotWriter(FileChannel channel) throws IOException {
+            this.channel = channel;
+            channel.position(HEADER_SIZE);
+        }
+        
+        void writeUser(long id, long version, String name, String surname, String email, String nationality) {
+            try {
+                ensureRemaining(2 * Long.BYTES);
+                buffer.putLong(id).putLong(version);
+                writeString(name);
+                writeString(surname);
+                writeString(email);
+                writeString(nationality);
+                count++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        
+        /**
+         * Write the remaining users and the header
+         */
+        void finish() throws IOException {
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(count).putLong(payloadLength)
+                    .putInt((int) crc.getValue()).putInt(0);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+        
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                ensureRemaining(Short.BYTES);
+                buffer.putShort((short) NULL_LENGTH);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length >= NULL_LENGTH) {
+                throw new IOException("Value too long for a user snapshot: " + bytes.length + " bytes");
+            }
+            ensureRemaining(Short.BYTES + bytes.length);
+            buffer.putShort((short) bytes.length).put(bytes);
+        }
+        
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+        
+        private void flush() throws IOException {
+            crc.update(buffer.array(), 0, buffer.position());
+            payloadLength += buffer.position();
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
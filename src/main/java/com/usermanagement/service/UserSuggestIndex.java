@@ -0,0 +1,207 @@
+package com.usermanagement.service;
+
+import com.usermanagement.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+/**
+ * In-memory prefix index over the distinct values of the user search fields, used for autocomplete
+ * Each field keeps its lower-cased values in a sorted map, so the completions of a prefix are
+ * the next entries after it: a lookup costs one O(log n) seek plus the number of completions
+ * returned, and never touches the database. The index is loaded at startup and kept up to date
+ * from {@link UserChangeEvent}s and {@link UsersImportedEvent}s.
+ */
+@Component
+public class UserSuggestIndex {
+    
+    /**
+     * Fields that can be completed
+     */
+    public enum Field {
+        NAME(User::getName),
+        SURNAME(User::getSurname),
+        EMAIL(User::getEmail),
+        NATIONALITY(User::getNationality);
+        
+        private final Function<User, String> accessor;
+        
+        Field(Function<User, String> accessor) {
+            this.accessor = accessor;
+        }
+        
+        /**
+         * Parse a field from its request parameter form
+         * @param value The field name, in any case
+         * @return The field
+         * @throws IllegalArgumentException if there is no such field
+         */
+        public static Field fromValue(String value) {
+            for (Field field : values()) {
+                if (field.name().equalsIgnoreCase(value)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported suggest field: " + value);
+        }
+    }
+    
+    /**
+     * Number of completions returned when no limit is given
+     */
+    public static final int DEFAULT_LIMIT = 10;
+    
+    /**
+     * Largest number of completions a lookup may request
+     */
+    public static final int MAX_LIMIT = 100;
+    
+    private static final Logger logger = LoggerFactory.getLogger(UserSuggestIndex.class);
+    
+    private final UserService userService;
+    private volatile Map<Field, NavigableMap<String, Entry>> index = emptyIndex();
+    
+    @Autowired
+    public UserSuggestIndex(UserService userService) {
+        this.userService = userService;
+    }
+    
+    /**
+     * Get the values of a field starting with a prefix, ignoring case
+     * @param field The field to complete
+     * @param prefix The prefix typed so far
+     * @param limit The maximum number of completions, or null for the default
+     * @return The matching values in alphabetical order
+     * @throws IllegalArgumentException if limit is out of range
+     */
+    public List<String> suggest(Field field, String prefix, Integer limit) {
+        int maxResults = limit == null ? DEFAULT_LIMIT : limit;
+        if (maxResults < 1 || maxResults > MAX_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_LIMIT + ": " + limit);
+        }
+        String key = normalize(prefix);
+        List<String> suggestions = new ArrayList<>(maxResults);
+        for (Map.Entry<String, Entry> entry : index.get(field).tailMap(key, true).entrySet()) {
+            if (!entry.getKey().startsWith(key) || suggestions.size() == maxResults) {
+                break;
+            }
+            suggestions.add(entry.getValue().value);
+        }
+        return suggestions;
+    }
+    
+    /**
+     * Load the index from the database once the application has started
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        Map<Field, NavigableMap<String, Entry>> rebuilt = emptyIndex();
+        long[] users = new long[1];
+        userService.exportUsers(user -> {
+            add(rebuilt, user);
+            users[0]++;
+        });
+        index = rebuilt;
+        logger.info("Suggest index loaded from {} users", users[0]);
+    }
+    
+    /**
+     * Apply a committed user change to the index
+     * @param event The change
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onUserChange(UserChangeEvent event) {
+        Map<Field, NavigableMap<String, Entry>> current = index;
+        if (event.getPrevious() != null) {
+            remove(current, event.getPrevious());
+        }
+        if (event.getCurrent() != null) {
+            add(current, event.getCurrent());
+        }
+    }
+    
+    /**
+     * Index a committed chunk of imported users
+     * @param event The import
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onUsersImported(UsersImportedEvent event) {
+        Map<Field, NavigableMap<String, Entry>> current = index;
+        for (User user : event.getUsers()) {
+            add(current, user);
+        }
+    }
+    
+    private static void add(Map<Field, NavigableMap<String, Entry>> index, User user) {
+        for (Field field : Field.values()) {
+            String value = field.accessor.apply(user);
+            if (value == null) {
+                continue;
+            }
+            NavigableMap<String, Entry> values = index.get(field);
+            String key = normalize(value);
+            Entry entry = values.get(key);
+            values.put(key, entry == null ? new Entry(value, 1) : new Entry(entry.value, entry.count + 1));
+        }
+    }
+    
+    private static void remove(Map<Field, NavigableMap<String, Entry>> index, User user) {
+        for (Field field : Field.values()) {
+            String value = field.accessor.apply(user);
+            if (value == null) {
+                continue;
+            }
+            NavigableMap<String, Entry> values = index.get(field);
+            String key = normalize(value);
+            Entry entry = values.get(key);
+            if (entry == null) {
+                continue;
+            }
+            if (entry.count > 1) {
+                values.put(key, new Entry(entry.value, entry.count - 1));
+            } else {
+                values.remove(key);
+            }
+        }
+    }
+    
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    private static Map<Field, NavigableMap<String, Entry>> emptyIndex() {
+        Map<Field, NavigableMap<String, Entry>> index = new EnumMap<>(Field.class);
+        for (Field field : Field.values()) {
+            index.put(field, new ConcurrentSkipListMap<>());
+        }
+        return index;
+    }
+    
+    /**
+     * A distinct field value with the number of users holding it
+     * Immutable, so lock-free readers always see a consistent entry
+     */
+    private static final class Entry {
+        
+        private final String value;
+        private final int count;
+        
+        private Entry(String value, int count) {
+            this.value = value;
+            this.count = count;
+        }
+    }
+}
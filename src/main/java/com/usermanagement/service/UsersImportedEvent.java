@@ -0,0 +1,37 @@
+package com.usermanagement.service;
+
+import com.usermanagement.model.User;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Application event published by a bulk import for every chunk of users it commits
+ * It stands in for a {@link UserChangeEvent} per created user, so a large import is one event
+ * per chunk for the change feed and the in-memory indexes rather than one per row. Listeners
+ * receive it once the chunk is committed. The users carried by the event are snapshots and are
+ * not modified afterwards.
+ */
+public class UsersImportedEvent {
+    
+    private final Long importId;
+    private final List<User> users;
+    
+    /**
+     * Constructs a new import event
+     * @param importId The ID of the import
+     * @param users Snapshots of the users created by the chunk
+     */
+    public UsersImportedEvent(Long importId, List<User> users) {
+        this.importId = importId;
+        this.users = Collections.unmodifiableList(users);
+    }
+    
+    public Long getImportId() {
+        return importId;
+    }
+    
+    public List<User> getUsers() {
+        return users;
+    }
+}
@@ -0,0 +1,136 @@
+package com.usermanagement;
+
+import com.usermanagement.config.AdaptiveConcurrencyLimit;
+import com.usermanagement.config.AdmissionControlFilter;
+import com.usermanagement.config.AdmissionControlFilter.EndpointClass;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:admission",
+        "user.admission.listing.min-limit=1",
+        "user.admission.listing.max-limit=1"
+})
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+public class AdmissionControlTests {
+
+    private static final long FAST = 1_000_000;
+    private static final long SLOW = 20_000_000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AdmissionControlFilter admissionControlFilter;
+
+    @Test
+    public void testListingsOverTheLimitAreShedBeforeLookups() throws Exception {
+        AdaptiveConcurrencyLimit listings = admissionControlFilter.getLimit(EndpointClass.LISTING);
+        assertTrue(listings.tryAcquire());
+        try {
+            mockMvc.perform(get("/api/users"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+                    .andExpect(jsonPath("$.error").exists());
+            mockMvc.perform(get("/api/users/search/name").param("name", "Shed"))
+                    .andExpect(status().isServiceUnavailable());
+            mockMvc.perform(get("/api/users/{id}", 999999))
+                    .andExpect(status().isNotFound());
+            mockMvc.perform(get("/api/users/search/email").param("email", "nobody@example.com"))
+                    .andExpect(status().isNotFound());
+        } finally {
+            listings.release();
+        }
+        mockMvc.perform(get("/api/users"))
+                .andExpect(status().isOk());
+        assertEquals(0, listings.getInFlight());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(allOf(
+                        containsString("http_server_admission_total{class=\"listing\",outcome=\"shed\",} 2.0"),
+                        containsString("http_server_admission_total{class=\"lookup\",outcome=\"admitted\",}"),
+                        containsString("http_server_admission_limit{class=\"listing\",} 1.0"),
+                        containsString("http_server_admission_in_flight{class=\"lookup\",}"))));
+    }
+
+    @Test
+    public void testLimitGrowsWhileFastAndShrinksWhenLatencyInflates() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 100, 2.0, null);
+        int initial = limit.getLimit();
+
+        for (int i = 0; i < 50; i++) {
+            saturate(limit, FAST);
+        }
+        int grown = limit.getLimit();
+        assertTrue(grown > initial, grown + " > " + initial);
+
+        for (int i = 0; i < 20; i++) {
+            saturate(limit, SLOW);
+        }
+        assertTrue(limit.getLimit() < grown / 2, limit.getLimit() + " < " + grown / 2);
+    }
+
+    @Test
+    public void testLimitDoesNotGrowWhenUnused() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 100, 2.0, null);
+        int initial = limit.getLimit();
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(limit.tryAcquire());
+            limit.release(FAST);
+        }
+
+        assertEquals(initial, limit.getLimit());
+    }
+
+    @Test
+    public void testLowerPriorityLimitYieldsToHigherPriorityLatency() {
+        AdaptiveConcurrencyLimit lookups = new AdaptiveConcurrencyLimit(1, 100, 2.0, null);
+        AdaptiveConcurrencyLimit listings = new AdaptiveConcurrencyLimit(1, 100, 2.0, lookups);
+        for (int i = 0; i < 50; i++) {
+            saturate(lookups, FAST);
+        }
+        int listingLimit = listings.getLimit();
+
+        // Lookups slow down while listings, the cause, stay fast themselves
+        for (int i = 0; i < 20; i++) {
+            saturate(lookups, SLOW);
+            saturate(listings, FAST);
+        }
+
+        assertTrue(listings.getLimit() < listingLimit / 2, listings.getLimit() + " < " + listingLimit / 2);
+    }
+
+    @Test
+    public void testInvalidLimitRangeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimit(0, 10, 2.0, null));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimit(10, 5, 2.0, null));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimit(1, 10, 0.5, null));
+    }
+
+    /**
+     * Admit as many requests as the limit allows, then release them all with the given latency
+     */
+    private static void saturate(AdaptiveConcurrencyLimit limit, long latencyNanos) {
+        int admitted = 0;
+        while (limit.tryAcquire()) {
+            admitted++;
+        }
+        assertFalse(limit.tryAcquire());
+        for (int i = 0; i < admitted; i++) {
+            limit.release(latencyNanos);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.usermanagement;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+@SpringBootTest
+@ActiveProfiles("memory")
+public class InMemoryUserDeleteTests extends UserDeleteTests {
+}
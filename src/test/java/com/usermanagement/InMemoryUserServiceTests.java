@@ -0,0 +1,73 @@
+package com.usermanagement;
+
+import com.usermanagement.model.User;
+import com.usermanagement.model.UserBulkDelete;
+import com.usermanagement.service.InMemoryUserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("memory")
+public class InMemoryUserServiceTests extends UserServiceContractTests {
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Test
+    public void testRunsWithoutDatabase() {
+        assertTrue(userService instanceof InMemoryUserService);
+        assertTrue(context.getBeansOfType(DataSource.class).isEmpty());
+    }
+
+    @Test
+    public void testReadsStayConsistentWhileUsersChurn() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            users.add(new User(null, "Churn", "User" + i, "churn" + i + "@example.com", "Icelandic"));
+        }
+        userService.saveUsers(users);
+        Long firstId = users.get(0).getId();
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    User user = userService.getUserById(firstId).orElseThrow(AssertionError::new);
+                    assertEquals("churn0@example.com", user.getEmail());
+                    for (User listed : userService.searchUsersByName("Churn", null, 100).getItems()) {
+                        assertEquals("Churn", listed.getName());
+                    }
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        for (int i = 1; i < users.size(); i++) {
+            userService.deleteUser(users.get(i).getId(), null);
+            userService.createUser(new User(null, "Churn", "Again" + i, "churn.again" + i + "@example.com", "Icelandic"));
+        }
+        done.set(true);
+        reader.join();
+
+        assertNull(failure.get());
+        assertEquals(Long.valueOf(5000), userService.countUsersByNationality().get("Icelandic"));
+        UserBulkDelete purge = new UserBulkDelete();
+        purge.setName("Churn");
+        assertEquals(5000, userService.deleteUsers(purge));
+        assertFalse(userService.countUsersByNationality().containsKey("Icelandic"));
+        assertFalse(userService.getUserByEmail("churn0@example.com").isPresent());
+    }
+}
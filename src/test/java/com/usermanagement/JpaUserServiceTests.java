@@ -0,0 +1,56 @@
+package com.usermanagement;
+
+import com.usermanagement.model.User;
+import com.usermanagement.model.UserQuery;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:contract")
+public class JpaUserServiceTests extends UserServiceContractTests {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    public void testListingsReturnUsersOutsideThePersistenceContext() {
+        User created = userService.createUser(new User(null, "Projected", "Projection", "projected.listing@example.com", "Belgian"));
+
+        List<User> listed = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            listed.addAll(userService.searchUsersByName("Projected", null, null).getItems());
+            listed.addAll(userService.searchUsersBySurname("Projection", null, null).getItems());
+            listed.addAll(userService.searchUsersByNationality("Belgian", null, null).getItems());
+            listed.addAll(userService.getAllUsers(created.getId() - 1, 1).getItems());
+            UserQuery query = new UserQuery();
+            query.setName("Projected");
+            query.setSortField(UserQuery.SortField.NATIONALITY);
+            listed.addAll(userService.queryUsers(query).getItems());
+
+            for (User user : listed) {
+                assertFalse(entityManager.contains(user));
+                user.setName("Changed");
+            }
+            entityManager.flush();
+        });
+
+        assertEquals(5, listed.size());
+        for (User user : listed) {
+            assertEquals(created.getId(), user.getId());
+            assertEquals(created.getVersion(), user.getVersion());
+            assertEquals("projected.listing@example.com", user.getEmailNormalized());
+            assertEquals("Belgian", user.getNationality());
+        }
+        assertEquals("Projected", userService.searchUsersBySurname("Projection", null, null).getItems().get(0).getName());
+    }
+}
@@ -0,0 +1,41 @@
+package com.usermanagement;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:metrics")
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+public class MetricsTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void testPrometheusEndpointExposesRequestRepositoryAndHibernateMetrics() throws Exception {
+        mockMvc.perform(post("/api/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"John\",\"surname\":\"Doe\",\"email\":\"metrics@example.com\",\"nationality\":\"American\"}"))
+                .andExpect(status().isCreated());
+        mockMvc.perform(get("/api/users/{id}", 999999))
+                .andExpect(status().isNotFound());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(allOf(
+                        containsString("http_server_requests_seconds_count{exception=\"None\",method=\"POST\",outcome=\"SUCCESS\",status=\"201\",uri=\"/api/users\""),
+                        containsString("outcome=\"CLIENT_ERROR\",status=\"404\",uri=\"/api/users/{id}\""),
+                        containsString("spring_data_repository_invocations_seconds_count{exception=\"None\",method=\"saveAndFlush\",repository=\"UserRepository\""),
+                        containsString("hibernate_statements_total"),
+                        containsString("hibernate_flushes_total"))));
+    }
+}
@@ -0,0 +1,133 @@
+package com.usermanagement;
+
+import com.usermanagement.model.CursorPage;
+import com.usermanagement.model.User;
+import com.usermanagement.model.UserPatch;
+import com.usermanagement.model.UserQuery;
+import com.usermanagement.repository.NationalityCodes;
+import com.usermanagement.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:nationality")
+public class NationalityDictionaryTests {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private NationalityCodes nationalityCodes;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testNationalityIsStoredAsCode() {
+        User user = userService.createUser(new User(null, "Coded", "User", "coded.user@example.com", "Maltese"));
+        userService.createUser(new User(null, "Coded", "Other", "coded.other@example.com", "Maltese"));
+
+        Short stored = jdbcTemplate.queryForObject(
+                "select nationality_id from users where id = ?", Short.class, user.getId());
+        assertEquals(Short.valueOf(nationalityCodes.codeOf("Maltese")), stored);
+        assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject(
+                "select count(*) from nationalities where name = 'Maltese'", Integer.class));
+        assertEquals("Maltese", nationalityCodes.nameOf(stored));
+        assertEquals(Long.valueOf(2), userService.countUsersByNationality().get("Maltese"));
+    }
+
+    @Test
+    public void testUsersShareNationalityInstance() {
+        userService.createUser(new User(null, "Shared", "First", "shared.first@example.com", new String("Cypriot")));
+        userService.createUser(new User(null, "Shared", "Second", "shared.second@example.com", new String("Cypriot")));
+
+        List<User> users = userService.searchUsersByNationality("Cypriot", null, null).getItems();
+        assertEquals(2, users.size());
+        assertSame(users.get(0).getNationality(), users.get(1).getNationality());
+        assertSame(users.get(0).getNationality(), new User(null, "a", "b", "c@example.com", new String("Cypriot")).getNationality());
+    }
+
+    @Test
+    public void testPatchRegistersNewNationality() {
+        User user = userService.createUser(new User(null, "Patched", "Nationality", "patched.nationality@example.com", "Greek"));
+
+        UserPatch patch = new UserPatch();
+        patch.setNationality("Icelandic");
+        assertEquals("Icelandic", userService.patchUser(user.getId(), patch, null).getNationality());
+        assertEquals(Arrays.asList(user.getId()), ids(userService.searchUsersByNationality("Icelandic", null, null).getItems()));
+    }
+
+    @Test
+    public void testSearchingUnknownNationalityDoesNotRegisterIt() {
+        int size = nationalityCodes.size();
+
+        assertTrue(userService.searchUsersByNationality("Atlantean", null, null).getItems().isEmpty());
+        UserQuery query = new UserQuery();
+        query.setNationality("Atlantean");
+        assertTrue(userService.queryUsers(query).getItems().isEmpty());
+
+        assertEquals(NationalityCodes.UNKNOWN, nationalityCodes.codeOf("Atlantean"));
+        assertEquals(size, nationalityCodes.size());
+        assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject(
+                "select count(*) from nationalities where name = 'Atlantean'", Integer.class));
+    }
+
+    @Test
+    public void testEntriesAddedByAnotherInstanceAreLookedUp() {
+        User user = userService.createUser(new User(null, "Remote", "Registration", "remote.registration@example.com", "Estonian"));
+        // Another instance registers a nationality and writes a user with it
+        short code = jdbcTemplate.queryForObject("select coalesce(max(id), -1) + 1 from nationalities", Short.class);
+        jdbcTemplate.update("insert into nationalities (id, name) values (?, 'Latvian')", code);
+        jdbcTemplate.update("update users set nationality_id = ? where id = ?", code, user.getId());
+
+        assertEquals("Latvian", userService.getUserById(user.getId()).get().getNationality());
+        assertEquals(code, nationalityCodes.codeOf("Latvian"));
+        assertEquals(Arrays.asList(user.getId()), ids(userService.searchUsersByNationality("Latvian", null, null).getItems()));
+    }
+
+    @Test
+    public void testRegisterSkipsCodeTakenByAnotherInstance() {
+        short taken = jdbcTemplate.queryForObject("select coalesce(max(id), -1) + 1 from nationalities", Short.class);
+        jdbcTemplate.update("insert into nationalities (id, name) values (?, 'Lithuanian')", taken);
+
+        short code = nationalityCodes.register("Finnish");
+        assertNotEquals(taken, code);
+        assertEquals("Finnish", jdbcTemplate.queryForObject("select name from nationalities where id = ?", String.class, code));
+        assertEquals(taken, nationalityCodes.codeOf("Lithuanian"));
+        assertEquals("Lithuanian", nationalityCodes.nameOf(taken));
+    }
+
+    @Test
+    public void testSortByNationalityIsAlphabetical() {
+        // Codes follow registration order, which is not the alphabetical order
+        User zambian = userService.createUser(new User(null, "Sorted", "Nationality", "sorted.zambian@example.com", "Zambian"));
+        User angolan = userService.createUser(new User(null, "Sorted", "Nationality", "sorted.angolan@example.com", "Angolan"));
+        User kenyan = userService.createUser(new User(null, "Sorted", "Nationality", "sorted.kenyan@example.com", "Kenyan"));
+
+        UserQuery query = new UserQuery();
+        query.setSurname("Nationality");
+        query.setSortField(UserQuery.SortField.NATIONALITY);
+        query.setLimit(2);
+        List<Long> read = new ArrayList<>();
+        CursorPage<User> page;
+        do {
+            page = userService.queryUsers(query);
+            read.addAll(ids(page.getItems()));
+            query.setAfter(page.getNextCursor());
+        } while (page.hasNext());
+
+        assertEquals(ids(Arrays.asList(angolan, kenyan, zambian)), read);
+    }
+
+    private static List<Long> ids(List<User> users) {
+        return users.stream().map(User::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,13 @@
+package com.usermanagement;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Deletes and bulk deletes without H2's data change delta tables, as on other databases
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:delete-portable",
+        "user.write.delta-tables=false"
+})
+public class PortableUserDeleteTests extends UserDeleteTests {
+}
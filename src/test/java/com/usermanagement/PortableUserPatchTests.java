@@ -0,0 +1,13 @@
+package com.usermanagement;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Partial updates without H2's data change delta tables, as on other databases
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:patch-portable",
+        "user.write.delta-tables=false"
+})
+public class PortableUserPatchTests extends UserPatchTests {
+}
@@ -0,0 +1,135 @@
+package com.usermanagement;
+
+import com.usermanagement.config.ReactiveReadServer;
+import com.usermanagement.model.User;
+import com.usermanagement.repository.ReactiveUserRepository;
+import com.usermanagement.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:reactive",
+        "user.reactive.enabled=true",
+        "user.reactive.port=0"
+})
+public class ReactiveReadApiTests {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ReactiveReadServer reactiveReadServer;
+
+    private WebTestClient client;
+
+    @BeforeEach
+    public void setUp() {
+        client = WebTestClient.bindToServer().baseUrl("http://localhost:" + reactiveReadServer.getPort()).build();
+    }
+
+    @Test
+    public void testGetUserById() {
+        User user = userService.createUser(new User(null, "Reactive", "Reader", "reactive.reader@example.com", "Estonian"));
+
+        client.get().uri("/api/users/{id}", user.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.email").isEqualTo("reactive.reader@example.com")
+                .jsonPath("$.version").isEqualTo(0);
+
+        client.get().uri("/api/users/{id}", -1)
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.error").isEqualTo("User not found with id: -1");
+    }
+
+    @Test
+    public void testSearchStreamsMatchingUsersInIdOrder() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            users.add(new User(null, "Stream", "User" + i, "stream" + i + "@example.com", "Latvian"));
+        }
+        userService.saveUsers(users);
+        userService.createUser(new User(null, "Other", "User", "other.stream@example.com", "Lithuanian"));
+
+        Flux<User> body = client.get().uri("/api/users/search/nationality?nationality=Latvian&limit=3")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(User.class)
+                .getResponseBody();
+        List<User> page = body.collectList().block();
+        assertEquals(3, page.size());
+        assertEquals("User0", page.get(0).getSurname());
+        assertTrue(page.get(0).getId() < page.get(1).getId());
+
+        List<String> rest = client.get().uri("/api/users/search/nationality?nationality=Latvian&after={after}",
+                        page.get(2).getId())
+                .exchange()
+                .returnResult(User.class)
+                .getResponseBody()
+                .map(User::getSurname)
+                .collectList()
+                .block();
+        assertEquals(Arrays.asList("User3", "User4"), rest);
+    }
+
+    @Test
+    public void testListingsAreBoundedByDefault() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < UserService.DEFAULT_PAGE_LIMIT + 10; i++) {
+            users.add(new User(null, "Bounded", "User" + i, "bounded" + i + "@example.com", "Maltese"));
+        }
+        userService.saveUsers(users);
+
+        List<User> page = client.get().uri("/api/users/search/name?name=Bounded")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(User.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+        assertEquals(UserService.DEFAULT_PAGE_LIMIT, page.size());
+
+        List<User> rest = client.get().uri("/api/users/search/name?name=Bounded&after={after}",
+                        page.get(page.size() - 1).getId())
+                .exchange()
+                .returnResult(User.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+        assertEquals(10, rest.size());
+        assertEquals("User" + UserService.DEFAULT_PAGE_LIMIT, rest.get(0).getSurname());
+    }
+
+    @Test
+    public void testInvalidParametersAreRejected() {
+        client.get().uri("/api/users?limit={limit}", UserService.MAX_PAGE_LIMIT + 1).exchange().expectStatus().isBadRequest();
+        client.get().uri("/api/users?limit=0").exchange().expectStatus().isBadRequest();
+        client.get().uri("/api/users?after=x").exchange().expectStatus().isBadRequest();
+        client.get().uri("/api/users/search/name").exchange().expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void testR2dbcUrlIsDerivedFromJdbcUrl() {
+        assertEquals("r2dbc:pool:h2:mem:///userdb?maxSize=10", ReactiveUserRepository.toR2dbcUrl("jdbc:h2:mem:userdb", 10));
+        assertEquals("r2dbc:pool:h2:mem:///replica?maxSize=5&options=DB_CLOSE_DELAY=-1",
+                ReactiveUserRepository.toR2dbcUrl("jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1", 5));
+        assertEquals("r2dbc:pool:postgresql://db:5432/users?maxSize=10",
+                ReactiveUserRepository.toR2dbcUrl("jdbc:postgresql://db:5432/users", 10));
+        assertThrows(IllegalArgumentException.class, () -> ReactiveUserRepository.toR2dbcUrl("r2dbc:h2:mem:///userdb", 10));
+    }
+}
@@ -0,0 +1,170 @@
+package com.usermanagement;
+
+import com.usermanagement.config.ReplicaRoutingFilter;
+import com.usermanagement.model.User;
+import com.usermanagement.repository.NationalityCodes;
+import com.usermanagement.repository.ReplicaRouting;
+import com.usermanagement.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.servlet.http.Cookie;
+import javax.sql.DataSource;
+import java.time.Duration;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Replica routing against two embedded databases, the replica lagging a few seconds behind
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-primary",
+        "user.replica.enabled=true",
+        "user.replica.url=jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1",
+        "user.replica.local-replication.enabled=true",
+        "user.replica.local-replication.lag=3s",
+        "user.replica.read-your-writes-window=10s"
+})
+@AutoConfigureMockMvc
+public class ReplicaRoutingTests {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NationalityCodes nationalityCodes;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private DataSource replicaDataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testReadOnlyTransactionsGoToReplica() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        assertEquals("ROUTING-REPLICA", readOnly.execute(status -> database()));
+        assertEquals("ROUTING-PRIMARY", new TransactionTemplate(transactionManager).execute(status -> database()));
+        assertEquals("ROUTING-PRIMARY", database());
+        assertEquals("ROUTING-PRIMARY", ReplicaRouting.onPrimary(() -> readOnly.execute(status -> database())));
+        assertEquals("ROUTING-REPLICA", readOnly.execute(status -> database()));
+    }
+
+    @Test
+    public void testLookupsReadReplica() {
+        // A user only the replica has, as if deleted on the primary but not replicated yet
+        short code = nationalityCodes.register("Norwegian");
+        JdbcTemplate replica = new JdbcTemplate(replicaDataSource);
+        replica.update("merge into nationalities (id, name) key (id) values (?, 'Norwegian')", code);
+        replica.update("insert into users (id, version, name, surname, email, email_normalized, nationality_id) "
+                + "values (-100, 0, 'Replica', 'Only', 'replica.only@example.com', 'replica.only@example.com', ?)", code);
+
+        assertEquals("Replica", userService.getUserById(-100L).map(User::getName).orElse(null));
+        assertEquals(Long.valueOf(-100), userService.getUserByEmail("Replica.Only@example.com").map(User::getId).orElse(null));
+    }
+
+    @Test
+    public void testRecentlyWrittenUsersAreReadFromPrimary() throws InterruptedException {
+        User user = userService.createUser(new User(null, "Recent", "Replicated", "recent.replicated@example.com", "Estonian"));
+
+        // Listings read the replica, which has not applied the write yet, unlike lookups of the user
+        assertTrue(userService.searchUsersBySurname("Replicated", null, null).getItems().isEmpty());
+        assertEquals(user.getId(), userService.getUserById(user.getId()).map(User::getId).orElse(null));
+        assertEquals(user.getId(), userService.getUserByEmail("recent.replicated@example.com").map(User::getId).orElse(null));
+        assertEquals(user.getVersion(), userService.getUserVersion(user.getId()).orElse(null));
+
+        long deadline = System.currentTimeMillis() + 15_000;
+        while (userService.searchUsersBySurname("Replicated", null, null).getItems().isEmpty()) {
+            assertTrue(System.currentTimeMillis() < deadline, "replica did not catch up");
+            Thread.sleep(100);
+        }
+        assertEquals("Estonian", userService.searchUsersBySurname("Replicated", null, null).getItems().get(0).getNationality());
+    }
+
+    @Test
+    public void testClientReadsItsOwnWrites() throws Exception {
+        MvcResult created = mockMvc.perform(post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Cookie\",\"surname\":\"Writer\",\"email\":\"cookie.writer@example.com\",\"nationality\":\"Latvian\"}"))
+                .andExpect(status().isCreated())
+                .andExpect(cookie().exists(ReplicaRoutingFilter.COOKIE))
+                .andExpect(cookie().httpOnly(ReplicaRoutingFilter.COOKIE, true))
+                .andReturn();
+        Cookie cookie = created.getResponse().getCookie(ReplicaRoutingFilter.COOKIE);
+
+        mockMvc.perform(get("/api/users/search/surname").param("surname", "Writer").cookie(cookie))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("cookie.writer@example.com")));
+
+        ReplicaRoutingFilter filter = new ReplicaRoutingFilter(Duration.ofSeconds(10));
+        assertTrue(pinnedBy(filter, new MockHttpServletRequest("GET", "/api/users"), cookie));
+        assertTrue(pinnedBy(filter, new MockHttpServletRequest("DELETE", "/api/users/1")));
+        assertFalse(pinnedBy(filter, new MockHttpServletRequest("GET", "/api/users")));
+        assertFalse(pinnedBy(filter, new MockHttpServletRequest("GET", "/api/users"),
+                new Cookie(ReplicaRoutingFilter.COOKIE, Long.toString(System.currentTimeMillis() - 1))));
+    }
+
+    @Test
+    public void testListingsStayOnReplicaUntaggedWhileItLags() throws Exception {
+        MvcResult created = mockMvc.perform(post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Tagged\",\"surname\":\"Listing\",\"email\":\"tagged.listing@example.com\",\"nationality\":\"Lithuanian\"}"))
+                .andExpect(status().isCreated())
+                .andReturn();
+        Cookie cookie = created.getResponse().getCookie(ReplicaRoutingFilter.COOKIE);
+
+        // Other clients read the lagging replica, without the tag that already counts the write
+        mockMvc.perform(get("/api/users/search/surname").param("surname", "Listing"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("ETag"))
+                .andExpect(content().string(not(containsString("tagged.listing@example.com"))));
+
+        // The writer reads the primary, whose page matches the tag
+        MvcResult listed = mockMvc.perform(get("/api/users/search/surname").param("surname", "Listing").cookie(cookie))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(content().string(containsString("tagged.listing@example.com")))
+                .andReturn();
+        String etag = listed.getResponse().getHeader("ETag");
+        mockMvc.perform(get("/api/users/search/surname").param("surname", "Listing").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+    }
+
+    private static boolean pinnedBy(ReplicaRoutingFilter filter, MockHttpServletRequest request, Cookie... cookies)
+            throws Exception {
+        if (cookies.length > 0) {
+            request.setCookies(cookies);
+        }
+        boolean[] pinned = new boolean[1];
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> pinned[0] = ReplicaRouting.isPinnedToPrimary());
+        assertFalse(ReplicaRouting.isPinnedToPrimary());
+        return pinned[0];
+    }
+
+    private String database() {
+        return jdbcTemplate.queryForObject("select database()", String.class);
+    }
+}
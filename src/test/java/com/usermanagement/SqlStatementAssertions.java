@@ -0,0 +1,32 @@
+package com.usermanagement;
+
+import com.usermanagement.config.SqlStatementCounter;
+import org.junit.jupiter.api.function.ThrowingSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Assertions on the number of SQL statements a piece of code issues, so that a change adding
+ * round trips to a request or service call fails the tests
+ * The code must run on the calling thread, as MockMvc requests and service calls do.
+ */
+public final class SqlStatementAssertions {
+
+    private SqlStatementAssertions() {
+    }
+
+    /**
+     * Run an action and check the number of statements it issued
+     * @param expected The exact number of statements expected
+     * @param action The action
+     * @param <T> The type of the action's result
+     * @return The result of the action
+     */
+    public static <T> T assertStatements(long expected, ThrowingSupplier<T> action) throws Throwable {
+        try (SqlStatementCounter.Scope scope = SqlStatementCounter.open()) {
+            T result = action.get();
+            assertEquals(expected, scope.getCount(), "SQL statements issued");
+            return result;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.usermanagement;
+
+import com.usermanagement.config.SqlStatementCounter;
+import com.usermanagement.model.User;
+import com.usermanagement.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static com.usermanagement.SqlStatementAssertions.assertStatements;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Round trips to the database per endpoint; a change issuing more statements fails here
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:statements")
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+public class SqlStatementBudgetTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserService userService;
+
+    @Test
+    public void testReadsIssueOneStatement() throws Throwable {
+        User user = userService.createUser(new User(null, "Budget", "Read", "budget.read@example.com", "Danish"));
+
+        assertStatements(1, () -> mockMvc.perform(get("/api/users/{id}", user.getId()))
+                .andExpect(status().isOk()));
+        assertStatements(0, () -> mockMvc.perform(get("/api/users/{id}", user.getId()))
+                .andExpect(status().isOk()));
+        assertStatements(1, () -> mockMvc.perform(get("/api/users/{id}", -1))
+                .andExpect(status().isNotFound()));
+        assertStatements(1, () -> mockMvc.perform(get("/api/users/search/surname").param("surname", "Read"))
+                .andExpect(status().isOk()));
+        assertStatements(1, () -> mockMvc.perform(get("/api/users/query")
+                        .param("nationality", "Danish").param("sort", "nationality,asc"))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    public void testWritesIssueNoRedundantStatements() throws Throwable {
+        // Creating is not counted: one insert, plus a sequence call for every 50 IDs handed out
+        User user = userService.createUser(new User(null, "Budget", "Write", "budget.write@example.com", "Danish"));
+
+        assertStatements(1, () -> mockMvc.perform(patch("/api/users/{id}", user.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"surname\":\"Patched\"}"))
+                .andExpect(status().isOk()));
+        assertStatements(2, () -> mockMvc.perform(put("/api/users/{id}", user.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Budget\",\"surname\":\"Put\",\"email\":\"budget.write@example.com\",\"nationality\":\"Danish\"}"))
+                .andExpect(status().isOk()));
+        assertStatements(1, () -> mockMvc.perform(delete("/api/users/{id}", user.getId()))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    public void testServiceCallScopesNestInRequestScope() throws Throwable {
+        User user = userService.createUser(new User(null, "Budget", "Nested", "budget.nested@example.com", "Danish"));
+
+        try (SqlStatementCounter.Scope outer = SqlStatementCounter.open()) {
+            assertStatements(1, () -> userService.getUserVersion(user.getId()));
+            assertStatements(1, () -> userService.searchUsersByName("Budget", null, null));
+            assertEquals(2, outer.getCount());
+        }
+    }
+
+    @Test
+    public void testStatementCountsArePublished() throws Exception {
+        mockMvc.perform(get("/api/users/search/name").param("name", "Nobody"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(allOf(
+                        containsString("sql_statements_request_count{method=\"GET\",uri=\"/api/users/search/name\""),
+                        containsString("sql_statements_call_count{method=\"searchUsersByName\""))));
+    }
+}
@@ -0,0 +1,137 @@
+package com.usermanagement;
+
+import com.usermanagement.model.User;
+import com.usermanagement.service.UserCache;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserCacheTests {
+
+    private final Map<Long, User> database = new HashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Function<Long, Optional<User>> loadById = id -> {
+        loads.incrementAndGet();
+        User user = database.get(id);
+        return Optional.ofNullable(user == null ? null : copy(user));
+    };
+
+    private final Function<String, Optional<User>> loadByEmail = email -> {
+        loads.incrementAndGet();
+        return database.values().stream()
+                .filter(user -> user.getEmail().equals(email))
+                .findFirst()
+                .map(UserCacheTests::copy);
+    };
+
+    @Test
+    public void testCachedReadsReturnSameInstanceWithoutLoading() {
+        UserCache cache = new UserCache(100, Duration.ofMinutes(10));
+        database.put(1L, new User(1L, "John", "Doe", "john.doe@example.com", "American"));
+
+        User first = cache.getById(1L, loadById).get();
+        User byId = cache.getById(1L, loadById).get();
+        User byEmail = cache.getByEmail("john.doe@example.com", loadByEmail).get();
+
+        assertEquals(1, loads.get());
+        assertSame(first, byId);
+        assertSame(first, byEmail);
+        assertEquals(2L, cache.getStats().get("hits"));
+        assertEquals(1L, cache.getStats().get("misses"));
+    }
+
+    @Test
+    public void testMissingUsersAreNotCached() {
+        UserCache cache = new UserCache(100, Duration.ofMinutes(10));
+
+        assertFalse(cache.getById(1L, loadById).isPresent());
+        assertFalse(cache.getById(1L, loadById).isPresent());
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testInvalidateMovesEmailKey() {
+        UserCache cache = new UserCache(100, Duration.ofMinutes(10));
+        database.put(1L, new User(1L, "John", "Doe", "john.doe@example.com", "American"));
+        cache.getByEmail("john.doe@example.com", loadByEmail);
+
+        database.put(1L, new User(1L, "John", "Doe", "john.new@example.com", "American"));
+        cache.invalidate(1L, "john.doe@example.com", "john.new@example.com");
+
+        assertFalse(cache.getByEmail("john.doe@example.com", loadByEmail).isPresent());
+        assertEquals("john.new@example.com", cache.getById(1L, loadById).get().getEmail());
+        assertEquals("john.new@example.com", cache.getByEmail("john.new@example.com", loadByEmail).get().getEmail());
+    }
+
+    @Test
+    public void testStaleEmailKeyIsNotServed() {
+        UserCache cache = new UserCache(100, Duration.ofMinutes(10));
+        database.put(1L, new User(1L, "John", "Doe", "john.doe@example.com", "American"));
+        cache.getByEmail("john.doe@example.com", loadByEmail);
+
+        // Only the ID is invalidated, the old email key still points at user 1
+        database.put(1L, new User(1L, "John", "Doe", "john.new@example.com", "American"));
+        cache.invalidate(1L);
+        cache.getById(1L, loadById);
+
+        assertFalse(cache.getByEmail("john.doe@example.com", loadByEmail).isPresent());
+    }
+
+    @Test
+    public void testLoadRacingWithInvalidationIsNotCached() {
+        UserCache cache = new UserCache(100, Duration.ofMinutes(10));
+        database.put(1L, new User(1L, "John", "Doe", "john.doe@example.com", "American"));
+
+        cache.getById(1L, id -> {
+            Optional<User> stale = loadById.apply(id);
+            cache.invalidate(1L, "john.doe@example.com");
+            return stale;
+        });
+        cache.getById(1L, loadById);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testSizeBoundEvicts() {
+        UserCache cache = new UserCache(1, Duration.ofMinutes(10));
+        for (long id = 1; id <= 3; id++) {
+            database.put(id, new User(id, "John", "Doe", "john" + id + "@example.com", "American"));
+            cache.getById(id, loadById);
+        }
+
+        assertTrue(cache.getStats().get("evictions") >= 1);
+        assertTrue(cache.getStats().get("size") <= 1);
+    }
+
+    private static User copy(User user) {
+        return new User(user.getId(), user.getName(), user.getSurname(), user.getEmail(), user.getNationality());
+    }
+
+    @Test
+    public void testEmailLookupIgnoresCase() {
+        UserCache cache = new UserCache(100, Duration.ofMinutes(10));
+        database.put(1L, new User(1L, "John", "Doe", "John.Doe@Example.com", "American"));
+        Function<String, Optional<User>> loadByNormalizedEmail = email -> {
+            loads.incrementAndGet();
+            return database.values().stream()
+                    .filter(user -> user.getEmailNormalized().equals(email))
+                    .findFirst();
+        };
+
+        User first = cache.getByEmail("JOHN.DOE@example.com", loadByNormalizedEmail).get();
+        User second = cache.getByEmail("john.doe@example.com", loadByNormalizedEmail).get();
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+    }
+}
\ No newline at end of file
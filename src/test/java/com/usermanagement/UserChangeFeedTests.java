@@ -0,0 +1,189 @@
+package com.usermanagement;
+
+import com.usermanagement.controller.UserChangeFeed;
+import com.usermanagement.model.User;
+import com.usermanagement.service.UserChangeEvent;
+import com.usermanagement.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:changes",
+        "user.change-feed.max-backlog=50",
+        "server.tomcat.connection-timeout=2s"
+})
+@AutoConfigureMockMvc
+public class UserChangeFeedTests {
+
+    private static final Pattern EVENT_ID = Pattern.compile("id:(\\S+)\\nevent:created\\ndata:\\{\"id\":(\\d+)");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserChangeFeed changeFeed;
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    public void testChangesAreStreamedAndResumedFromLastEventId() throws Exception {
+        MockHttpServletResponse feed = subscribe(null);
+
+        User user = userService.createUser(new User(null, "Feed", "Reader", "feed.reader@example.com", "Slovak"));
+        User updated = new User(null, "Feed", "Renamed", "feed.reader@example.com", "Slovak");
+        userService.updateUser(user.getId(), updated, null);
+        userService.deleteUser(user.getId(), null);
+
+        String events = awaitContent(feed, "event:deleted");
+        assertTrue(events.contains("event:updated"));
+        assertTrue(events.contains("\"surname\":\"Renamed\""));
+        Matcher created = EVENT_ID.matcher(events);
+        assertTrue(created.find(), events);
+        assertEquals(user.getId().toString(), created.group(2));
+
+        String resumed = awaitContent(subscribe(created.group(1)), "event:deleted");
+        assertFalse(resumed.contains("event:created"));
+        assertTrue(resumed.contains("event:updated"));
+    }
+
+    @Test
+    public void testUnknownLastEventIdAsksForReset() throws Exception {
+        assertTrue(awaitContent(subscribe("0-1"), "event:reset").startsWith("event:reset"));
+    }
+
+    @Test
+    public void testStalledSubscriberIsDroppedWithoutHoldingUpOthers() throws Exception {
+        int before = changeFeed.getSubscriberCount();
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            padding.append('x');
+        }
+        User large = new User(1L, "Stalled", padding.toString(), "stalled.subscriber@example.com", "Slovak");
+
+        try (Socket stalled = new Socket(); Socket live = new Socket()) {
+            // Never read from, so its buffers fill up and the writes to it block
+            stalled.setReceiveBufferSize(1024);
+            connect(stalled);
+            awaitSubscribers(before + 1);
+            connect(live);
+            awaitSubscribers(before + 2);
+            AtomicLong received = new AtomicLong();
+            Thread reader = new Thread(() -> {
+                byte[] buffer = new byte[65536];
+                try {
+                    for (int read; (read = live.getInputStream().read(buffer)) > 0; ) {
+                        received.addAndGet(read);
+                    }
+                } catch (IOException e) {
+                    // Closed at the end of the test
+                }
+            });
+            reader.setDaemon(true);
+            reader.start();
+
+            // Each event is published once the live subscriber received the previous ones
+            for (int i = 1; i <= 5000 && changeFeed.getSubscriberCount() > before + 1; i++) {
+                changeFeed.onUserChange(UserChangeEvent.created(large));
+                awaitReceived(received, (long) i * padding.length());
+            }
+
+            assertEquals(before + 1, changeFeed.getSubscriberCount());
+            long receivedBefore = received.get();
+            changeFeed.onUserChange(UserChangeEvent.created(large));
+            awaitReceived(received, receivedBefore + padding.length());
+        }
+    }
+
+    @Test
+    public void testBlockedSendFailsAfterWriteTimeout() throws Exception {
+        int before = changeFeed.getSubscriberCount();
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            padding.append('x');
+        }
+        User large = new User(1L, "Blocked", padding.toString(), "blocked.subscriber@example.com", "Slovak");
+
+        try (Socket stalled = new Socket()) {
+            stalled.setReceiveBufferSize(1024);
+            connect(stalled);
+            awaitSubscribers(before + 1);
+
+            // More than the socket buffers hold, fewer than the backlog that drops a subscriber
+            for (int i = 0; i < 40; i++) {
+                changeFeed.onUserChange(UserChangeEvent.created(large));
+            }
+
+            long deadline = System.currentTimeMillis() + 15_000;
+            while (changeFeed.getSubscriberCount() > before && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertEquals(before, changeFeed.getSubscriberCount());
+        }
+    }
+
+    private void connect(Socket socket) throws IOException {
+        socket.connect(new InetSocketAddress("localhost", port));
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET /api/users/changes HTTP/1.1\r\nHost: localhost\r\nAccept: text/event-stream\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static void awaitReceived(AtomicLong received, long bytes) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (received.get() < bytes && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(received.get() >= bytes, "live subscriber stopped receiving");
+    }
+
+    private void awaitSubscribers(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (changeFeed.getSubscriberCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(count, changeFeed.getSubscriberCount());
+    }
+
+    private MockHttpServletResponse subscribe(String lastEventId) throws Exception {
+        return mockMvc.perform(lastEventId == null
+                        ? get("/api/users/changes")
+                        : get("/api/users/changes").header("Last-Event-ID", lastEventId))
+                .andExpect(request().asyncStarted())
+                .andReturn()
+                .getResponse();
+    }
+
+    private static String awaitContent(MockHttpServletResponse response, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        String content = response.getContentAsString();
+        while (!content.contains(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            content = response.getContentAsString();
+        }
+        assertTrue(content.contains(expected), content);
+        return content;
+    }
+}
@@ -1,23 +1,45 @@
 package com.usermanagement;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.usermanagement.controller.UserChangeFeed;
 import com.usermanagement.controller.UserController;
+import com.usermanagement.model.BatchItemResult;
+import com.usermanagement.model.BatchResult;
+import com.usermanagement.model.CursorPage;
 import com.usermanagement.model.User;
+import com.usermanagement.model.UserQuery;
+import com.usermanagement.service.UserCache;
+import com.usermanagement.service.UserChangeTracker;
+import com.usermanagement.service.UserFacets;
 import com.usermanagement.service.UserService;
+import com.usermanagement.service.UserSnapshots;
+import com.usermanagement.service.UserSuggestIndex;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.hamcrest.Matchers.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -31,6 +53,24 @@ public class UserControllerTests {
     @MockBean
     private UserService userService;
 
+    @MockBean
+    private UserCache userCache;
+
+    @MockBean
+    private UserSuggestIndex suggestIndex;
+
+    @MockBean
+    private UserFacets userFacets;
+
+    @MockBean
+    private UserChangeTracker changeTracker;
+
+    @MockBean
+    private UserChangeFeed changeFeed;
+
+    @MockBean
+    private UserSnapshots userSnapshots;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -57,15 +97,49 @@ public class UserControllerTests {
         User user1 = new User(1L, "John", "Doe", "john.doe@example.com", "American");
         User user2 = new User(2L, "Jane", "Smith", "jane.smith@example.com", "British");
         
-        when(userService.getAllUsers()).thenReturn(Arrays.asList(user1, user2));
+        when(userService.getAllUsers(null, null)).thenReturn(new CursorPage<>(Arrays.asList(user1, user2), null));
 
         mockMvc.perform(get("/api/users"))
                 .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(UserController.NEXT_CURSOR_HEADER))
                 .andExpect(jsonPath("$", hasSize(2)))
                 .andExpect(jsonPath("$[0].name", is("John")))
                 .andExpect(jsonPath("$[1].name", is("Jane")));
     }
 
+    @Test
+    public void testGetAllUsersReturnsNextCursor() throws Exception {
+        User user3 = new User(3L, "John", "Doe", "john.doe@example.com", "American");
+        User user4 = new User(4L, "Jane", "Smith", "jane.smith@example.com", "British");
+
+        when(userService.getAllUsers(2L, 2)).thenReturn(new CursorPage<>(Arrays.asList(user3, user4), "4"));
+
+        mockMvc.perform(get("/api/users").param("after", "2").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(UserController.NEXT_CURSOR_HEADER, "4"))
+                .andExpect(header().string("Link", containsString("after=4")))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(3)));
+    }
+
+    @Test
+    public void testGetAllUsersNegotiatesContentType() throws Exception {
+        when(userService.getAllUsers(null, null)).thenReturn(new CursorPage<>(Arrays.asList(
+                new User(1L, "John", "Doe", "john.doe@example.com", "American")), null));
+
+        mockMvc.perform(get("/api/users").accept(MediaType.APPLICATION_XML))
+                .andExpect(status().isNotAcceptable());
+    }
+
+    @Test
+    public void testGetAllUsersRejectsInvalidLimit() throws Exception {
+        when(userService.getAllUsers(null, 0)).thenThrow(new IllegalArgumentException("Limit must be between 1 and 1000: 0"));
+
+        mockMvc.perform(get("/api/users").param("limit", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error", containsString("Limit")));
+    }
+
     @Test
     public void testGetUserById() throws Exception {
         User user = new User(1L, "John", "Doe", "john.doe@example.com", "American");
@@ -83,7 +157,7 @@ public class UserControllerTests {
         User userDetails = new User(null, "John", "Updated", "john.updated@example.com", "Canadian");
         User updatedUser = new User(1L, "John", "Updated", "john.updated@example.com", "Canadian");
         
-        when(userService.updateUser(eq(1L), any(User.class))).thenReturn(updatedUser);
+        when(userService.updateUser(eq(1L), any(User.class), isNull())).thenReturn(updatedUser);
 
         mockMvc.perform(put("/api/users/1")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -95,19 +169,37 @@ public class UserControllerTests {
 
     @Test
     public void testDeleteUser() throws Exception {
-        doNothing().when(userService).deleteUser(1L);
+        doNothing().when(userService).deleteUser(1L, null);
 
         mockMvc.perform(delete("/api/users/1"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.message", is("User deleted successfully")));
     }
 
+    @Test
+    public void testBulkDeleteUsers() throws Exception {
+        when(userService.deleteUsers(argThat(request -> request != null && "Danish".equals(request.getNationality())))).thenReturn(3L);
+        when(userService.deleteUsers(argThat(request -> request != null && !request.hasConditions())))
+                .thenThrow(new IllegalArgumentException("Bulk delete requires IDs or at least one field to match"));
+
+        mockMvc.perform(post("/api/users/bulk-delete")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"nationality\":\"Danish\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deleted", is(3)));
+
+        mockMvc.perform(post("/api/users/bulk-delete")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void testSearchUsersByName() throws Exception {
         User user1 = new User(1L, "John", "Doe", "john.doe@example.com", "American");
         User user2 = new User(3L, "John", "Smith", "john.smith@example.com", "Canadian");
         
-        when(userService.searchUsersByName("John")).thenReturn(Arrays.asList(user1, user2));
+        when(userService.searchUsersByName("John", null, null)).thenReturn(new CursorPage<>(Arrays.asList(user1, user2), null));
 
         mockMvc.perform(get("/api/users/search/name").param("name", "John"))
                 .andExpect(status().isOk())
@@ -115,4 +207,219 @@ public class UserControllerTests {
                 .andExpect(jsonPath("$[0].name", is("John")))
                 .andExpect(jsonPath("$[1].name", is("John")));
     }
+
+    @Test
+    public void testExportUsersAsNdjson() throws Exception {
+        User john = new User(1L, "John", "Doe", "john.doe@example.com", "American");
+        User jane = new User(2L, "Jane", "Smith", "jane.smith@example.com", "British");
+        jane.setVersion(4L);
+        exportUsers(john, jane);
+
+        MvcResult result = mockMvc.perform(get("/api/users/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string(
+                        "{\"id\":1,\"name\":\"John\",\"surname\":\"Doe\",\"email\":\"john.doe@example.com\",\"nationality\":\"American\",\"version\":null}\n"
+                        + "{\"id\":2,\"name\":\"Jane\",\"surname\":\"Smith\",\"email\":\"jane.smith@example.com\",\"nationality\":\"British\",\"version\":4}\n"));
+    }
+
+    @Test
+    public void testExportUsersAsCsv() throws Exception {
+        exportUsers(new User(1L, "John", "Doe, Jr.", "john.doe@example.com", "American"));
+
+        MvcResult result = mockMvc.perform(get("/api/users/export").param("format", "csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv"))
+                .andExpect(content().string("id,name,surname,email,nationality\n"
+                        + "1,John,\"Doe, Jr.\",john.doe@example.com,American\n"));
+    }
+
+    @Test
+    public void testExportUsersRejectsUnknownFormat() throws Exception {
+        mockMvc.perform(get("/api/users/export").param("format", "xml"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error", is("Unsupported export format: xml")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void exportUsers(User... users) {
+        doAnswer(invocation -> {
+            Consumer<User> consumer = invocation.getArgument(0);
+            for (User user : users) {
+                consumer.accept(user);
+            }
+            return null;
+        }).when(userService).exportUsers(any(Consumer.class));
+    }
+
+    @Test
+    public void testSaveUsersInBatch() throws Exception {
+        User newUser = new User(null, "John", "Doe", "john.doe@example.com", "American");
+        User invalidUser = new User(null, "Jane", "Smith", "not-an-email", "British");
+
+        when(userService.saveUsers(anyList())).thenReturn(new BatchResult(Arrays.asList(
+                new BatchItemResult(0, BatchItemResult.Status.CREATED, 1L, null),
+                BatchItemResult.failed(1, "Email should be valid"))));
+
+        mockMvc.perform(post("/api/users/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Arrays.asList(newUser, invalidUser))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created", is(1)))
+                .andExpect(jsonPath("$.failed", is(1)))
+                .andExpect(jsonPath("$.results[0].status", is("CREATED")))
+                .andExpect(jsonPath("$.results[0].id", is(1)))
+                .andExpect(jsonPath("$.results[1].status", is("FAILED")))
+                .andExpect(jsonPath("$.results[1].error", is("Email should be valid")));
+    }
+
+    @Test
+    public void testSuggest() throws Exception {
+        when(suggestIndex.suggest(UserSuggestIndex.Field.NAME, "jo", 5)).thenReturn(Arrays.asList("Joanna", "John"));
+
+        mockMvc.perform(get("/api/users/suggest").param("field", "name").param("prefix", "jo").param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", contains("Joanna", "John")));
+    }
+
+    @Test
+    public void testSuggestRejectsUnknownField() throws Exception {
+        mockMvc.perform(get("/api/users/suggest").param("field", "age").param("prefix", "4"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error", is("Unsupported suggest field: age")));
+    }
+
+
+    @Test
+    public void testQueryUsers() throws Exception {
+        User user = new User(7L, "John", "Doe", "john.doe@example.com", "American");
+
+        when(userService.queryUsers(argThat(query -> "John".equals(query.getName())
+                && "American".equals(query.getNationality())
+                && query.getSurname() == null
+                && query.getSortField() == UserQuery.SortField.SURNAME
+                && query.isDescending()
+                && Integer.valueOf(1).equals(query.getLimit()))))
+                .thenReturn(new CursorPage<>(Arrays.asList(user), "7:RG9l"));
+
+        mockMvc.perform(get("/api/users/query")
+                .param("name", "John")
+                .param("nationality", "American")
+                .param("sort", "surname,desc")
+                .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(header().string("X-Next-Cursor", "7:RG9l"))
+                .andExpect(header().string("Link", containsString("after=7:RG9l")));
+    }
+
+    @Test
+    public void testQueryUsersInvalidSort() throws Exception {
+        mockMvc.perform(get("/api/users/query").param("sort", "name,sideways"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error", containsString("sort direction")));
+
+        mockMvc.perform(get("/api/users/query").param("sort", "password"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error", containsString("sort field")));
+    }
+
+
+    @Test
+    public void testGetNationalityFacets() throws Exception {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put("British", 3L);
+        counts.put("American", 2L);
+        when(userFacets.getNationalityCounts()).thenReturn(counts);
+
+        mockMvc.perform(get("/api/users/facets/nationality"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.British", is(3)))
+                .andExpect(jsonPath("$.American", is(2)));
+    }
+
+
+    @Test
+    public void testGetUserByIdReturnsETagAndNotModified() throws Exception {
+        User user = new User(1L, "John", "Doe", "john.doe@example.com", "American");
+        user.setVersion(3L);
+        when(userService.getUserById(1L)).thenReturn(Optional.of(user));
+        when(userService.getUserVersion(1L)).thenReturn(Optional.of(3L));
+
+        mockMvc.perform(get("/api/users/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3\""))
+                .andExpect(jsonPath("$.version", is(3)));
+
+        mockMvc.perform(get("/api/users/1").header("If-None-Match", "\"3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"3\""))
+                .andExpect(content().string(""));
+        verify(userService, times(1)).getUserById(1L);
+
+        mockMvc.perform(get("/api/users/1").header("If-None-Match", "\"2\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testListReturnsNotModifiedWithoutQuerying() throws Exception {
+        when(changeTracker.getTag()).thenReturn("abc-7");
+
+        mockMvc.perform(get("/api/users").header("If-None-Match", "\"abc-7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"abc-7\""));
+        verify(userService, never()).getAllUsers(any(), any());
+
+        when(userService.getAllUsers(null, null)).thenReturn(new CursorPage<>(Arrays.asList(), null));
+        mockMvc.perform(get("/api/users").header("If-None-Match", "\"abc-6\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"abc-7\""));
+    }
+
+    @Test
+    public void testUpdateUserWithStaleIfMatchFails() throws Exception {
+        User userDetails = new User(null, "John", "Updated", "john.updated@example.com", "Canadian");
+        when(userService.updateUser(eq(1L), any(User.class), eq(2L)))
+                .thenThrow(new OptimisticLockingFailureException("User 1 was modified"));
+
+        mockMvc.perform(put("/api/users/1")
+                .header("If-Match", "\"2\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(userDetails)))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(jsonPath("$.error", is("User 1 was modified")));
+
+        mockMvc.perform(delete("/api/users/1").header("If-Match", "not-an-etag"))
+                .andExpect(status().isBadRequest());
+    }
+
+
+    @Test
+    public void testPatchUser() throws Exception {
+        User patched = new User(1L, "John", "Doe", "john.doe@example.com", "Irish");
+        patched.setVersion(5L);
+        when(userService.patchUser(eq(1L), argThat(patch -> "Irish".equals(patch.getNationality())
+                && patch.getName() == null), eq(4L))).thenReturn(patched);
+
+        mockMvc.perform(patch("/api/users/1")
+                .header("If-Match", "\"4\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"nationality\":\"Irish\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"5\""))
+                .andExpect(jsonPath("$.nationality", is("Irish")));
+
+        mockMvc.perform(patch("/api/users/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"email\":\"not-an-email\"}"))
+                .andExpect(status().isBadRequest());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.usermanagement;
+
+import com.usermanagement.model.User;
+import com.usermanagement.model.UserBulkDelete;
+import com.usermanagement.service.UserFacets;
+import com.usermanagement.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import javax.persistence.EntityNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:delete")
+public class UserDeleteTests {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserFacets userFacets;
+
+    @Test
+    public void testDeleteReportsMissingUserAndStaleVersion() {
+        assertThrows(EntityNotFoundException.class, () -> userService.deleteUser(-1L, null));
+
+        User user = userService.createUser(new User(null, "Delete", "Target", "delete.target@example.com", "Maltese"));
+        userService.getUserById(user.getId());
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> userService.deleteUser(user.getId(), user.getVersion() + 1));
+        assertTrue(userService.getUserById(user.getId()).isPresent());
+
+        userService.deleteUser(user.getId(), user.getVersion());
+        assertFalse(userService.getUserById(user.getId()).isPresent());
+        assertFalse(userService.getUserByEmail("delete.target@example.com").isPresent());
+        assertFalse(userFacets.getNationalityCounts().containsKey("Maltese"));
+        assertThrows(EntityNotFoundException.class, () -> userService.deleteUser(user.getId(), null));
+    }
+
+    @Test
+    public void testBulkDeleteByIds() {
+        User first = userService.createUser(new User(null, "Bulk", "One", "bulk.one@example.com", "Cypriot"));
+        User second = userService.createUser(new User(null, "Bulk", "Two", "bulk.two@example.com", "Cypriot"));
+        User kept = userService.createUser(new User(null, "Bulk", "Three", "bulk.three@example.com", "Cypriot"));
+
+        UserBulkDelete request = new UserBulkDelete();
+        request.setIds(Arrays.asList(first.getId(), second.getId(), -1L));
+        assertEquals(2, userService.deleteUsers(request));
+
+        assertFalse(userService.getUserById(first.getId()).isPresent());
+        assertFalse(userService.getUserById(second.getId()).isPresent());
+        assertTrue(userService.getUserById(kept.getId()).isPresent());
+        assertEquals(Long.valueOf(1), userFacets.getNationalityCounts().get("Cypriot"));
+    }
+
+    @Test
+    public void testBulkDeleteByNationalitySpansChunks() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            users.add(new User(null, "Purge", "User" + i, "purge" + i + "@example.com", "Andorran"));
+        }
+        userService.saveUsers(users);
+        userService.createUser(new User(null, "Purge", "Kept", "purge.kept@example.com", "Monegasque"));
+
+        UserBulkDelete request = new UserBulkDelete();
+        request.setName("Purge");
+        request.setNationality("Andorran");
+        assertEquals(2500, userService.deleteUsers(request));
+
+        assertFalse(userFacets.getNationalityCounts().containsKey("Andorran"));
+        assertEquals(Long.valueOf(1), userFacets.getNationalityCounts().get("Monegasque"));
+        assertEquals(0, userService.deleteUsers(request));
+    }
+
+    @Test
+    public void testBulkDeleteRequiresConditions() {
+        assertThrows(IllegalArgumentException.class, () -> userService.deleteUsers(new UserBulkDelete()));
+    }
+}
@@ -0,0 +1,64 @@
+package com.usermanagement;
+
+import com.usermanagement.model.User;
+import com.usermanagement.service.UserChangeEvent;
+import com.usermanagement.service.UserFacets;
+import com.usermanagement.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class UserFacetsTests {
+
+    private UserFacets facets;
+
+    @BeforeEach
+    public void setUp() {
+        UserService userService = mock(UserService.class);
+        Map<String, Long> counts = new HashMap<>();
+        counts.put("American", 2L);
+        counts.put("British", 3L);
+        counts.put("Canadian", 1L);
+        when(userService.countUsersByNationality()).thenReturn(counts);
+        facets = new UserFacets(userService);
+        facets.rebuild();
+    }
+
+    @Test
+    public void testCountsOrderedByLargestFirst() {
+        Map<String, Long> counts = facets.getNationalityCounts();
+
+        assertEquals(Arrays.asList("British", "American", "Canadian"), new ArrayList<>(counts.keySet()));
+        assertEquals(Long.valueOf(3), counts.get("British"));
+    }
+
+    @Test
+    public void testCreateAndDeleteAdjustCounts() {
+        facets.onUserChange(UserChangeEvent.created(new User(7L, "Jonas", "Berg", "jonas@example.com", "Swedish")));
+        facets.onUserChange(UserChangeEvent.deleted(new User(3L, "John", "Smith", "john.smith@example.com", "Canadian")));
+
+        Map<String, Long> counts = facets.getNationalityCounts();
+        assertEquals(Long.valueOf(1), counts.get("Swedish"));
+        assertFalse(counts.containsKey("Canadian"));
+    }
+
+    @Test
+    public void testUpdateMovesUserBetweenNationalities() {
+        User before = new User(1L, "John", "Doe", "john.doe@example.com", "American");
+        User after = new User(1L, "John", "Doe", "john.doe@example.com", "British");
+        facets.onUserChange(UserChangeEvent.updated(before, after));
+        facets.onUserChange(UserChangeEvent.updated(after, after));
+
+        Map<String, Long> counts = facets.getNationalityCounts();
+        assertEquals(Long.valueOf(1), counts.get("American"));
+        assertEquals(Long.valueOf(4), counts.get("British"));
+    }
+}
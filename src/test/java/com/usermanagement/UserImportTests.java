@@ -0,0 +1,253 @@
+package com.usermanagement;
+
+import com.usermanagement.model.User;
+import com.usermanagement.model.UserImport;
+import com.usermanagement.repository.UserImportRepository;
+import com.usermanagement.service.UserFacets;
+import com.usermanagement.service.UserImports;
+import com.usermanagement.service.UserService;
+import com.usermanagement.service.UserSuggestIndex;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:imports",
+        "user.import.directory=target/test-imports",
+        "user.import.chunk-size=3",
+        "user.import.parallelism=2",
+        "user.import.max-record-length=200"
+})
+@AutoConfigureMockMvc
+public class UserImportTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserImports userImports;
+
+    @Autowired
+    private UserImportRepository importRepository;
+
+    @Autowired
+    private UserFacets userFacets;
+
+    @Autowired
+    private UserSuggestIndex suggestIndex;
+
+    @Test
+    public void testCsvImportSkipsDuplicatesAndInvalidRecords() throws Exception {
+        userService.createUser(new User(null, "Already", "There", "existing.import@example.com", "Irish"));
+        String csv = "id,email,name,surname,nationality\n"
+                + ",csv.one@example.com,Ann,One,Irish\n"
+                + ",csv.two@example.com,\"Bo, \"\"B\"\"\",Two,Irish\r\n"
+                + ",CSV.ONE@example.com,Dup,Licate,Irish\n"
+                + "\n"
+                + ",existing.import@example.com,Ex,Isting,Irish\n"
+                + ",csv.three@example.com,\"Multi\nLine\",Three,Irish\n"
+                + ",not-an-email,Bad,Email,Irish\n"
+                + "7,csv.two@example.com,Again,Two,Irish";
+
+        MvcResult result = mockMvc.perform(post("/api/users/imports").param("format", "csv")
+                        .content(csv.getBytes(StandardCharsets.UTF_8)))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", containsString("/api/users/imports/")))
+                .andExpect(jsonPath("$.format").value("CSV"))
+                .andExpect(jsonPath("$.path").doesNotExist())
+                .andReturn();
+        UserImport job = await(idOf(result));
+
+        assertEquals(UserImport.Status.COMPLETED, job.getStatus());
+        assertEquals(7, job.getRecords());
+        assertEquals(3, job.getImported());
+        assertEquals(3, job.getDuplicates());
+        assertEquals(1, job.getInvalid());
+        assertTrue(job.getLastRejection().startsWith("Record 6: "), job.getLastRejection());
+        assertEquals(job.getSize(), job.getPosition());
+        assertEquals("Ann", userService.getUserByEmail("csv.one@example.com").map(User::getName).orElse(null));
+        assertEquals("Bo, \"B\"", userService.getUserByEmail("csv.two@example.com").map(User::getName).orElse(null));
+        assertEquals("Multi\nLine", userService.getUserByEmail("csv.three@example.com").map(User::getName).orElse(null));
+        assertEquals("Already", userService.getUserByEmail("existing.import@example.com").map(User::getName).orElse(null));
+
+        mockMvc.perform(get("/api/users/imports/{id}", job.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.imported").value(3));
+    }
+
+    @Test
+    public void testNdjsonImportSkipsMalformedRecords() throws Exception {
+        String ndjson = "{\"name\":\"Nd\",\"surname\":\"One\",\"email\":\"ndjson.one@example.com\",\"nationality\":\"Welsh\"}\n"
+                + "{not json\n"
+                + "[1, 2]\n"
+                + "{\"name\":\"Nd\",\"surname\":\"Missing\",\"email\":\"ndjson.missing@example.com\"}\n"
+                + "{\"id\":5,\"name\":\"Nd\",\"surname\":\"Two\",\"email\":\"ndjson.two@example.com\",\"nationality\":\"Welsh\",\"extra\":true}\n";
+
+        MvcResult result = mockMvc.perform(post("/api/users/imports").content(ndjson.getBytes(StandardCharsets.UTF_8)))
+                .andExpect(status().isAccepted())
+                .andReturn();
+        UserImport job = await(idOf(result));
+
+        assertEquals(UserImport.Status.COMPLETED, job.getStatus());
+        assertEquals(5, job.getRecords());
+        assertEquals(2, job.getImported());
+        assertEquals(0, job.getDuplicates());
+        assertEquals(3, job.getInvalid());
+        assertEquals(2, userService.searchUsersByNationality("Welsh", null, null).getItems().size());
+    }
+
+    @Test
+    public void testImportedChunksArePublishedAsOneEventEach() throws Exception {
+        MockHttpServletResponse feed = mockMvc.perform(get("/api/users/changes"))
+                .andExpect(request().asyncStarted())
+                .andReturn()
+                .getResponse();
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 7; i++) {
+            ndjson.append("{\"name\":\"Chunked\",\"surname\":\"Feed\",\"email\":\"chunked.feed").append(i)
+                    .append("@example.com\",\"nationality\":\"Maltese\"}\n");
+        }
+
+        UserImport job = await(idOf(mockMvc.perform(post("/api/users/imports").content(ndjson.toString()))
+                .andExpect(status().isAccepted())
+                .andReturn()));
+
+        assertEquals(7, job.getImported());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (count(feed.getContentAsString(), "event:imported") < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        String events = feed.getContentAsString();
+        assertEquals(3, count(events, "event:imported"), events);
+        assertEquals(0, count(events, "event:created"), events);
+        assertTrue(events.contains("data:{\"importId\":" + job.getId() + ",\"count\":1}"), events);
+        assertEquals(Long.valueOf(7), userFacets.getNationalityCounts().get("Maltese"));
+        assertEquals(Collections.singletonList("Chunked"), suggestIndex.suggest(UserSuggestIndex.Field.NAME, "chunk", null));
+    }
+
+    @Test
+    public void testFailedImportResumesAfterLastCommittedChunk() throws Exception {
+        String first = "{\"name\":\"Resumed\",\"surname\":\"Import\",\"email\":\"resumed.1@example.com\",\"nationality\":\"Scottish\"}\n"
+                + "{\"name\":\"Resumed\",\"surname\":\"Import\",\"email\":\"resumed.2@example.com\",\"nationality\":\"Scottish\"}\n";
+        String rest = "{\"name\":\"Resumed\",\"surname\":\"Import\",\"email\":\"resumed.3@example.com\",\"nationality\":\"Scottish\"}\n"
+                + "{\"name\":\"Resumed\",\"surname\":\"Import\",\"email\":\"resumed.4@example.com\",\"nationality\":\"Scottish\"}\n"
+                + "{\"name\":\"Resumed\",\"surname\":\"Import\",\"email\":\"resumed.5@example.com\",\"nationality\":\"Scottish\"}\n";
+        Path file = Paths.get("target/test-imports/resumed.ndjson");
+        Files.createDirectories(file.getParent());
+        Files.write(file, (first + rest).getBytes(StandardCharsets.UTF_8));
+        // As left by an import that committed the first two records before failing
+        userService.createUser(new User(null, "Resumed", "Import", "resumed.1@example.com", "Scottish"));
+        userService.createUser(new User(null, "Resumed", "Import", "resumed.2@example.com", "Scottish"));
+        UserImport failed = new UserImport(UserImport.Format.NDJSON, file.toString(), Files.size(file));
+        failed.advance(first.getBytes(StandardCharsets.UTF_8).length, 2, 2, 0, 0, null);
+        failed.setStatus(UserImport.Status.FAILED, "Connection lost");
+        Long id = importRepository.save(failed).getId();
+
+        mockMvc.perform(post("/api/users/imports/{id}/resume", id))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.error").doesNotExist());
+        UserImport job = await(id);
+
+        assertEquals(UserImport.Status.COMPLETED, job.getStatus());
+        assertEquals(5, job.getRecords());
+        assertEquals(5, job.getImported());
+        assertEquals(0, job.getDuplicates());
+        assertEquals(5, userService.searchUsersBySurname("Import", null, null).getItems().size());
+
+        mockMvc.perform(post("/api/users/imports/{id}/resume", id))
+                .andExpect(status().isConflict());
+        mockMvc.perform(post("/api/users/imports/{id}/resume", -1))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/users/imports/{id}", -1))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testInvalidFilesAreRejected() throws Exception {
+        mockMvc.perform(post("/api/users/imports").param("format", "xml").content("<users/>"))
+                .andExpect(status().isBadRequest());
+
+        MvcResult result = mockMvc.perform(post("/api/users/imports").param("format", "csv")
+                        .content("name,surname\nNo,Email\n"))
+                .andExpect(status().isAccepted())
+                .andReturn();
+        UserImport job = await(idOf(result));
+
+        assertEquals(UserImport.Status.FAILED, job.getStatus());
+        assertTrue(job.getError().contains("email"), job.getError());
+        assertEquals(0, job.getRecords());
+    }
+
+    @Test
+    public void testOverlongRecordsFailTheImport() throws Exception {
+        StringBuilder csv = new StringBuilder("name,surname,email,nationality\n")
+                .append("Long,Quote,long.quote@example.com,\"Irish\n");
+        for (int i = 0; i < 20; i++) {
+            csv.append("Long,Quote,long.quote").append(i).append("@example.com,Irish\n");
+        }
+        UserImport unterminated = await(idOf(mockMvc.perform(post("/api/users/imports").param("format", "csv")
+                        .content(csv.toString()))
+                .andExpect(status().isAccepted())
+                .andReturn()));
+
+        assertEquals(UserImport.Status.FAILED, unterminated.getStatus());
+        assertTrue(unterminated.getError().contains("longer than 200 bytes, within a quoted field never closed"),
+                unterminated.getError());
+
+        StringBuilder ndjson = new StringBuilder("{\"name\":\"");
+        for (int i = 0; i < 300; i++) {
+            ndjson.append('x');
+        }
+        UserImport unbroken = await(idOf(mockMvc.perform(post("/api/users/imports").content(ndjson.toString()))
+                .andExpect(status().isAccepted())
+                .andReturn()));
+
+        assertEquals(UserImport.Status.FAILED, unbroken.getStatus());
+        assertEquals("Record at byte 0 is longer than 200 bytes", unbroken.getError());
+        assertEquals(0, unbroken.getRecords());
+    }
+
+    private static int count(String content, String part) {
+        int count = 0;
+        for (int i = content.indexOf(part); i >= 0; i = content.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static Long idOf(MvcResult result) {
+        String location = result.getResponse().getHeader("Location");
+        return Long.valueOf(location.substring(location.lastIndexOf('/') + 1));
+    }
+
+    private UserImport await(Long id) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (true) {
+            UserImport job = userImports.get(id).orElseThrow(AssertionError::new);
+            if (job.getStatus() == UserImport.Status.COMPLETED || job.getStatus() == UserImport.Status.FAILED) {
+                return job;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "import did not finish");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.usermanagement;
+
+import com.usermanagement.model.User;
+import com.usermanagement.model.UserPatch;
+import com.usermanagement.service.UserFacets;
+import com.usermanagement.service.UserService;
+import com.usermanagement.service.UserSuggestIndex;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import javax.persistence.EntityNotFoundException;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:patch")
+public class UserPatchTests {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserFacets userFacets;
+
+    @Autowired
+    private UserSuggestIndex suggestIndex;
+
+    @Test
+    public void testPatchChangesOnlyGivenFieldsAndBumpsVersion() {
+        User user = userService.createUser(new User(null, "Patch", "Target", "patch.target@example.com", "Danish"));
+        userService.getUserById(user.getId());
+
+        UserPatch patch = new UserPatch();
+        patch.setNationality("Norwegian");
+        patch.setEmail("Patch.Moved@Example.com");
+        User patched = userService.patchUser(user.getId(), patch, user.getVersion());
+
+        assertEquals(user.getVersion() + 1, patched.getVersion());
+        User reloaded = userService.getUserById(user.getId()).orElseThrow(AssertionError::new);
+        assertEquals("Patch", reloaded.getName());
+        assertEquals("Norwegian", reloaded.getNationality());
+        assertEquals(patched.getVersion(), reloaded.getVersion());
+        assertTrue(userService.getUserByEmail("patch.moved@example.com").isPresent());
+        assertFalse(userService.getUserByEmail("patch.target@example.com").isPresent());
+
+        assertFalse(userFacets.getNationalityCounts().containsKey("Danish"));
+        assertEquals(Long.valueOf(1), userFacets.getNationalityCounts().get("Norwegian"));
+        assertEquals(Collections.singletonList("Norwegian"), suggestIndex.suggest(UserSuggestIndex.Field.NATIONALITY, "nor", null));
+    }
+
+    @Test
+    public void testPatchReportsMissingUserAndStaleVersion() {
+        UserPatch patch = new UserPatch();
+        patch.setName("Nobody");
+        assertThrows(EntityNotFoundException.class, () -> userService.patchUser(-1L, patch, null));
+
+        User user = userService.createUser(new User(null, "Stale", "Version", "stale.version@example.com", "Greek"));
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> userService.patchUser(user.getId(), patch, user.getVersion() + 1));
+        assertEquals("Stale", userService.getUserById(user.getId()).map(User::getName).orElse(null));
+    }
+
+    @Test
+    public void testPatchRejectsTakenEmail() {
+        userService.createUser(new User(null, "First", "Owner", "taken@example.com", "Greek"));
+        User user = userService.createUser(new User(null, "Second", "Owner", "free@example.com", "Greek"));
+
+        UserPatch patch = new UserPatch();
+        patch.setEmail("TAKEN@example.com");
+        assertThrows(IllegalArgumentException.class, () -> userService.patchUser(user.getId(), patch, null));
+    }
+}
@@ -0,0 +1,179 @@
+package com.usermanagement;
+
+import com.usermanagement.model.BatchItemResult;
+import com.usermanagement.model.BatchResult;
+import com.usermanagement.model.CursorPage;
+import com.usermanagement.model.User;
+import com.usermanagement.model.UserQuery;
+import com.usermanagement.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import javax.persistence.EntityNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Behavior every UserService implementation must share, run against each of them by a subclass
+ * Every test works on users of its own, so the tests do not depend on each other's data.
+ */
+public abstract class UserServiceContractTests {
+
+    @Autowired
+    protected UserService userService;
+
+    @Test
+    public void testCreateAndFindByIdAndEmail() {
+        User user = userService.createUser(new User(null, "Contract", "Create", "Contract.Create@example.com", "Latvian"));
+
+        assertNotNull(user.getId());
+        assertEquals(Long.valueOf(0), user.getVersion());
+        assertEquals("Create", userService.getUserById(user.getId()).map(User::getSurname).orElse(null));
+        assertEquals(user.getId(), userService.getUserByEmail("contract.create@EXAMPLE.com").map(User::getId).orElse(null));
+        assertEquals(Long.valueOf(0), userService.getUserVersion(user.getId()).orElse(null));
+        assertFalse(userService.getUserById(-1L).isPresent());
+        assertFalse(userService.getUserVersion(-1L).isPresent());
+
+        assertThrows(IllegalArgumentException.class, () -> userService.createUser(
+                new User(null, "Other", "Create", "CONTRACT.CREATE@example.com", "Latvian")));
+    }
+
+    @Test
+    public void testUpdateChecksVersionAndEmail() {
+        User user = userService.createUser(new User(null, "Contract", "Update", "contract.update@example.com", "Estonian"));
+        userService.createUser(new User(null, "Contract", "Taken", "contract.taken@example.com", "Estonian"));
+
+        User details = new User(null, "Renamed", "Update", "contract.moved@example.com", "Estonian");
+        assertThrows(EntityNotFoundException.class, () -> userService.updateUser(-1L, details, null));
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> userService.updateUser(user.getId(), details, user.getVersion() + 1));
+        assertThrows(IllegalArgumentException.class, () -> userService.updateUser(user.getId(),
+                new User(null, "Renamed", "Update", "Contract.Taken@example.com", "Estonian"), null));
+
+        User updated = userService.updateUser(user.getId(), details, user.getVersion());
+        assertEquals(user.getVersion() + 1, updated.getVersion());
+        assertEquals("Renamed", userService.getUserById(user.getId()).map(User::getName).orElse(null));
+        assertFalse(userService.getUserByEmail("contract.update@example.com").isPresent());
+        assertTrue(userService.getUserByEmail("contract.moved@example.com").isPresent());
+        assertEquals(ids(Arrays.asList(updated)), ids(userService.searchUsersByName("Renamed", null, null).getItems()));
+    }
+
+    @Test
+    public void testSearchPagesInIdOrder() {
+        List<Long> created = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            created.add(userService.createUser(new User(null, "Contract", "Paged",
+                    "contract.paged" + i + "@example.com", "Lithuanian")).getId());
+        }
+
+        List<Long> read = new ArrayList<>();
+        Long after = null;
+        CursorPage<User> page;
+        do {
+            page = userService.searchUsersBySurname("Paged", after, 2);
+            assertTrue(page.getItems().size() <= 2);
+            read.addAll(ids(page.getItems()));
+            after = page.hasNext() ? Long.valueOf(page.getNextCursor()) : null;
+        } while (page.hasNext());
+
+        assertEquals(created, read);
+        assertEquals(created, ids(userService.searchUsersByNationality("Lithuanian", null, null).getItems()));
+        assertTrue(userService.searchUsersByName("Nobody", null, null).getItems().isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> userService.searchUsersBySurname("Paged", null, 0));
+    }
+
+    @Test
+    public void testQueryFiltersAndSortsWithCursor() {
+        User carla = userService.createUser(new User(null, "Carla", "Query", "contract.carla@example.com", "Slovak"));
+        User anna = userService.createUser(new User(null, "Anna", "Query", "contract.anna@example.com", "Slovak"));
+        User bruno = userService.createUser(new User(null, "Bruno", "Query", "contract.bruno@example.com", "Slovak"));
+        User anna2 = userService.createUser(new User(null, "Anna", "Query", "contract.anna2@example.com", "Slovak"));
+        userService.createUser(new User(null, "Anna", "Other", "contract.other@example.com", "Slovak"));
+
+        UserQuery query = new UserQuery();
+        query.setSurname("Query");
+        query.setNationality("Slovak");
+        query.setSortField(UserQuery.SortField.NAME);
+        query.setDescending(true);
+        query.setLimit(3);
+        CursorPage<User> first = userService.queryUsers(query);
+        assertEquals(ids(Arrays.asList(carla, bruno, anna2)), ids(first.getItems()));
+        assertTrue(first.hasNext());
+        query.setAfter(first.getNextCursor());
+        CursorPage<User> second = userService.queryUsers(query);
+        assertEquals(ids(Arrays.asList(anna)), ids(second.getItems()));
+        assertFalse(second.hasNext());
+
+        UserQuery byId = new UserQuery();
+        byId.setName("Anna");
+        byId.setSurname("Query");
+        byId.setDescending(true);
+        assertEquals(ids(Arrays.asList(anna2, anna)), ids(userService.queryUsers(byId).getItems()));
+
+        UserQuery byEmail = new UserQuery();
+        byEmail.setEmail("Contract.Bruno@example.com");
+        assertEquals(ids(Arrays.asList(bruno)), ids(userService.queryUsers(byEmail).getItems()));
+
+        UserQuery invalid = new UserQuery();
+        invalid.setSortField(UserQuery.SortField.NAME);
+        invalid.setAfter("not-a-cursor");
+        assertThrows(IllegalArgumentException.class, () -> userService.queryUsers(invalid));
+    }
+
+    @Test
+    public void testSaveUsersReportsEveryItem() {
+        User existing = userService.createUser(new User(null, "Contract", "Batch", "contract.batch@example.com", "Slovenian"));
+        userService.createUser(new User(null, "Contract", "Batch", "contract.batch.taken@example.com", "Slovenian"));
+
+        BatchResult result = userService.saveUsers(Arrays.asList(
+                new User(null, "Contract", "Batch", "contract.batch.new@example.com", "Slovenian"),
+                new User(null, "Contract", "Batch", "CONTRACT.BATCH.NEW@example.com", "Slovenian"),
+                new User(null, "Contract", "Batch", "contract.batch.taken@example.com", "Slovenian"),
+                new User(existing.getId(), "Updated", "Batch", "contract.batch@example.com", "Slovenian"),
+                new User(-1L, "Contract", "Batch", "contract.batch.missing@example.com", "Slovenian"),
+                new User(null, "", "Batch", "contract.batch.invalid@example.com", "Slovenian")));
+
+        List<BatchItemResult.Status> statuses = result.getResults().stream()
+                .map(BatchItemResult::getStatus)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(BatchItemResult.Status.CREATED, BatchItemResult.Status.FAILED,
+                BatchItemResult.Status.FAILED, BatchItemResult.Status.UPDATED, BatchItemResult.Status.FAILED,
+                BatchItemResult.Status.FAILED), statuses);
+        assertEquals(1, result.getCreated());
+        assertEquals(1, result.getUpdated());
+        assertEquals("Updated", userService.getUserById(existing.getId()).map(User::getName).orElse(null));
+        assertEquals(result.getResults().get(0).getId(),
+                userService.getUserByEmail("contract.batch.new@example.com").map(User::getId).orElse(null));
+        assertEquals(Long.valueOf(3), userService.countUsersByNationality().get("Slovenian"));
+        assertThrows(IllegalArgumentException.class, () -> userService.saveUsers(new ArrayList<>()));
+    }
+
+    @Test
+    public void testListingAndExportAgreeInIdOrder() {
+        userService.createUser(new User(null, "Contract", "Listing", "contract.listing@example.com", "Croatian"));
+
+        List<Long> listed = new ArrayList<>();
+        Long after = null;
+        CursorPage<User> page;
+        do {
+            page = userService.getAllUsers(after, 1000);
+            listed.addAll(ids(page.getItems()));
+            after = page.hasNext() ? Long.valueOf(page.getNextCursor()) : null;
+        } while (page.hasNext());
+
+        List<Long> exported = new ArrayList<>();
+        userService.exportUsers(user -> exported.add(user.getId()));
+
+        assertEquals(listed, exported);
+        assertEquals(listed, listed.stream().sorted().distinct().collect(Collectors.toList()));
+    }
+
+    private static List<Long> ids(List<User> users) {
+        return users.stream().map(User::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,125 @@
+package com.usermanagement;
+
+import com.usermanagement.model.User;
+import com.usermanagement.service.UserService;
+import com.usermanagement.service.UserSnapshots;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:snapshot")
+public class UserSnapshotTests {
+
+    @TempDir
+    Path tempDir;
+
+    @Autowired
+    private UserSnapshots userSnapshots;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate.update("delete from users");
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws IOException {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            users.add(new User(null, "Snap", "Shot" + i, "Snap" + i + "@Example.com", i % 2 == 0 ? "Þýskur" : "Finnish"));
+        }
+        userService.saveUsers(users);
+        User updated = userService.getUserByEmail("snap7@example.com").orElseThrow(AssertionError::new);
+        updated.setSurname("Changed");
+        userService.updateUser(updated.getId(), updated, null);
+        List<String> before = dump();
+
+        Path file = tempDir.resolve("users.snapshot");
+        assertEquals(2500, userSnapshots.save(file));
+        jdbcTemplate.update("delete from users");
+        assertEquals(2500, userSnapshots.restore(file));
+
+        assertEquals(before, dump());
+        assertTrue(userService.getUserByEmail("SNAP7@example.com").isPresent());
+        User created = userService.createUser(new User(null, "After", "Restore", "after.restore@example.com", "Finnish"));
+        assertTrue(userService.getUserById(created.getId()).isPresent());
+    }
+
+    @Test
+    public void testCorruptSnapshotIsRejectedBeforeRestoring() throws IOException {
+        userService.createUser(new User(null, "Corrupt", "Snapshot", "corrupt@example.com", "Finnish"));
+        Path file = tempDir.resolve("corrupt.snapshot");
+        userSnapshots.save(file);
+        jdbcTemplate.update("delete from users");
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file, bytes);
+        IOException e = assertThrows(IOException.class, () -> userSnapshots.restore(file));
+        assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+
+        ByteBuffer.wrap(bytes).putInt(4, 99);
+        Files.write(file, bytes);
+        e = assertThrows(IOException.class, () -> userSnapshots.restore(file));
+        assertTrue(e.getMessage().contains("format version 99"), e.getMessage());
+        assertEquals(Long.valueOf(0), jdbcTemplate.queryForObject("select count(*) from users", Long.class));
+    }
+
+    @Test
+    public void testFailedRestoreLeavesTableEmpty() throws IOException {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            users.add(new User(null, "Failed", "Restore" + i, "failed.restore" + i + "@example.com", "Finnish"));
+        }
+        userService.saveUsers(users);
+        Path file = tempDir.resolve("failing.snapshot");
+        userSnapshots.save(file);
+        jdbcTemplate.update("delete from users");
+
+        // Rejects a user of the third insert batch, after two batches went in
+        jdbcTemplate.execute("alter table users add constraint failing_restore check (surname <> 'Restore2100')");
+        try {
+            assertThrows(DataAccessException.class, () -> userSnapshots.restore(file));
+            assertEquals(Long.valueOf(0), jdbcTemplate.queryForObject("select count(*) from users", Long.class));
+        } finally {
+            jdbcTemplate.execute("alter table users drop constraint failing_restore");
+        }
+
+        assertEquals(2500, userSnapshots.restore(file));
+        assertTrue(userService.getUserByEmail("failed.restore2100@example.com").isPresent());
+    }
+
+    @Test
+    public void testRestoreRequiresEmptyTable() throws IOException {
+        userService.createUser(new User(null, "Already", "There", "already.there@example.com", "Finnish"));
+        Path file = tempDir.resolve("users.snapshot");
+        userSnapshots.save(file);
+
+        assertThrows(IllegalStateException.class, () -> userSnapshots.restore(file));
+    }
+
+    private List<String> dump() {
+        return jdbcTemplate.queryForList(
+                "select concat_ws('|', u.id, u.version, u.name, u.surname, u.email, u.email_normalized, n.name) "
+                        + "from users u join nationalities n on n.id = u.nationality_id order by u.id",
+                String.class);
+    }
+}
@@ -0,0 +1,82 @@
+package com.usermanagement;
+
+import com.usermanagement.model.User;
+import com.usermanagement.service.UserChangeEvent;
+import com.usermanagement.service.UserService;
+import com.usermanagement.service.UserSuggestIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.usermanagement.service.UserSuggestIndex.Field.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class UserSuggestIndexTests {
+
+    private final User john = new User(1L, "John", "Doe", "john.doe@example.com", "American");
+    private final User joanna = new User(2L, "Joanna", "Dorsey", "joanna@example.com", "British");
+    private final User johnSmith = new User(3L, "John", "Smith", "john.smith@example.com", "Canadian");
+
+    private UserSuggestIndex index;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        UserService userService = mock(UserService.class);
+        List<User> users = Arrays.asList(john, joanna, johnSmith);
+        doAnswer(invocation -> {
+            users.forEach(invocation.<Consumer<User>>getArgument(0));
+            return null;
+        }).when(userService).exportUsers(any(Consumer.class));
+        index = new UserSuggestIndex(userService);
+        index.rebuild();
+    }
+
+    @Test
+    public void testSuggestDistinctValuesByPrefixIgnoringCase() {
+        assertEquals(Arrays.asList("Joanna", "John"), index.suggest(NAME, "jo", null));
+        assertEquals(Arrays.asList("Doe", "Dorsey"), index.suggest(SURNAME, "DO", null));
+        assertEquals(Collections.singletonList("john.smith@example.com"), index.suggest(EMAIL, "john.s", null));
+        assertEquals(Collections.emptyList(), index.suggest(NATIONALITY, "x", null));
+    }
+
+    @Test
+    public void testSuggestHonoursLimit() {
+        assertEquals(Collections.singletonList("Joanna"), index.suggest(NAME, "j", 1));
+        assertThrows(IllegalArgumentException.class, () -> index.suggest(NAME, "j", 0));
+    }
+
+    @Test
+    public void testValueRemainsWhileAnotherUserHoldsIt() {
+        index.onUserChange(UserChangeEvent.deleted(john));
+        assertEquals(Arrays.asList("Joanna", "John"), index.suggest(NAME, "jo", null));
+        assertEquals(Collections.singletonList("Dorsey"), index.suggest(SURNAME, "do", null));
+
+        index.onUserChange(UserChangeEvent.deleted(johnSmith));
+        assertEquals(Collections.singletonList("Joanna"), index.suggest(NAME, "jo", null));
+    }
+
+    @Test
+    public void testUpdateMovesValues() {
+        User renamed = new User(2L, "Anna", "Dorsey", "joanna@example.com", "British");
+        index.onUserChange(UserChangeEvent.updated(joanna, renamed));
+
+        assertEquals(Collections.singletonList("John"), index.suggest(NAME, "jo", null));
+        assertEquals(Collections.singletonList("Anna"), index.suggest(NAME, "a", null));
+    }
+
+    @Test
+    public void testCreateAddsValues() {
+        index.onUserChange(UserChangeEvent.created(new User(4L, "Jonas", "Berg", "jonas@example.com", "Swedish")));
+
+        assertEquals(Arrays.asList("Joanna", "John", "Jonas"), index.suggest(NAME, "jo", null));
+        assertEquals(Collections.singletonList("Swedish"), index.suggest(NATIONALITY, "s", null));
+    }
+}
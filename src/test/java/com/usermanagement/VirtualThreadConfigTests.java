@@ -0,0 +1,40 @@
+package com.usermanagement;
+
+import com.usermanagement.config.VirtualThreadConfig;
+import com.usermanagement.config.VirtualThreads;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VirtualThreadConfigTests {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withUserConfiguration(VirtualThreadConfig.class)
+            .withPropertyValues("user.virtual-threads.pinning-monitor.enabled=false");
+
+    @Test
+    public void testDisabledByDefault() {
+        contextRunner.run(context -> assertThat(context).doesNotHaveBean(ExecutorService.class));
+    }
+
+    @Test
+    public void testSpringBootPropertyIsIgnored() {
+        contextRunner.withPropertyValues("spring.threads.virtual.enabled=true")
+                .run(context -> assertThat(context).doesNotHaveBean(ExecutorService.class));
+    }
+
+    @Test
+    public void testEnabledByApplicationProperty() {
+        contextRunner.withPropertyValues("user.virtual-threads.enabled=true").run(context -> {
+            if (VirtualThreads.isSupported()) {
+                assertThat(context).hasSingleBean(ExecutorService.class);
+            } else {
+                assertThat(context).hasFailed();
+                assertThat(context.getStartupFailure()).hasRootCauseInstanceOf(IllegalStateException.class);
+            }
+        });
+    }
+}